@@ -0,0 +1,53 @@
+package ds.simplepds.automata;
+
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.EndConfiguration;
+import ds.simplepds.interfaces.StackSymbol;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A configuration accepted by an automaton, with the stack given from top to bottom
+ * @param <L>
+ * @param <S>
+ */
+public class AcceptedConfiguration<L,S> implements EndConfiguration<L,S> {
+
+    private final ControlLocation<L> controlLocation;
+    private final List<StackSymbol<S>> word;
+
+    public AcceptedConfiguration(ControlLocation<L> controlLocation, List<StackSymbol<S>> word) {
+        this.controlLocation = controlLocation;
+        this.word = Collections.unmodifiableList(word);
+    }
+
+    @Override
+    public ControlLocation<L> getControlLocation() {
+        return controlLocation;
+    }
+
+    @Override
+    public List<StackSymbol<S>> getWord() {
+        return word;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AcceptedConfiguration<?, ?> that = (AcceptedConfiguration<?, ?>) o;
+        return Objects.equals(controlLocation, that.controlLocation) && Objects.equals(word, that.word);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(controlLocation, word);
+    }
+
+    @Override
+    public String toString() {
+        return "<" + controlLocation + ", " + word + ">";
+    }
+}
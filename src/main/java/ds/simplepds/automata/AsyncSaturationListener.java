@@ -0,0 +1,125 @@
+package ds.simplepds.automata;
+
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.Rule;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands the changes reported by an engine to another listener on a separate thread, through a bounded queue. When the
+ * consumer falls behind by more than the capacity of the queue, saturation waits for it to catch up, so memory stays
+ * bounded however slow the consumer is.
+ *
+ * The consumer runs until the fixpoint has been delivered or the listener is closed. If the consumer throws, the
+ * remaining changes are dropped and {@link #getCompletion()} completes exceptionally.
+ * @param <L>
+ * @param <S>
+ */
+public class AsyncSaturationListener<L,S> implements SaturationListener<L,S>, AutoCloseable {
+
+    // Marks the end of the changes
+    private static final Runnable END = () -> {
+    };
+    // How often a blocked saturation checks whether the consumer has stopped
+    private static final long CONSUMER_POLL_MILLIS = 10;
+
+    private final SaturationListener<L,S> consumer;
+    private final BlockingQueue<Runnable> events;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private boolean ended = false;
+
+    /**
+     * @param consumer the listener that is called on the executor
+     * @param capacity the maximum number of changes waiting for the consumer
+     * @param executor runs the consumer. It must be able to run it concurrently with the saturation
+     */
+    public AsyncSaturationListener(SaturationListener<L,S> consumer, int capacity, Executor executor) {
+        this.consumer = consumer;
+        this.events = new ArrayBlockingQueue<>(capacity);
+        executor.execute(() -> {
+            try {
+                for (Runnable event = events.take(); event != END; event = events.take()) {
+                    event.run();
+                }
+                completion.complete(null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                completion.completeExceptionally(e);
+            } catch (RuntimeException | Error e) {
+                completion.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * @return a future that completes once the consumer has processed all changes up to the fixpoint, or up to the
+     * point where the listener was closed
+     */
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    @Override
+    public void transitionAdded(PAutomaton.Transition<L,S> transition) {
+        put(() -> consumer.transitionAdded(transition));
+    }
+
+    @Override
+    public void finalStateAdded(ControlLocation<L> state) {
+        put(() -> consumer.finalStateAdded(state));
+    }
+
+    @Override
+    public void transitionRemoved(PAutomaton.Transition<L,S> transition) {
+        put(() -> consumer.transitionRemoved(transition));
+    }
+
+    @Override
+    public void finalStateRemoved(ControlLocation<L> state) {
+        put(() -> consumer.finalStateRemoved(state));
+    }
+
+    @Override
+    public void ruleGenerated(Rule<L,S> rule) {
+        put(() -> consumer.ruleGenerated(rule));
+    }
+
+    @Override
+    public void fixpointReached() {
+        put(() -> consumer.fixpointReached());
+        close();
+    }
+
+    /**
+     * Lets the consumer stop once it has processed the changes reported so far. Further changes are dropped
+     */
+    @Override
+    public synchronized void close() {
+        if (!ended) {
+            ended = true;
+            put(END);
+        }
+    }
+
+    private synchronized void put(Runnable event) {
+        if (ended && event != END) {
+            return;
+        }
+        try {
+            // Saturation must not wait for a consumer that has stopped
+            while (!events.offer(event, CONSUMER_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (completion.isDone()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for the consumer");
+        }
+    }
+}
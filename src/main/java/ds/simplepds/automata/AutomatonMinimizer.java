@@ -0,0 +1,101 @@
+package ds.simplepds.automata;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.StackSymbol;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges the states of a P-automaton that are bisimilar, i.e. that agree on being final and can move with the same
+ * labels into blocks of bisimilar states. Bisimilar states accept the same words, so merging them preserves the
+ * configurations accepted from each control location. Initial states are kept (they name the control locations of
+ * configurations), but their transitions lead into the merged states, which are represented by states that are not
+ * initial wherever the block has one.
+ *
+ * The partition is computed by refining blocks by their signatures until it is stable.
+ * @param <L>
+ * @param <S>
+ */
+class AutomatonMinimizer<L,S> {
+
+    private final PAutomaton<L,S> automaton;
+    private final Multimap<ControlLocation<L>, PAutomaton.Transition<L,S>> outgoing = HashMultimap.create();
+
+    AutomatonMinimizer(PAutomaton<L,S> automaton) {
+        this.automaton = automaton;
+        for (PAutomaton.Transition<L,S> transition : automaton.getTransitionRelation()) {
+            outgoing.put(transition.getStartState(), transition);
+        }
+    }
+
+    PAutomaton<L,S> minimize() {
+        List<ControlLocation<L>> states = new ArrayList<>(automaton.getAllStates());
+        Map<ControlLocation<L>, Integer> blocks = new HashMap<>();
+        for (ControlLocation<L> state : states) {
+            blocks.put(state, automaton.getFinalStates().contains(state) ? 1 : 0);
+        }
+        int blockCount = new HashSet<>(blocks.values()).size();
+        while (true) {
+            Map<List<Object>, Integer> blockBySignature = new HashMap<>();
+            Map<ControlLocation<L>, Integer> refined = new HashMap<>();
+            for (ControlLocation<L> state : states) {
+                Set<Map.Entry<StackSymbol<S>, Integer>> moves = new HashSet<>();
+                for (PAutomaton.Transition<L,S> transition : outgoing.get(state)) {
+                    moves.add(Maps.immutableEntry(transition.getLabel(), blocks.get(transition.getEndState())));
+                }
+                List<Object> signature = List.of(blocks.get(state), moves);
+                refined.put(state, blockBySignature.computeIfAbsent(signature, s -> blockBySignature.size()));
+            }
+            blocks = refined;
+            // Refinement only ever splits blocks, so the partition is stable once the number of blocks stays the same
+            if (blockBySignature.size() == blockCount) {
+                break;
+            }
+            blockCount = blockBySignature.size();
+        }
+
+        // Represent each block by one of its states. Initial states are control locations, so they only represent a
+        // block that has no other states, and transitions do not lead into control locations that did not have any
+        Map<Integer, ControlLocation<L>> representatives = new HashMap<>();
+        for (ControlLocation<L> state : states) {
+            if (!automaton.getInitialStates().contains(state)) {
+                representatives.putIfAbsent(blocks.get(state), state);
+            }
+        }
+        for (ControlLocation<L> state : states) {
+            representatives.putIfAbsent(blocks.get(state), state);
+        }
+
+        PAutomaton<L,S> minimized = new PAutomaton<>();
+        for (ControlLocation<L> state : states) {
+            ControlLocation<L> representative = representatives.get(blocks.get(state));
+            boolean initial = automaton.getInitialStates().contains(state);
+            if (!initial && !representative.equals(state)) {
+                continue;
+            }
+            minimized.addState(state);
+            if (initial) {
+                minimized.addInitialState(state);
+            }
+            if (automaton.getFinalStates().contains(state)) {
+                minimized.addFinalState(state);
+            }
+            for (PAutomaton.Transition<L,S> transition : outgoing.get(state)) {
+                minimized.addTransition(
+                        state,
+                        representatives.get(blocks.get(transition.getEndState())),
+                        transition.getLabel()
+                );
+            }
+        }
+        return minimized;
+    }
+}
@@ -0,0 +1,115 @@
+package ds.simplepds.automata;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import ds.simplepds.interfaces.ControlLocation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Removes the states of a P-automaton that cannot be part of an accepted configuration of interest
+ */
+class AutomatonTrimmer {
+
+    private AutomatonTrimmer() {
+    }
+
+    /**
+     * Trims the initial automaton of a saturation before it starts. Only control locations gain transitions during
+     * saturation, so the other states keep the transitions they have. Those among them that cannot reach a final
+     * state or a control location never will, and are removed.
+     * @return a copy of the automaton without these states
+     */
+    static <L,S> PAutomaton<L,S> trimFixedStates(PAutomaton<L,S> automaton, Set<ControlLocation<L>> controlLocations) {
+        Set<ControlLocation<L>> seeds = new HashSet<>(automaton.getFinalStates());
+        seeds.addAll(controlLocations);
+        Set<ControlLocation<L>> useful = reachable(seeds, backwardEdges(automaton));
+        PAutomaton<L,S> trimmed = new PAutomaton<>();
+        for (ControlLocation<L> state : automaton.getAllStates()) {
+            if (useful.contains(state)) {
+                trimmed.addState(state);
+            }
+        }
+        automaton.getInitialStates().forEach(trimmed::addInitialState);
+        automaton.getFinalStates().forEach(trimmed::addFinalState);
+        for (PAutomaton.Transition<L,S> transition : automaton.getTransitionRelation()) {
+            if (useful.contains(transition.getEndState())) {
+                trimmed.addTransition(transition);
+            }
+        }
+        return trimmed;
+    }
+
+    /**
+     * Removes the states, and their transitions, that cannot reach a final state or that cannot be reached from any
+     * of the given locations
+     * @param listener is told about the transitions and final states that are removed
+     */
+    static <L,S> void trim(
+            PAutomaton<L,S> automaton,
+            Collection<ControlLocation<L>> locations,
+            SaturationListener<L,S> listener
+    ) {
+        // The locations may be a view of the automaton's states
+        Set<ControlLocation<L>> locationsOfInterest = new HashSet<>(locations);
+        Set<ControlLocation<L>> useful = reachable(automaton.getFinalStates(), backwardEdges(automaton));
+        Multimap<ControlLocation<L>, ControlLocation<L>> forward = HashMultimap.create();
+        for (PAutomaton.Transition<L,S> transition : automaton.getTransitionRelation()) {
+            if (useful.contains(transition.getEndState())) {
+                forward.put(transition.getStartState(), transition.getEndState());
+            }
+        }
+        Set<ControlLocation<L>> seeds = new HashSet<>(locationsOfInterest);
+        seeds.retainAll(useful);
+        useful.retainAll(reachable(seeds, forward));
+        List<PAutomaton.Transition<L,S>> removedTransitions = new ArrayList<>();
+        for (PAutomaton.Transition<L,S> transition : automaton.getTransitionRelation()) {
+            if (!useful.contains(transition.getStartState()) || !useful.contains(transition.getEndState())) {
+                removedTransitions.add(transition);
+            }
+        }
+        // Locations of interest are kept as states even if nothing is accepted from them
+        automaton.getAllStates().removeIf(state -> !useful.contains(state) && !locationsOfInterest.contains(state));
+        automaton.getInitialStates().removeIf(state -> !automaton.getAllStates().contains(state));
+        List<ControlLocation<L>> removedFinalStates = new ArrayList<>();
+        for (ControlLocation<L> state : automaton.getFinalStates()) {
+            if (!automaton.getAllStates().contains(state)) {
+                removedFinalStates.add(state);
+            }
+        }
+        automaton.getFinalStates().removeAll(removedFinalStates);
+        removedTransitions.forEach(automaton.getTransitionRelation()::remove);
+        removedTransitions.forEach(listener::transitionRemoved);
+        removedFinalStates.forEach(listener::finalStateRemoved);
+    }
+
+    private static <L,S> Multimap<ControlLocation<L>, ControlLocation<L>> backwardEdges(PAutomaton<L,S> automaton) {
+        Multimap<ControlLocation<L>, ControlLocation<L>> backward = HashMultimap.create();
+        for (PAutomaton.Transition<L,S> transition : automaton.getTransitionRelation()) {
+            backward.put(transition.getEndState(), transition.getStartState());
+        }
+        return backward;
+    }
+
+    private static <L> Set<ControlLocation<L>> reachable(
+            Collection<ControlLocation<L>> seeds,
+            Multimap<ControlLocation<L>, ControlLocation<L>> edges
+    ) {
+        Set<ControlLocation<L>> reached = new HashSet<>(seeds);
+        Deque<ControlLocation<L>> worklist = new ArrayDeque<>(seeds);
+        while (!worklist.isEmpty()) {
+            for (ControlLocation<L> next : edges.get(worklist.remove())) {
+                if (reached.add(next)) {
+                    worklist.add(next);
+                }
+            }
+        }
+        return reached;
+    }
+}
@@ -0,0 +1,18 @@
+package ds.simplepds.automata;
+
+/**
+ * Cooperatively stops a running saturation. The engine checks the token between worklist items, so saturation stops
+ * shortly after {@link #cancel()} is called from any thread.
+ */
+public class CancellationToken {
+
+    private volatile boolean cancelled = false;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
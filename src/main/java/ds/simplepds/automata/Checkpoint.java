@@ -0,0 +1,338 @@
+package ds.simplepds.automata;
+
+import com.google.common.io.CountingInputStream;
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.Rule;
+import ds.simplepds.interfaces.StackSymbol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An append-only log of the changes a saturation engine makes to its state. Records are written as the changes
+ * happen and a commit marker is appended (and the log flushed) on a configurable interval. Everything up to the
+ * last commit marker forms a consistent checkpoint that can be replayed to resume saturation; records after it
+ * belong to a partially processed worklist item and are discarded.
+ * @param <L>
+ * @param <S>
+ */
+class Checkpoint<L,S> implements Closeable {
+
+    private static final int MAGIC = 0x53504453;
+    private static final int VERSION = 1;
+
+    private static final byte TRANSITION = 1;
+    private static final byte WORKLIST_ITEM = 2;
+    private static final byte STATE = 3;
+    private static final byte INITIAL_STATE = 4;
+    private static final byte FINAL_STATE = 5;
+    private static final byte EPSILON = 6;
+    private static final byte GENERATED_RULE = 7;
+    private static final byte COMMIT = 8;
+
+    private final Path file;
+    private final CheckpointCodec<L,S> codec;
+    private final long intervalNanos;
+    private DataOutputStream out;
+    private long lastCommit;
+
+    Checkpoint(Path file, CheckpointCodec<L,S> codec, Duration interval) {
+        this.file = file;
+        this.codec = codec;
+        this.intervalNanos = interval.toNanos();
+    }
+
+    /**
+     * Replays the last consistent checkpoint in the log (if there is one) and opens the log for appending
+     * @return true if a checkpoint was replayed
+     */
+    boolean restore(Replay<L,S> target) {
+        try {
+            long committedLength = 0;
+            boolean restored = false;
+            if (Files.exists(file) && Files.size(file) > 0) {
+                committedLength = replay(target);
+                restored = committedLength > 0;
+            }
+            if (restored) {
+                // Drop the records of the partially processed item that follow the last commit
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(committedLength);
+                }
+                out = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(file, StandardOpenOption.APPEND)
+                ));
+            } else {
+                out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            lastCommit = System.nanoTime();
+            return restored;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long replay(Replay<L,S> target) throws IOException {
+        CountingInputStream counter = new CountingInputStream(new BufferedInputStream(Files.newInputStream(file)));
+        try (DataInputStream in = new DataInputStream(counter)) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a saturation checkpoint: " + file);
+            }
+            long committedLength = 0;
+            List<Runnable> uncommitted = new ArrayList<>();
+            try {
+                while (true) {
+                    byte type = in.readByte();
+                    if (type == COMMIT) {
+                        uncommitted.forEach(Runnable::run);
+                        uncommitted.clear();
+                        committedLength = counter.getCount();
+                    } else {
+                        uncommitted.add(readRecord(type, in, target));
+                    }
+                }
+            } catch (EOFException e) {
+                // Anything after the last commit marker is incomplete
+            }
+            return committedLength;
+        }
+    }
+
+    private Runnable readRecord(byte type, DataInput in, Replay<L,S> target) throws IOException {
+        switch (type) {
+            case TRANSITION: {
+                PAutomaton.Transition<L,S> transition = readTransition(codec, in);
+                return () -> target.transition(transition);
+            }
+            case WORKLIST_ITEM: {
+                PAutomaton.Transition<L,S> transition = readTransition(codec, in);
+                return () -> target.worklistItem(transition);
+            }
+            case STATE: {
+                ControlLocation<L> state = codec.readLocation(in);
+                return () -> target.state(state);
+            }
+            case INITIAL_STATE: {
+                ControlLocation<L> state = codec.readLocation(in);
+                return () -> target.initialState(state);
+            }
+            case FINAL_STATE: {
+                ControlLocation<L> state = codec.readLocation(in);
+                return () -> target.finalState(state);
+            }
+            case EPSILON: {
+                ControlLocation<L> state = codec.readLocation(in);
+                ControlLocation<L> location = codec.readLocation(in);
+                return () -> target.epsilon(state, location);
+            }
+            case GENERATED_RULE: {
+                ControlLocation<L> startLocation = codec.readLocation(in);
+                StackSymbol<S> startSymbol = codec.readSymbol(in);
+                ControlLocation<L> endLocation = codec.readLocation(in);
+                StackSymbol<S> endSymbol = codec.readSymbol(in);
+                return () -> target.generatedRule(startLocation, startSymbol, endLocation, endSymbol);
+            }
+            default:
+                throw new IOException("Unknown checkpoint record type " + type);
+        }
+    }
+
+    void logTransition(PAutomaton.Transition<L,S> transition) {
+        try {
+            out.writeByte(TRANSITION);
+            writeTransition(codec, transition, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void logWorklistItem(PAutomaton.Transition<L,S> transition) {
+        try {
+            out.writeByte(WORKLIST_ITEM);
+            writeTransition(codec, transition, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void logState(ControlLocation<L> state) {
+        logLocation(STATE, state);
+    }
+
+    void logInitialState(ControlLocation<L> state) {
+        logLocation(INITIAL_STATE, state);
+    }
+
+    void logFinalState(ControlLocation<L> state) {
+        logLocation(FINAL_STATE, state);
+    }
+
+    void logEpsilon(ControlLocation<L> state, ControlLocation<L> location) {
+        try {
+            out.writeByte(EPSILON);
+            codec.writeLocation(state, out);
+            codec.writeLocation(location, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void logGeneratedRule(Rule<L,S> rule) {
+        try {
+            out.writeByte(GENERATED_RULE);
+            codec.writeLocation(rule.getStartConfiguration().getControlLocation(), out);
+            codec.writeSymbol(rule.getStartConfiguration().getStackSymbol(), out);
+            codec.writeLocation(rule.getEndConfiguration().getControlLocation(), out);
+            codec.writeSymbol(rule.getEndConfiguration().getWord().get(0), out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Commits the records written so far if the checkpoint interval has passed. Must only be called between
+     * worklist items
+     */
+    void tick() {
+        if (System.nanoTime() - lastCommit >= intervalNanos) {
+            commit();
+        }
+    }
+
+    void commit() {
+        try {
+            out.writeByte(COMMIT);
+            out.flush();
+            lastCommit = System.nanoTime();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void logLocation(byte type, ControlLocation<L> state) {
+        try {
+            out.writeByte(type);
+            codec.writeLocation(state, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the start state, label and end state of a transition
+     */
+    static <L,S> void writeTransition(
+            CheckpointCodec<L,S> codec,
+            PAutomaton.Transition<L,S> transition,
+            DataOutput out
+    ) throws IOException {
+        codec.writeLocation(transition.getStartState(), out);
+        codec.writeSymbol(transition.getLabel(), out);
+        codec.writeLocation(transition.getEndState(), out);
+    }
+
+    /**
+     * Reads a transition written by {@link #writeTransition}
+     */
+    static <L,S> PAutomaton.Transition<L,S> readTransition(
+            CheckpointCodec<L,S> codec,
+            DataInput in
+    ) throws IOException {
+        ControlLocation<L> start = codec.readLocation(in);
+        StackSymbol<S> label = codec.readSymbol(in);
+        ControlLocation<L> end = codec.readLocation(in);
+        return new PAutomaton.Transition<>(start, end, label);
+    }
+
+    /**
+     * Writes the start and end configuration of a rule
+     */
+    static <L,S> void writeRule(CheckpointCodec<L,S> codec, Rule<L,S> rule, DataOutput out) throws IOException {
+        codec.writeLocation(rule.getStartConfiguration().getControlLocation(), out);
+        codec.writeSymbol(rule.getStartConfiguration().getStackSymbol(), out);
+        codec.writeLocation(rule.getEndConfiguration().getControlLocation(), out);
+        out.writeInt(rule.getEndConfiguration().getWord().size());
+        for (StackSymbol<S> symbol : rule.getEndConfiguration().getWord()) {
+            codec.writeSymbol(symbol, out);
+        }
+    }
+
+    /**
+     * Reads a rule written by {@link #writeRule} as its {@link #ruleKey}
+     */
+    static <L,S> List<Object> readRuleKey(CheckpointCodec<L,S> codec, DataInput in) throws IOException {
+        ControlLocation<L> startLocation = codec.readLocation(in);
+        StackSymbol<S> startSymbol = codec.readSymbol(in);
+        ControlLocation<L> endLocation = codec.readLocation(in);
+        int wordSize = in.readInt();
+        List<StackSymbol<S>> word = new ArrayList<>(wordSize);
+        for (int i = 0; i < wordSize; i++) {
+            word.add(codec.readSymbol(in));
+        }
+        return Arrays.asList(startLocation, startSymbol, endLocation, word);
+    }
+
+    /**
+     * @return a key identifying a rule by its start and end configuration
+     */
+    static <L,S> List<Object> ruleKey(Rule<L,S> rule) {
+        return Arrays.asList(
+                rule.getStartConfiguration().getControlLocation(),
+                rule.getStartConfiguration().getStackSymbol(),
+                rule.getEndConfiguration().getControlLocation(),
+                new ArrayList<>(rule.getEndConfiguration().getWord())
+        );
+    }
+
+    /**
+     * Receives the records of a checkpoint as it is replayed
+     */
+    interface Replay<L,S> {
+
+        void transition(PAutomaton.Transition<L,S> transition);
+
+        void worklistItem(PAutomaton.Transition<L,S> transition);
+
+        void state(ControlLocation<L> state);
+
+        void initialState(ControlLocation<L> state);
+
+        void finalState(ControlLocation<L> state);
+
+        void epsilon(ControlLocation<L> state, ControlLocation<L> location);
+
+        void generatedRule(
+                ControlLocation<L> startLocation,
+                StackSymbol<S> startSymbol,
+                ControlLocation<L> endLocation,
+                StackSymbol<S> endSymbol
+        );
+    }
+}
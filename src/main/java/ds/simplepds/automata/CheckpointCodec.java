@@ -0,0 +1,25 @@
+package ds.simplepds.automata;
+
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.StackSymbol;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Converts control locations and stack symbols to and from their binary form in a checkpoint. Decoded values must
+ * be equal to the values that were encoded.
+ * @param <L>
+ * @param <S>
+ */
+public interface CheckpointCodec<L,S> {
+
+    void writeLocation(ControlLocation<L> location, DataOutput out) throws IOException;
+
+    ControlLocation<L> readLocation(DataInput in) throws IOException;
+
+    void writeSymbol(StackSymbol<S> symbol, DataOutput out) throws IOException;
+
+    StackSymbol<S> readSymbol(DataInput in) throws IOException;
+}
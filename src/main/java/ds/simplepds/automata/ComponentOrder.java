@@ -0,0 +1,128 @@
+package ds.simplepds.automata;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.Rule;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ranks the control locations of a pushdown system by the strongly connected component they belong to in the graph
+ * that has an edge for every rule. Components are numbered in topological order, so that work at a location can only
+ * cause work at locations of the same or a later component.
+ * @param <L>
+ */
+class ComponentOrder<L> {
+
+    private final Map<ControlLocation<L>, Integer> components = new HashMap<>();
+    private int componentCount = 0;
+
+    /**
+     * Orders locations along the rules, from start to end location (as in post-*)
+     */
+    static <L,S> ComponentOrder<L> forward(Iterable<Rule<L,S>> rules) {
+        SetMultimap<ControlLocation<L>, ControlLocation<L>> successors = HashMultimap.create();
+        for (Rule<L,S> rule : rules) {
+            successors.put(
+                    rule.getStartConfiguration().getControlLocation(),
+                    rule.getEndConfiguration().getControlLocation()
+            );
+        }
+        return new ComponentOrder<>(successors);
+    }
+
+    /**
+     * Orders locations against the rules, from end to start location (as in pre-*)
+     */
+    static <L,S> ComponentOrder<L> backward(Iterable<Rule<L,S>> rules) {
+        SetMultimap<ControlLocation<L>, ControlLocation<L>> successors = HashMultimap.create();
+        for (Rule<L,S> rule : rules) {
+            successors.put(
+                    rule.getEndConfiguration().getControlLocation(),
+                    rule.getStartConfiguration().getControlLocation()
+            );
+        }
+        return new ComponentOrder<>(successors);
+    }
+
+    private ComponentOrder(SetMultimap<ControlLocation<L>, ControlLocation<L>> successors) {
+        // Tarjan's algorithm with an explicit stack. Components are found sinks first and renumbered afterwards
+        Map<ControlLocation<L>, Integer> index = new HashMap<>();
+        Map<ControlLocation<L>, Integer> lowLink = new HashMap<>();
+        Deque<ControlLocation<L>> componentStack = new ArrayDeque<>();
+        Deque<ControlLocation<L>> callStack = new ArrayDeque<>();
+        Deque<Iterator<ControlLocation<L>>> pendingSuccessors = new ArrayDeque<>();
+        List<ControlLocation<L>> roots = new ArrayList<>(successors.keySet());
+        roots.addAll(successors.values());
+        for (ControlLocation<L> root : roots) {
+            if (index.containsKey(root)) {
+                continue;
+            }
+            visit(root, index, lowLink, componentStack, callStack, pendingSuccessors, successors);
+            while (!callStack.isEmpty()) {
+                ControlLocation<L> location = callStack.peek();
+                Iterator<ControlLocation<L>> next = pendingSuccessors.peek();
+                if (next.hasNext()) {
+                    ControlLocation<L> successor = next.next();
+                    if (!index.containsKey(successor)) {
+                        visit(successor, index, lowLink, componentStack, callStack, pendingSuccessors, successors);
+                    } else if (!components.containsKey(successor)) {
+                        // The successor is on the component stack
+                        lowLink.put(location, Math.min(lowLink.get(location), index.get(successor)));
+                    }
+                    continue;
+                }
+                callStack.pop();
+                pendingSuccessors.pop();
+                if (lowLink.get(location).equals(index.get(location))) {
+                    ControlLocation<L> member;
+                    do {
+                        member = componentStack.pop();
+                        components.put(member, componentCount);
+                    } while (!member.equals(location));
+                    componentCount++;
+                }
+                if (!callStack.isEmpty()) {
+                    ControlLocation<L> caller = callStack.peek();
+                    lowLink.put(caller, Math.min(lowLink.get(caller), lowLink.get(location)));
+                }
+            }
+        }
+        components.replaceAll((location, component) -> componentCount - 1 - component);
+    }
+
+    private void visit(
+            ControlLocation<L> location,
+            Map<ControlLocation<L>, Integer> index,
+            Map<ControlLocation<L>, Integer> lowLink,
+            Deque<ControlLocation<L>> componentStack,
+            Deque<ControlLocation<L>> callStack,
+            Deque<Iterator<ControlLocation<L>>> pendingSuccessors,
+            SetMultimap<ControlLocation<L>, ControlLocation<L>> successors
+    ) {
+        index.put(location, index.size());
+        lowLink.put(location, index.get(location));
+        componentStack.push(location);
+        callStack.push(location);
+        pendingSuccessors.push(successors.get(location).iterator());
+    }
+
+    /**
+     * @return the component of the given location. Locations that do not occur in any rule (e.g. generated states)
+     * belong to component 0
+     */
+    int componentOf(ControlLocation<L> location) {
+        return components.getOrDefault(location, 0);
+    }
+
+    int getComponentCount() {
+        return Math.max(componentCount, 1);
+    }
+}
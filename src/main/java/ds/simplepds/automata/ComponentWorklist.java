@@ -0,0 +1,73 @@
+package ds.simplepds.automata;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Iterator;
+
+/**
+ * A worklist that hands out the items of the earliest component first, as ranked by a {@link ComponentOrder} on the
+ * start state of each item. Items of the same component are handed out in FIFO order.
+ * @param <L>
+ * @param <S>
+ */
+class ComponentWorklist<L,S> extends AbstractQueue<PAutomaton.Transition<L,S>> {
+
+    private final ComponentOrder<L> order;
+    private final ArrayDeque<PAutomaton.Transition<L,S>>[] buckets;
+    // The components that have items
+    private final BitSet nonEmpty = new BitSet();
+    private int size = 0;
+
+    ComponentWorklist(ComponentOrder<L> order) {
+        this.order = order;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ArrayDeque<PAutomaton.Transition<L,S>>[] buckets = new ArrayDeque[order.getComponentCount()];
+        this.buckets = buckets;
+    }
+
+    @Override
+    public boolean offer(PAutomaton.Transition<L,S> transition) {
+        int component = order.componentOf(transition.getStartState());
+        if (buckets[component] == null) {
+            buckets[component] = new ArrayDeque<>();
+        }
+        buckets[component].add(transition);
+        nonEmpty.set(component);
+        size++;
+        return true;
+    }
+
+    @Override
+    public PAutomaton.Transition<L,S> poll() {
+        int component = nonEmpty.nextSetBit(0);
+        if (component < 0) {
+            return null;
+        }
+        PAutomaton.Transition<L,S> transition = buckets[component].poll();
+        if (buckets[component].isEmpty()) {
+            nonEmpty.clear(component);
+        }
+        size--;
+        return transition;
+    }
+
+    @Override
+    public PAutomaton.Transition<L,S> peek() {
+        int component = nonEmpty.nextSetBit(0);
+        return component < 0 ? null : buckets[component].peek();
+    }
+
+    @Override
+    public Iterator<PAutomaton.Transition<L,S>> iterator() {
+        return nonEmpty.stream()
+                .boxed()
+                .flatMap(component -> buckets[component].stream())
+                .iterator();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,240 @@
+package ds.simplepds.automata;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimap;
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.StackSymbol;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Enumerates the configurations accepted by a P-automaton in order of stack length. The automaton is determinized on
+ * the fly: a word leads from an initial state to the set of all states it can reach, so every accepted configuration
+ * is found over exactly one path and nothing needs to be remembered to drop duplicates.
+ *
+ * The words of each length are enumerated depth-first. Whether a set of states accepts a suffix of a given length is
+ * memoised per set, so a prefix is only extended by symbols that lead on to an accepted word, and paths that are not
+ * accepted are never visited. Memory grows with the number of distinct sets of states and the length bound, not with
+ * the number of paths.
+ * @param <L>
+ * @param <S>
+ */
+class ConfigurationEnumerator<L,S> implements Iterator<AcceptedConfiguration<L,S>> {
+
+    private final Multimap<ControlLocation<L>, PAutomaton.Transition<L,S>> outgoing = HashMultimap.create();
+    // Length of the shortest word leading from a state to a final state
+    private final Map<ControlLocation<L>, Integer> distanceToFinal = new HashMap<>();
+    private final Map<Set<ControlLocation<L>>, StateSet<L,S>> stateSets = new HashMap<>();
+    private final List<ControlLocation<L>> initialStates = new ArrayList<>();
+    private final int maxLength;
+    // The sets of states reached by words of the current length from which a final state can still be reached. Once
+    // there are none, there are no longer accepted words
+    private Set<StateSet<L,S>> layer = new HashSet<>();
+    private int currentLength = 0;
+    private int nextInitialState = 0;
+    private ControlLocation<L> location;
+    // The prefix being extended, and the sets of states it passes through
+    private final List<StackSymbol<S>> prefix = new ArrayList<>();
+    private final Deque<Frame<L,S>> path = new ArrayDeque<>();
+    private AcceptedConfiguration<L,S> next;
+
+    ConfigurationEnumerator(PAutomaton<L,S> automaton, int maxLength) {
+        Set<ControlLocation<L>> finalStates = automaton.getFinalStates();
+        this.maxLength = maxLength;
+        Multimap<ControlLocation<L>, ControlLocation<L>> predecessors = HashMultimap.create();
+        for (PAutomaton.Transition<L,S> transition : automaton.getTransitionRelation()) {
+            outgoing.put(transition.getStartState(), transition);
+            predecessors.put(transition.getEndState(), transition.getStartState());
+        }
+        Deque<ControlLocation<L>> worklist = new ArrayDeque<>(finalStates);
+        finalStates.forEach(state -> distanceToFinal.put(state, 0));
+        while (!worklist.isEmpty()) {
+            ControlLocation<L> state = worklist.remove();
+            int distance = distanceToFinal.get(state) + 1;
+            for (ControlLocation<L> predecessor : predecessors.get(state)) {
+                if (!distanceToFinal.containsKey(predecessor)) {
+                    distanceToFinal.put(predecessor, distance);
+                    worklist.add(predecessor);
+                }
+            }
+        }
+        for (ControlLocation<L> initialState : automaton.getInitialStates()) {
+            Integer distance = distanceToFinal.get(initialState);
+            if (distance != null && distance <= maxLength) {
+                initialStates.add(initialState);
+                layer.add(intern(ImmutableSet.of(initialState)));
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null) {
+            if (path.isEmpty()) {
+                if (nextInitialState == initialStates.size()) {
+                    if (!advanceLength()) {
+                        return false;
+                    }
+                    nextInitialState = 0;
+                }
+                location = initialStates.get(nextInitialState++);
+                StateSet<L,S> start = intern(ImmutableSet.of(location));
+                if (accepts(start, currentLength)) {
+                    path.push(new Frame<>(successors(start)));
+                }
+                continue;
+            }
+            if (prefix.size() == currentLength) {
+                next = new AcceptedConfiguration<>(location, new ArrayList<>(prefix));
+                backtrack();
+                continue;
+            }
+            Iterator<Map.Entry<StackSymbol<S>, StateSet<L,S>>> edges = path.peek().edges;
+            if (!edges.hasNext()) {
+                backtrack();
+                continue;
+            }
+            Map.Entry<StackSymbol<S>, StateSet<L,S>> edge = edges.next();
+            if (accepts(edge.getValue(), currentLength - prefix.size() - 1)) {
+                prefix.add(edge.getKey());
+                path.push(new Frame<>(successors(edge.getValue())));
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public AcceptedConfiguration<L,S> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        AcceptedConfiguration<L,S> result = next;
+        next = null;
+        return result;
+    }
+
+    private void backtrack() {
+        path.pop();
+        if (!path.isEmpty()) {
+            prefix.remove(prefix.size() - 1);
+        }
+    }
+
+    /**
+     * Moves on to the next stack length
+     * @return false if there are no accepted configurations with a longer stack
+     */
+    private boolean advanceLength() {
+        if (currentLength >= maxLength) {
+            return false;
+        }
+        currentLength++;
+        Set<StateSet<L,S>> nextLayer = new HashSet<>();
+        for (StateSet<L,S> stateSet : layer) {
+            for (StateSet<L,S> successor : successors(stateSet).values()) {
+                if (successor.distanceToFinal <= maxLength - currentLength) {
+                    nextLayer.add(successor);
+                }
+            }
+        }
+        layer = nextLayer;
+        return !layer.isEmpty();
+    }
+
+    /**
+     * @return true if a word of exactly the given length leads from the set of states to a final state
+     */
+    private boolean accepts(StateSet<L,S> stateSet, int length) {
+        if (stateSet.distanceToFinal > length) {
+            return false;
+        }
+        if (length == 0) {
+            return true;
+        }
+        if (!stateSet.known.get(length)) {
+            for (StateSet<L,S> successor : successors(stateSet).values()) {
+                if (accepts(successor, length - 1)) {
+                    stateSet.accepting.set(length);
+                    break;
+                }
+            }
+            stateSet.known.set(length);
+        }
+        return stateSet.accepting.get(length);
+    }
+
+    /**
+     * @return the sets of states reached from the given set by each stack symbol, without the states from which no
+     * final state can be reached
+     */
+    private Map<StackSymbol<S>, StateSet<L,S>> successors(StateSet<L,S> stateSet) {
+        if (stateSet.successors == null) {
+            Map<StackSymbol<S>, Set<ControlLocation<L>>> targets = new LinkedHashMap<>();
+            for (ControlLocation<L> state : stateSet.states) {
+                for (PAutomaton.Transition<L,S> transition : outgoing.get(state)) {
+                    if (distanceToFinal.containsKey(transition.getEndState())) {
+                        targets.computeIfAbsent(transition.getLabel(), label -> new HashSet<>())
+                                .add(transition.getEndState());
+                    }
+                }
+            }
+            Map<StackSymbol<S>, StateSet<L,S>> successors = new LinkedHashMap<>();
+            targets.forEach((label, states) -> successors.put(label, intern(ImmutableSet.copyOf(states))));
+            stateSet.successors = successors;
+        }
+        return stateSet.successors;
+    }
+
+    private StateSet<L,S> intern(ImmutableSet<ControlLocation<L>> states) {
+        return stateSets.computeIfAbsent(states, key -> {
+            int distance = Integer.MAX_VALUE;
+            for (ControlLocation<L> state : key) {
+                distance = Math.min(distance, distanceToFinal.getOrDefault(state, Integer.MAX_VALUE));
+            }
+            return new StateSet<>(key, distance);
+        });
+    }
+
+    /**
+     * The states reached by a word from an initial state
+     */
+    private static class StateSet<L,S> {
+
+        private final Set<ControlLocation<L>> states;
+        private final int distanceToFinal;
+        // The lengths of suffixes for which it is known whether the set accepts a word of that length, and those for
+        // which it does
+        private final BitSet known = new BitSet();
+        private final BitSet accepting = new BitSet();
+        private Map<StackSymbol<S>, StateSet<L,S>> successors;
+
+        private StateSet(Set<ControlLocation<L>> states, int distanceToFinal) {
+            this.states = states;
+            this.distanceToFinal = distanceToFinal;
+        }
+    }
+
+    /**
+     * A set of states on the path to the prefix being extended, with the edges that have not been followed yet
+     */
+    private static class Frame<L,S> {
+
+        private final Iterator<Map.Entry<StackSymbol<S>, StateSet<L,S>>> edges;
+
+        private Frame(Map<StackSymbol<S>, StateSet<L,S>> successors) {
+            this.edges = successors.entrySet().iterator();
+        }
+    }
+}
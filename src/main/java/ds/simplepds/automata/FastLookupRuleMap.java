@@ -5,6 +5,7 @@ import com.google.common.collect.Multimap;
 import ds.simplepds.interfaces.ControlLocation;
 import ds.simplepds.interfaces.PushdownSystem;
 import ds.simplepds.interfaces.Rule;
+import ds.simplepds.interfaces.StackSymbol;
 
 import java.util.Collection;
 
@@ -14,6 +15,8 @@ public class FastLookupRuleMap<L,S> {
             HashMultimap.create();
     private final Multimap<ControlLocation<L>, Rule<L,S>> startStateMultimap = HashMultimap.create();
     private final Multimap<ControlLocation<L>, Rule<L,S>> endStateMultimap = HashMultimap.create();
+    private final RuleIndex<L,S> startConfigurationIndex = RuleIndex.byStartConfiguration();
+    private final RuleIndex<L,S> endConfigurationIndex = RuleIndex.byEndConfiguration();
 
     public FastLookupRuleMap(PushdownSystem<L,S> pds) {
         this.pds = pds;
@@ -30,6 +33,10 @@ public class FastLookupRuleMap<L,S> {
                     rule.getEndConfiguration().getControlLocation(),
                     rule
             );
+            startConfigurationIndex.add(rule);
+            if (rule.getEndConfiguration().getWord().size() > 0) {
+                endConfigurationIndex.add(rule);
+            }
         });
     }
 
@@ -44,4 +51,20 @@ public class FastLookupRuleMap<L,S> {
     public Collection<Rule<L,S>> lookupByEndState(ControlLocation<L> controlLocation) {
         return endStateMultimap.get(controlLocation);
     }
+
+    /**
+     * @return the rules that start at the given location with a stack symbol that matches the given one, including
+     * rules that start with a wildcard
+     */
+    public Iterable<Rule<L,S>> lookupByStartConfiguration(ControlLocation<L> controlLocation, StackSymbol<S> symbol) {
+        return startConfigurationIndex.lookup(controlLocation, symbol);
+    }
+
+    /**
+     * @return the normal and push rules that end at the given location with a new top of the stack that matches the
+     * given symbol, including rules whose new top is a wildcard
+     */
+    public Iterable<Rule<L,S>> lookupByEndConfiguration(ControlLocation<L> controlLocation, StackSymbol<S> symbol) {
+        return endConfigurationIndex.lookup(controlLocation, symbol);
+    }
 }
@@ -0,0 +1,218 @@
+package ds.simplepds.automata;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.StackSymbol;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable snapshot of a {@link PAutomaton} that can be shared between threads. States and stack symbols are
+ * numbered densely. The outgoing transitions of all states are stored in two flat arrays of label and target ids
+ * (compressed sparse rows), where the transitions of a state are contiguous and sorted by label. Looking up the
+ * transitions of a state is a range of the arrays, and looking up the targets for a state and label is a binary search
+ * within that range.
+ * @param <L>
+ * @param <S>
+ */
+public final class FrozenPAutomaton<L,S> {
+
+    private final ControlLocation<L>[] states;
+    private final ImmutableMap<ControlLocation<L>, Integer> stateIds;
+    private final StackSymbol<S>[] symbols;
+    private final ImmutableMap<StackSymbol<S>, Integer> symbolIds;
+    private final ImmutableSet<ControlLocation<L>> initialStates;
+    private final ImmutableSet<ControlLocation<L>> finalStates;
+    // The transitions of state i are at indices rowOffsets[i] until rowOffsets[i + 1] of labels and targets
+    private final int[] rowOffsets;
+    private final int[] labels;
+    private final int[] targets;
+
+    FrozenPAutomaton(PAutomaton<L,S> automaton) {
+        ImmutableSet<ControlLocation<L>> allStates = ImmutableSet.<ControlLocation<L>>builder()
+                .addAll(automaton.getAllStates())
+                .build();
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ControlLocation<L>[] states = allStates.toArray(new ControlLocation[0]);
+        this.states = states;
+        ImmutableMap.Builder<ControlLocation<L>, Integer> stateIdBuilder = ImmutableMap.builder();
+        for (int i = 0; i < states.length; i++) {
+            stateIdBuilder.put(states[i], i);
+        }
+        this.stateIds = stateIdBuilder.build();
+
+        ImmutableSet.Builder<StackSymbol<S>> symbolSetBuilder = ImmutableSet.builder();
+        automaton.getTransitionRelation().forEach(transition -> symbolSetBuilder.add(transition.getLabel()));
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        StackSymbol<S>[] symbols = symbolSetBuilder.build().toArray(new StackSymbol[0]);
+        this.symbols = symbols;
+        ImmutableMap.Builder<StackSymbol<S>, Integer> symbolIdBuilder = ImmutableMap.builder();
+        for (int i = 0; i < symbols.length; i++) {
+            symbolIdBuilder.put(symbols[i], i);
+        }
+        this.symbolIds = symbolIdBuilder.build();
+
+        this.initialStates = ImmutableSet.copyOf(automaton.getInitialStates());
+        this.finalStates = ImmutableSet.copyOf(automaton.getFinalStates());
+
+        // Sort the transitions by start state, label and target, then record where each state's row begins
+        int count = automaton.getTransitionRelation().size();
+        long[] keys = new long[count];
+        int[] transitionTargets = new int[count];
+        int index = 0;
+        for (PAutomaton.Transition<L,S> transition : automaton.getTransitionRelation()) {
+            keys[index] = ((long) stateIds.get(transition.getStartState()) << 32) | symbolIds.get(transition.getLabel());
+            transitionTargets[index] = stateIds.get(transition.getEndState());
+            index++;
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> keys[a] != keys[b]
+                ? Long.compare(keys[a], keys[b])
+                : Integer.compare(transitionTargets[a], transitionTargets[b]));
+        this.rowOffsets = new int[states.length + 1];
+        this.labels = new int[count];
+        this.targets = new int[count];
+        for (int i = 0; i < count; i++) {
+            long key = keys[order[i]];
+            rowOffsets[(int) (key >>> 32) + 1]++;
+            labels[i] = (int) key;
+            targets[i] = transitionTargets[order[i]];
+        }
+        for (int i = 0; i < states.length; i++) {
+            rowOffsets[i + 1] += rowOffsets[i];
+        }
+    }
+
+    public Set<ControlLocation<L>> getAllStates() {
+        return stateIds.keySet();
+    }
+
+    public Set<ControlLocation<L>> getInitialStates() {
+        return initialStates;
+    }
+
+    public Set<ControlLocation<L>> getFinalStates() {
+        return finalStates;
+    }
+
+    public int getTransitionCount() {
+        return targets.length;
+    }
+
+    /**
+     * @return the transitions leaving the given state, sorted by label
+     */
+    public List<PAutomaton.Transition<L,S>> getTransitionsFrom(ControlLocation<L> state) {
+        Integer id = stateIds.get(state);
+        if (id == null) {
+            return Collections.emptyList();
+        }
+        return transitions(id, rowOffsets[id], rowOffsets[id + 1]);
+    }
+
+    /**
+     * @return the states reached from the given state by a transition with the given label
+     */
+    public List<ControlLocation<L>> getTargets(ControlLocation<L> state, StackSymbol<S> label) {
+        Integer id = stateIds.get(state);
+        Integer symbol = symbolIds.get(label);
+        if (id == null || symbol == null) {
+            return Collections.emptyList();
+        }
+        int from = lowerBound(rowOffsets[id], rowOffsets[id + 1], symbol);
+        int to = lowerBound(from, rowOffsets[id + 1], symbol + 1);
+        return new AbstractList<>() {
+            @Override
+            public ControlLocation<L> get(int index) {
+                return states[targets[from + index]];
+            }
+
+            @Override
+            public int size() {
+                return to - from;
+            }
+        };
+    }
+
+    public boolean containsTransition(PAutomaton.Transition<L,S> transition) {
+        Integer end = stateIds.get(transition.getEndState());
+        if (end == null) {
+            return false;
+        }
+        for (ControlLocation<L> target : getTargets(transition.getStartState(), transition.getLabel())) {
+            if (target.equals(transition.getEndState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return a mutable copy of this automaton
+     */
+    public PAutomaton<L,S> thaw() {
+        PAutomaton<L,S> automaton = new PAutomaton<>();
+        for (ControlLocation<L> state : states) {
+            automaton.addState(state);
+        }
+        initialStates.forEach(automaton::addInitialState);
+        finalStates.forEach(automaton::addFinalState);
+        automaton.getTransitionRelation().addAll(transitions(-1, 0, targets.length));
+        return automaton;
+    }
+
+    // The first index in [from, to) whose label is at least the given one
+    private int lowerBound(int from, int to, int label) {
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (labels[middle] < label) {
+                from = middle + 1;
+            } else {
+                to = middle;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * @param start the start state of the transitions, or -1 to look it up from the row offsets
+     */
+    private List<PAutomaton.Transition<L,S>> transitions(int start, int from, int to) {
+        return new AbstractList<>() {
+            @Override
+            public PAutomaton.Transition<L,S> get(int index) {
+                int position = from + index;
+                int state = start >= 0 ? start : rowOf(position);
+                return new PAutomaton.Transition<>(states[state], states[targets[position]], symbols[labels[position]]);
+            }
+
+            @Override
+            public int size() {
+                return to - from;
+            }
+        };
+    }
+
+    // The state whose row contains the given transition index
+    private int rowOf(int position) {
+        int low = 0;
+        int high = states.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (rowOffsets[middle] <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+}
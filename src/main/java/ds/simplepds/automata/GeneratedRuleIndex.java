@@ -0,0 +1,17 @@
+package ds.simplepds.automata;
+
+/**
+ * Indexes the normal rules synthesized during pre-* (deltaPrime) by their end location and end stack symbol, so that
+ * a transition only needs to be matched against the rules that can fire on it.
+ * @param <L>
+ * @param <S>
+ */
+public class GeneratedRuleIndex<L,S> extends RuleIndex<L,S> {
+
+    public GeneratedRuleIndex() {
+        super(
+                rule -> rule.getEndConfiguration().getControlLocation(),
+                rule -> rule.getEndConfiguration().getWord().get(0)
+        );
+    }
+}
@@ -1,13 +1,9 @@
 package ds.simplepds.automata;
 
-import com.google.common.collect.Sets;
+import ds.simplepds.interfaces.ControlLocation;
 import ds.simplepds.interfaces.PushdownSystem;
 import ds.simplepds.interfaces.Rule;
-
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Set;
+import ds.simplepds.interfaces.StackSymbol;
 
 /**
  * An alternative prestar implementation that is faster but less space efficient
@@ -28,88 +24,13 @@ public class HashBasedPreStar<L,S> extends Prestar<L,S>{
         this.fastLookupMap = fastLookupMap;
     }
 
-    /**
-     * Implementation of pre-* (see Esparza, et al. (CAV00) Alg. 1)
-     */
     @Override
-    public void apply() {
-        //Initialize the worklist and the set of synthesized PDS rules (deltaPrime)
-        Queue<PAutomaton.Transition<L, S>> worklist = new LinkedList<>(initialAut.getTransitionRelation());
-        Set<Rule<L,S>> deltaPrime = new HashSet<>();
-
-        // Initialize the states (and final states) of the saturated automaton
-        initialAut.getAllStates().forEach(saturatedAut::addState);
-        initialAut.getFinalStates().forEach(saturatedAut::addFinalState);
-        initialAut.getInitialStates().forEach(saturatedAut::addInitialState);
-
-        // Handle PDS pop rules
-        for (Rule<L,S> rule : fastLookupMap.lookupByWordSize(0)) {
-            worklist.add(
-                    new PAutomaton.Transition<>(
-                            rule.getStartConfiguration().getControlLocation(),
-                            rule.getEndConfiguration().getControlLocation(),
-                            rule.getStartConfiguration().getStackSymbol()
-                    )
-            );
-        }
-
-        // Process the worklist
-        while (!worklist.isEmpty()) {
-            PAutomaton.Transition<L,S> current = worklist.remove();
-            if (!saturatedAut.getTransitionRelation().contains(current)) {
-                saturatedAut.addTransition(current);
-
-                // Handle PDS normal Rules
-                for (Rule<L,S> rule : fastLookupMap.lookupByEndState(current.getStartState())) {
-                    if (rule.getEndConfiguration().getWord().size() == 1 &&
-                            rule.getEndConfiguration().getWord().get(0).equals(current.getLabel()))
-                    {
-                        worklist.add(new PAutomaton.Transition<>(
-                                rule.getStartConfiguration().getControlLocation(),
-                                current.getEndState(),
-                                rule.getStartConfiguration().getStackSymbol()
-                        ));
-                    }
-                }
-                for (Rule<L,S> rule : deltaPrime) {
-                    if (rule.getEndConfiguration().getWord().size() == 1 &&
-                            rule.getEndConfiguration().getControlLocation().equals(current.getStartState()) &&
-                            rule.getEndConfiguration().getWord().get(0).equals(current.getLabel()))
-                    {
-                        worklist.add(new PAutomaton.Transition<>(
-                                rule.getStartConfiguration().getControlLocation(),
-                                current.getEndState(),
-                                rule.getStartConfiguration().getStackSymbol()
-                        ));
-                    }
-                }
-
-                // Handle PDS Push Rules
-                for (Rule<L,S> rule : fastLookupMap.lookupByEndState(current.getStartState())) {
-                    if (rule.getEndConfiguration().getWord().size() == 2 &&
-                            rule.getEndConfiguration().getWord().get(1).equals(current.getLabel()))
-                    {
-                        deltaPrime.add(new GeneratedRule<>(
-                                rule.getStartConfiguration().getControlLocation(),
-                                rule.getStartConfiguration().getStackSymbol(),
-                                current.getEndState(),
-                                rule.getEndConfiguration().getWord().get(0)
-                        ));
+    protected Iterable<Rule<L,S>> getRulesWithWordSize(int size) {
+        return fastLookupMap.lookupByWordSize(size);
+    }
 
-                        for (PAutomaton.Transition<L,S> transition : saturatedAut.getTransitionRelation()) {
-                            if (transition.getStartState().equals(current.getEndState()) &&
-                                    transition.getLabel().equals(rule.getEndConfiguration().getWord().get(0)))
-                            {
-                                worklist.add(new PAutomaton.Transition<>(
-                                        rule.getStartConfiguration().getControlLocation(),
-                                        transition.getEndState(),
-                                        rule.getStartConfiguration().getStackSymbol()
-                                ));
-                            }
-                        }
-                    }
-                }
-            }
-        }
+    @Override
+    protected Iterable<Rule<L,S>> getRulesEndingAt(ControlLocation<L> location, StackSymbol<S> symbol) {
+        return fastLookupMap.lookupByEndConfiguration(location, symbol);
     }
 }
@@ -0,0 +1,232 @@
+package ds.simplepds.automata;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Table;
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.PushdownSystem;
+import ds.simplepds.interfaces.Rule;
+import ds.simplepds.interfaces.StackSymbol;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Post-* for several initial automata over the same pushdown system in a single saturation. Each transition carries
+ * the set of queries it belongs to, and rules are applied once for all of them (see {@link QueryUnion}).
+ *
+ * Like {@link Poststar}, the transitions to the states generated for push rules are added up front, so they belong to
+ * all queries and each query gets exactly the transitions its own saturation would add.
+ * @param <L>
+ * @param <S>
+ */
+public class MultiQueryPoststar<L,S> extends WeightedSaturationEngine<L,S,BitSet> {
+
+    protected final Function<Rule<L,S>, L> generatedStateIdentifierFunction;
+    private final QueryUnion<L,S> queries;
+    private final Multimap<Map.Entry<ControlLocation<L>, StackSymbol<S>>, Rule<L,S>> rulesByStart = HashMultimap.create();
+    // Queries of the epsilon transitions of the saturated automaton, by the state they lead to and the location they
+    // leave from
+    private final Table<ControlLocation<L>, ControlLocation<L>, BitSet> epsilons = HashBasedTable.create();
+    private final Map<ControlLocation<L>, Rule<L,S>> generatingRules = new HashMap<>();
+
+    public MultiQueryPoststar(
+            PushdownSystem<L,S> pushdownSystem,
+            List<PAutomaton<L,S>> initialAutomata,
+            Function<Rule<L,S>, L> generatedStateIdentifierFunction
+    ) {
+        this(pushdownSystem, new QueryUnion<>(initialAutomata), generatedStateIdentifierFunction);
+    }
+
+    private MultiQueryPoststar(
+            PushdownSystem<L,S> pushdownSystem,
+            QueryUnion<L,S> queries,
+            Function<Rule<L,S>, L> generatedStateIdentifierFunction
+    ) {
+        super(queries.applyingToAllQueries(pushdownSystem), queries.getUnion(), queries.getSemiring(), true);
+        this.queries = queries;
+        this.generatedStateIdentifierFunction = generatedStateIdentifierFunction;
+        for (Rule<L,S> rule : pushdownSystem.getRules()) {
+            rulesByStart.put(Maps.immutableEntry(
+                    rule.getStartConfiguration().getControlLocation(),
+                    rule.getStartConfiguration().getStackSymbol()
+            ), rule);
+        }
+    }
+
+    @Override
+    protected void initialize() {
+        initialAut.getAllStates().forEach(saturatedAut::addState);
+        initialAut.getFinalStates().forEach(this::addSaturatedFinalState);
+        initialAut.getInitialStates().forEach(saturatedAut::addInitialState);
+        for (PAutomaton.Transition<L,S> transition : initialAut.getTransitionRelation()) {
+            // A state may be initial in some queries only
+            if (queries.getFixedQueries(transition).equals(getInitialWeight(transition))) {
+                addInitialTransition(transition);
+            } else {
+                update(transition, getInitialWeight(transition));
+            }
+        }
+
+        for (Rule<L,S> rule : pushdownSystem.getRules()) {
+            if (rule.getEndConfiguration().getWord().size() == 2) {
+                GeneratedState generated = new GeneratedState(rule);
+                saturatedAut.addState(generated);
+                generatingRules.put(generated, rule);
+                update(new PAutomaton.Transition<>(
+                        rule.getEndConfiguration().getControlLocation(),
+                        generated,
+                        rule.getEndConfiguration().getWord().get(1)
+                ), semiring.one());
+            }
+        }
+    }
+
+    @Override
+    protected BitSet getInitialWeight(PAutomaton.Transition<L,S> transition) {
+        return queries.getQueries(transition);
+    }
+
+    @Override
+    protected void process(PAutomaton.Transition<L,S> current, BitSet weight) {
+        // Rules do not apply to the transition in the queries where it does not leave an initial state
+        BitSet fixed = queries.getFixedQueries(current);
+        if (fixed.intersects(weight)) {
+            weight = (BitSet) weight.clone();
+            weight.andNot(fixed);
+            if (weight.isEmpty()) {
+                return;
+            }
+        }
+        for (Map.Entry<ControlLocation<L>, BitSet> epsilon : epsilons.row(current.getStartState()).entrySet()) {
+            update(
+                    new PAutomaton.Transition<>(epsilon.getKey(), current.getEndState(), current.getLabel()),
+                    semiring.extend(weight, epsilon.getValue())
+            );
+        }
+
+        for (Rule<L,S> rule : rulesByStart.get(Maps.immutableEntry(current.getStartState(), current.getLabel()))) {
+            ControlLocation<L> end = rule.getEndConfiguration().getControlLocation();
+            List<StackSymbol<S>> word = rule.getEndConfiguration().getWord();
+            if (word.isEmpty()) {
+                addEpsilon(current.getEndState(), end, weight);
+            } else if (word.size() == 1) {
+                update(new PAutomaton.Transition<>(end, current.getEndState(), word.get(0)), weight);
+            } else {
+                update(
+                        new PAutomaton.Transition<>(new GeneratedState(rule), current.getEndState(), word.get(0)),
+                        weight
+                );
+            }
+        }
+    }
+
+    private void addEpsilon(ControlLocation<L> state, ControlLocation<L> location, BitSet weight) {
+        BitSet old = epsilons.get(state, location);
+        BitSet combined = old == null ? weight : semiring.combine(old, weight);
+        if (combined.equals(old)) {
+            return;
+        }
+        epsilons.put(state, location, combined);
+        BitSet finalQueries = semiring.extend(combined, queries.getFinalQueries(state));
+        if (!finalQueries.isEmpty()) {
+            queries.addFinalQueries(location, finalQueries);
+            addSaturatedFinalState(location);
+        }
+        for (PAutomaton.Transition<L,S> transition : new ArrayList<>(outgoing.get(state))) {
+            update(
+                    new PAutomaton.Transition<>(location, transition.getEndState(), transition.getLabel()),
+                    semiring.extend(saturatedAut.getWeight(transition), combined)
+            );
+        }
+    }
+
+    public int getQueryCount() {
+        return queries.size();
+    }
+
+    /**
+     * @return the queries whose saturated automaton contains the given transition
+     */
+    public BitSet getQueries(PAutomaton.Transition<L,S> transition) {
+        return (BitSet) saturatedAut.getWeight(transition).clone();
+    }
+
+    /**
+     * @return the saturated automaton of the query with the given index
+     */
+    public PAutomaton<L,S> getSaturatedAut(int query) {
+        return queries.demultiplex(saturatedAut, query);
+    }
+
+    /**
+     * @return the saturated automaton of the query with the given index, in which each generated state is replaced by
+     * the state the given function creates for its push rule, e.g. the state a {@link Poststar} would generate
+     */
+    public PAutomaton<L,S> getSaturatedAut(int query, Function<Rule<L,S>, ControlLocation<L>> generatedStates) {
+        Function<ControlLocation<L>, ControlLocation<L>> rename = state -> {
+            Rule<L,S> rule = generatingRules.get(state);
+            return rule == null ? state : generatedStates.apply(rule);
+        };
+        PAutomaton<L,S> demultiplexed = getSaturatedAut(query);
+        PAutomaton<L,S> renamed = new PAutomaton<>();
+        demultiplexed.getAllStates().forEach(state -> renamed.addState(rename.apply(state)));
+        demultiplexed.getInitialStates().forEach(state -> renamed.addInitialState(rename.apply(state)));
+        demultiplexed.getFinalStates().forEach(state -> renamed.addFinalState(rename.apply(state)));
+        for (PAutomaton.Transition<L,S> transition : demultiplexed.getTransitionRelation()) {
+            renamed.addTransition(
+                    rename.apply(transition.getStartState()),
+                    rename.apply(transition.getEndState()),
+                    transition.getLabel()
+            );
+        }
+        return renamed;
+    }
+
+    public GeneratedState createGeneratedStateFromRule(Rule<L,S> rule) {
+        return new GeneratedState(rule);
+    }
+
+    public class GeneratedState implements ControlLocation<L> {
+
+        private final Rule<L,S> generatingRule;
+
+        protected GeneratedState(Rule<L,S> generatingRule) {
+            this.generatingRule = generatingRule;
+        }
+
+        @Override
+        public L unwrap() {
+            return generatedStateIdentifierFunction.apply(generatingRule);
+        }
+
+        public Rule<L,S> getGeneratingRule() {
+            return generatingRule;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            MultiQueryPoststar<?,?>.GeneratedState that = (MultiQueryPoststar<?,?>.GeneratedState) o;
+            return Objects.equals(generatingRule, that.generatingRule);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(generatingRule);
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(unwrap());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package ds.simplepds.automata;
+
+import ds.simplepds.interfaces.PushdownSystem;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Pre* for several target automata over the same pushdown system in a single saturation. Each transition carries the
+ * set of queries it belongs to, and rules are applied once for all of them (see {@link QueryUnion}).
+ * @param <L>
+ * @param <S>
+ */
+public class MultiQueryPrestar<L,S> extends WeightedPrestar<L,S,BitSet> {
+
+    private final QueryUnion<L,S> queries;
+
+    public MultiQueryPrestar(PushdownSystem<L,S> pushdownSystem, List<PAutomaton<L,S>> targetAutomata) {
+        this(pushdownSystem, new QueryUnion<>(targetAutomata));
+    }
+
+    private MultiQueryPrestar(PushdownSystem<L,S> pushdownSystem, QueryUnion<L,S> queries) {
+        super(queries.applyingToAllQueries(pushdownSystem), queries.getUnion(), queries.getSemiring());
+        this.queries = queries;
+    }
+
+    @Override
+    protected BitSet getInitialWeight(PAutomaton.Transition<L,S> transition) {
+        return queries.getQueries(transition);
+    }
+
+    public int getQueryCount() {
+        return queries.size();
+    }
+
+    /**
+     * @return the queries whose saturated automaton contains the given transition
+     */
+    public BitSet getQueries(PAutomaton.Transition<L,S> transition) {
+        return (BitSet) saturatedAut.getWeight(transition).clone();
+    }
+
+    /**
+     * @return the saturated automaton of the query with the given index
+     */
+    public PAutomaton<L,S> getSaturatedAut(int query) {
+        return queries.demultiplex(saturatedAut, query);
+    }
+}
@@ -4,9 +4,22 @@ import ds.simplepds.interfaces.ControlLocation;
 import ds.simplepds.interfaces.Rule;
 import ds.simplepds.interfaces.StackSymbol;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Objects;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class PAutomaton<L,S> {
 
@@ -64,25 +77,140 @@ public class PAutomaton<L,S> {
         states.add(state);
     }
 
+    /**
+     * @return an immutable, thread-safe snapshot of this automaton with compact lookups by state and by state and label
+     */
+    public FrozenPAutomaton<L,S> freeze() {
+        return new FrozenPAutomaton<>(this);
+    }
+
+    /**
+     * Merges states that accept the same words. Initial states are kept, so the minimized automaton accepts the same
+     * configurations as this one. This automaton is not changed, so the minimized copy can replace it e.g. in a cache.
+     * @return a copy of this automaton with bisimilar states merged
+     */
+    public PAutomaton<L,S> minimize() {
+        return new AutomatonMinimizer<>(this).minimize();
+    }
+
+    /**
+     * Lazily enumerates the configurations accepted by this automaton in order of stack length, shortest first. The
+     * stack of a configuration is given from top to bottom. The language of the automaton may be infinite, so bound
+     * the number of configurations with {@link Stream#limit} if the length bound does not.
+     * @param maxLength the maximum stack length of the enumerated configurations
+     */
+    public Stream<AcceptedConfiguration<L,S>> acceptedConfigurations(int maxLength) {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(
+                        acceptedConfigurationIterator(maxLength),
+                        Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL
+                ),
+                false
+        );
+    }
+
+    /**
+     * @see #acceptedConfigurations(int)
+     */
+    public Iterator<AcceptedConfiguration<L,S>> acceptedConfigurationIterator(int maxLength) {
+        return new ConfigurationEnumerator<>(this, maxLength);
+    }
+
     public String toDotString() {
-        StringBuilder out = new StringBuilder();
-        out.append("digraph {\n");
-        for (Transition<L,S> t : transitionRelation) {
-            out.append("\t\"")
-                    .append(t.startState)
-                    .append("\"")
-                    .append(" -> ")
-                    .append("\"")
-                    .append(t.endState)
-                    .append("\"")
-                    .append("[label=\"")
-                    .append(t.label)
-                    .append("\"];\n");
+        StringWriter out = new StringWriter();
+        try {
+            writeDot(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        out.append("}");
         return out.toString();
     }
 
+    /**
+     * Writes the transitions of this automaton in DOT format. Transitions are written one at a time, so memory use
+     * does not depend on the size of the automaton. The writer is flushed but not closed.
+     */
+    public void writeDot(Writer writer) throws IOException {
+        Writer out = buffered(writer);
+        out.write("digraph {\n");
+        for (Transition<L,S> t : transitionRelation) {
+            out.write("\t\"");
+            out.write(String.valueOf(t.startState));
+            out.write("\" -> \"");
+            out.write(String.valueOf(t.endState));
+            out.write("\"[label=\"");
+            out.write(String.valueOf(t.label));
+            out.write("\"];\n");
+        }
+        out.write("}");
+        out.flush();
+    }
+
+    /**
+     * Writes this automaton in DOT format as UTF-8 to the given channel, which is not closed
+     * @see #writeDot(Writer)
+     */
+    public void writeDot(WritableByteChannel channel) throws IOException {
+        writeDot(Channels.newWriter(channel, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes this automaton as a tab-separated list with one record per line: {@code I <state>} for each initial
+     * state, {@code F <state>} for each final state and {@code T <start> <label> <end>} for each transition. Tabs,
+     * line breaks and backslashes in names are escaped as {@code \t}, {@code \n}, {@code \r} and {@code \\}.
+     * Records are written one at a time, so memory use does not depend on the size of the automaton. The writer is
+     * flushed but not closed.
+     */
+    public void writeEdgeList(Writer writer) throws IOException {
+        Writer out = buffered(writer);
+        for (ControlLocation<L> state : initialStates) {
+            out.write("I\t");
+            writeEscaped(out, state);
+            out.write('\n');
+        }
+        for (ControlLocation<L> state : finalStates) {
+            out.write("F\t");
+            writeEscaped(out, state);
+            out.write('\n');
+        }
+        for (Transition<L,S> t : transitionRelation) {
+            out.write("T\t");
+            writeEscaped(out, t.startState);
+            out.write('\t');
+            writeEscaped(out, t.label);
+            out.write('\t');
+            writeEscaped(out, t.endState);
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes this automaton as a UTF-8 edge list to the given channel, which is not closed
+     * @see #writeEdgeList(Writer)
+     */
+    public void writeEdgeList(WritableByteChannel channel) throws IOException {
+        writeEdgeList(Channels.newWriter(channel, StandardCharsets.UTF_8));
+    }
+
+    private static Writer buffered(Writer writer) {
+        return writer instanceof BufferedWriter || writer instanceof StringWriter ? writer : new BufferedWriter(writer);
+    }
+
+    private static void writeEscaped(Writer out, Object value) throws IOException {
+        String name = String.valueOf(value);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            switch (c) {
+                case '\t': out.write("\\t"); break;
+                case '\n': out.write("\\n"); break;
+                case '\r': out.write("\\r"); break;
+                case '\\': out.write("\\\\"); break;
+                default: out.write(c);
+            }
+        }
+    }
+
     public static class Transition<L,S> {
 
         private final ControlLocation<L> startState;
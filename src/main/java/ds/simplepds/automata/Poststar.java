@@ -2,15 +2,26 @@ package ds.simplepds.automata;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
 import com.google.common.collect.Sets;
+import ds.simplepds.automata.demand.Wildcard;
 import ds.simplepds.interfaces.ControlLocation;
 import ds.simplepds.interfaces.PushdownSystem;
 import ds.simplepds.interfaces.Rule;
+import ds.simplepds.interfaces.StackSymbol;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Queue;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -18,12 +29,15 @@ import java.util.stream.Collectors;
  * @param <L>
  * @param <S>
  */
-public class Poststar<L,S> {
+public class Poststar<L,S> extends SaturationEngine<L,S> {
 
-    protected final PAutomaton<L,S> saturatedAut;
     protected final PAutomaton<L,S>  initialAut;
     protected final PushdownSystem<L,S> pushdownSystem;
     protected final Function<Rule<L,S>, L> generatedStateIdentifierFunction;
+    // Keeps track of incoming epsilon transitions for each state
+    protected final Multimap<ControlLocation<L>, ControlLocation<L>> incomingEpsilons = HashMultimap.create();
+    private Map<List<Object>, Rule<L,S>> rulesByKey;
+    private ProcedureSummaries<L,S> procedureSummaries;
 
     public Poststar(
             PushdownSystem<L,S> pushdownSystem,
@@ -33,39 +47,45 @@ public class Poststar<L,S> {
         this.pushdownSystem = pushdownSystem;
         this.initialAut = initialAutomaton;
         this.generatedStateIdentifierFunction = generatedStateIdentifierFunction;
-        this.saturatedAut = new PAutomaton<>();
     }
 
     /**
      * Implementation of post-*.  See Esparza, et al. (CAV00) Alg. 3.
      */
-    public void apply() {
+    @Override
+    protected void initialize() {
+        PAutomaton<L,S> initial = trimInitialAutomaton(initialAut);
+
         // Initialize the worklist with transitions from the initial automaton
         // that start at an initial state
-        Queue<PAutomaton.Transition<L, S>> worklist =
-                initialAut.getTransitionRelation()
+        List<PAutomaton.Transition<L, S>> initialTransitions =
+                initial.getTransitionRelation()
                         .stream()
                         .filter(transition ->
-                                initialAut.getInitialStates()
+                                initial.getInitialStates()
                                         .contains(transition.getStartState())
                         ).collect(Collectors.toCollection(LinkedList::new));
+        worklist.addAll(initialTransitions);
 
         // All transitions from the initial automaton that are not in the worklist
         // are added directly to the transition relation for the saturated automaton
-        Sets.difference(initialAut.getTransitionRelation(), new HashSet<>(worklist))
-                .forEach(saturatedAut::addTransition);
+        Sets.difference(initial.getTransitionRelation(), new HashSet<>(initialTransitions))
+                .forEach(this::addSaturatedTransition);
 
         // Initialize the states of the saturated automaton
-        initialAut.getAllStates().forEach(saturatedAut::addState);
-        initialAut.getFinalStates().forEach(saturatedAut::addFinalState);
-        initialAut.getInitialStates().forEach(saturatedAut::addInitialState);
+        initial.getAllStates().forEach(this::addSaturatedState);
+        initial.getFinalStates().forEach(this::addSaturatedFinalState);
+        initial.getInitialStates().forEach(this::addSaturatedInitialState);
 
         // Initial processing of push rules. For each push rule we create a new
         // state and add a transition from the push rule's end location
-        for (Rule<L,S> rule : pushdownSystem.getRules()) {
+        for (Rule<L,S> rule : getRulesWithWordSize(2)) {
             if (rule.getEndConfiguration().getWord().size() == 2) {
-                GeneratedState generated = new GeneratedState(rule);
-                saturatedAut.addState(generated);
+                if (rule.getEndConfiguration().getWord().get(1) instanceof Wildcard<S>) {
+                    throw new IllegalArgumentException("Push rules must not push a wildcard as the new top: " + rule);
+                }
+                GeneratedState<L,S> generated = createGeneratedStateFromRule(rule);
+                addSaturatedState(generated);
                 worklist.add(new PAutomaton.Transition<>(
                         rule.getEndConfiguration().getControlLocation(),
                         generated,
@@ -73,101 +93,240 @@ public class Poststar<L,S> {
                 ));
             }
         }
+    }
+
+    @Override
+    protected void process(PAutomaton.Transition<L,S> current) {
+        if (procedureSummaries != null && procedureSummaries.isSummarized(current.getStartState())) {
+            procedureSummaries.instantiate(current, this::createGeneratedStateFromRule, worklist::add, this::addIncomingEpsilon);
+            return;
+        }
+
+        // Handle PDS pop rules
+        for (Rule<L,S> rule : getRulesStartingAt(current.getStartState(), current.getLabel())) {
+            if (rule.getEndConfiguration().getWord().size() == 0 &&
+                rule.getStartConfiguration().getControlLocation().equals(current.getStartState()) &&
+                Wildcard.matches(rule.getStartConfiguration().getStackSymbol(), current.getLabel()))
+            {
+                addIncomingEpsilon(current.getEndState(), rule.getEndConfiguration().getControlLocation());
+            }
+        }
+
+        // Handle PDS normal rules
+        for (Rule<L,S> rule : getRulesStartingAt(current.getStartState(), current.getLabel())) {
+            if (rule.getEndConfiguration().getWord().size() == 1 &&
+                rule.getStartConfiguration().getControlLocation().equals(current.getStartState()) &&
+                Wildcard.matches(rule.getStartConfiguration().getStackSymbol(), current.getLabel()))
+            {
+                worklist.add(new PAutomaton.Transition<>(
+                        rule.getEndConfiguration().getControlLocation(),
+                        current.getEndState(),  // Is this correct? CAV00 paper presumably has a typo
+                                                // and uses an unbound symbol as the end of this transition.
+                        instantiate(rule.getEndConfiguration().getWord().get(0), rule, current)
+                ));
+            }
+        }
 
-        // Initialize a data structure to keep track of incoming
-        // epsilon transitions for each state
-        Multimap<ControlLocation<L>, ControlLocation<L>> incomingEpsilons = HashMultimap.create();
-
-        // Process the worklist
-        while (!worklist.isEmpty()) {
-            PAutomaton.Transition<L,S> current = worklist.remove();
-            if (!saturatedAut.getTransitionRelation().contains(current)) {
-                saturatedAut.addTransition(current);
-
-                // Handle PDS pop rules
-                for (Rule<L,S> rule : pushdownSystem.getRules()) {
-                    if (rule.getEndConfiguration().getWord().size() == 0 &&
-                        rule.getStartConfiguration().getControlLocation().equals(current.getStartState()) &&
-                        rule.getStartConfiguration().getStackSymbol().equals(current.getLabel()) &&
-                        !incomingEpsilons.containsEntry(
-                                current.getEndState(),
-                                rule.getEndConfiguration().getControlLocation()
-                        ))
-                    {
-                        incomingEpsilons.put(current.getEndState(), rule.getEndConfiguration().getControlLocation());
-                        for (PAutomaton.Transition<L,S> transition : saturatedAut.getTransitionRelation()) {
-                            if (transition.getStartState().equals(current.getEndState())) {
-                                worklist.add(new PAutomaton.Transition<>(
-                                        rule.getEndConfiguration().getControlLocation(),
-                                        transition.getEndState(),
-                                        transition.getLabel()
-                                ));
-                            }
-                        }
-                        if (saturatedAut.getFinalStates().contains(current.getEndState())) {
-                            saturatedAut.addFinalState(rule.getEndConfiguration().getControlLocation());
-                        }
-                    }
+        // Handle PDS push rules
+        for (Rule<L,S> rule : getRulesStartingAt(current.getStartState(), current.getLabel())) {
+            if (rule.getEndConfiguration().getWord().size() == 2 &&
+                    rule.getStartConfiguration().getControlLocation().equals(current.getStartState()) &&
+                    Wildcard.matches(rule.getStartConfiguration().getStackSymbol(), current.getLabel()))
+            {
+                GeneratedState<L,S> generated = createGeneratedStateFromRule(rule);
+                StackSymbol<S> below = instantiate(rule.getEndConfiguration().getWord().get(0), rule, current);
+                addSaturatedTransition(new PAutomaton.Transition<>(
+                        generated,
+                        current.getEndState(),
+                        below
+                ));
+                for (ControlLocation<L> state : incomingEpsilons.get(generated)) {
+                    worklist.add(new PAutomaton.Transition<>(
+                            state,
+                            current.getEndState(),
+                            below
+                    ));
                 }
+            }
+        }
+    }
 
-                // Handle PDS normal rules
-                for (Rule<L,S> rule : pushdownSystem.getRules()) {
-                    if (rule.getEndConfiguration().getWord().size() == 1 &&
-                        rule.getStartConfiguration().getControlLocation().equals(current.getStartState()) &&
-                        rule.getStartConfiguration().getStackSymbol().equals(current.getLabel()))
-                    {
-                        worklist.add(new PAutomaton.Transition<>(
-                                rule.getEndConfiguration().getControlLocation(),
-                                current.getEndState(),  // Is this correct? CAV00 paper presumably has a typo
-                                                        // and uses an unbound symbol as the end of this transition.
-                                rule.getEndConfiguration().getWord().get(0)
-                        ));
-                    }
+    /**
+     * Uses precomputed summaries for a library fragment instead of applying the fragment's rules. The summary of an
+     * entry configuration is instantiated whenever a transition leaving it is saturated.
+     */
+    public void setProcedureSummaries(ProcedureSummaries<L,S> procedureSummaries) {
+        this.procedureSummaries = procedureSummaries;
+    }
+
+    /**
+     * @return the epsilon transitions of the saturated automaton, as control locations by the state they lead to
+     */
+    public Multimap<ControlLocation<L>, ControlLocation<L>> getIncomingEpsilons() {
+        return Multimaps.unmodifiableMultimap(incomingEpsilons);
+    }
+
+    /**
+     * Adds an epsilon transition from the given location to the given state, and the transitions it implies for the
+     * location
+     */
+    protected void addIncomingEpsilon(ControlLocation<L> state, ControlLocation<L> location) {
+        if (!incomingEpsilons.put(state, location)) {
+            return;
+        }
+        logIncomingEpsilon(state, location);
+        for (PAutomaton.Transition<L,S> transition : saturatedAut.getTransitionRelation()) {
+            if (transition.getStartState().equals(state)) {
+                worklist.add(new PAutomaton.Transition<>(
+                        location,
+                        transition.getEndState(),
+                        transition.getLabel()
+                ));
+            }
+        }
+        if (saturatedAut.getFinalStates().contains(state)) {
+            addSaturatedFinalState(location);
+        }
+    }
+
+    /**
+     * @return the rules of the pushdown system whose end configuration has a word of the given size. The rules may
+     * include rules of other sizes.
+     */
+    protected Iterable<Rule<L,S>> getRulesWithWordSize(int size) {
+        return pushdownSystem.getRules();
+    }
+
+    /**
+     * @return the rules of the pushdown system that start at the given location with a stack symbol that matches the
+     * given one. The rules may include rules that start elsewhere or with other symbols.
+     */
+    protected Iterable<Rule<L,S>> getRulesStartingAt(ControlLocation<L> location, StackSymbol<S> symbol) {
+        return pushdownSystem.getRules();
+    }
+
+    /**
+     * A wildcard in the end configuration of a rule stands for the symbol the rule was applied to
+     * @return the symbol written by the rule when it is applied to the given transition
+     */
+    private StackSymbol<S> instantiate(StackSymbol<S> written, Rule<L,S> rule, PAutomaton.Transition<L,S> current) {
+        if (!(written instanceof Wildcard<S>)) {
+            return written;
+        }
+        StackSymbol<S> startSymbol = rule.getStartConfiguration().getStackSymbol();
+        return startSymbol instanceof Wildcard<S> ? current.getLabel() : startSymbol;
+    }
+
+    @Override
+    protected Set<ControlLocation<L>> getLocationsOfInterest() {
+        Set<ControlLocation<L>> locations = new HashSet<>(initialAut.getInitialStates());
+        for (Rule<L,S> rule : pushdownSystem.getRules()) {
+            locations.add(rule.getStartConfiguration().getControlLocation());
+            locations.add(rule.getEndConfiguration().getControlLocation());
+        }
+        return locations;
+    }
+
+    @Override
+    public void enableCheckpointing(Path file, CheckpointCodec<L,S> codec, Duration interval) {
+        super.enableCheckpointing(file, codec, interval);
+    }
+
+    @Override
+    public void enableSpilling(Path directory, CheckpointCodec<L,S> codec, int maxInMemoryItems) {
+        super.enableSpilling(directory, codec, maxInMemoryItems);
+    }
+
+    /**
+     * Processes the worklist component by component, in topological order of the strongly connected components of
+     * the control locations of the pushdown system. Work only returns to an earlier component through a cycle, so
+     * locations upstream of a transition settle before it is processed. Must be called before {@link #apply()} and
+     * cannot be combined with spilling.
+     */
+    public void enableComponentOrdering() {
+        enableComponentOrdering(ComponentOrder.forward(pushdownSystem.getRules()));
+    }
+
+    @Override
+    protected void restoreIncomingEpsilon(ControlLocation<L> state, ControlLocation<L> location) {
+        incomingEpsilons.put(state, location);
+    }
+
+    @Override
+    protected CheckpointCodec<L,S> checkpointCodec(CheckpointCodec<L,S> codec) {
+        // Generated states are written as the push rule that generated them
+        return new CheckpointCodec<>() {
+            @Override
+            public void writeLocation(ControlLocation<L> location, DataOutput out) throws IOException {
+                if (location instanceof GeneratedState<?,?>) {
+                    out.writeBoolean(true);
+                    @SuppressWarnings("unchecked")
+                    Rule<L,S> rule = ((GeneratedState<L,S>) location).getGeneratingRule();
+                    Checkpoint.writeRule(codec, rule, out);
+                } else {
+                    out.writeBoolean(false);
+                    codec.writeLocation(location, out);
                 }
+            }
 
-                // Handle PDS push rules
-                for (Rule<L,S> rule : pushdownSystem.getRules()) {
-                    if (rule.getEndConfiguration().getWord().size() == 2 &&
-                            rule.getStartConfiguration().getControlLocation().equals(current.getStartState()) &&
-                            rule.getStartConfiguration().getStackSymbol().equals(current.getLabel()))
-                    {
-                        GeneratedState generated = new GeneratedState(rule);
-                        saturatedAut.addTransition(new PAutomaton.Transition<>(
-                                generated,
-                                current.getEndState(),
-                                rule.getEndConfiguration().getWord().get(0)
-                        ));
-                        for (ControlLocation<L> state : incomingEpsilons.get(generated)) {
-                            worklist.add(new PAutomaton.Transition<>(
-                                    state,
-                                    current.getEndState(),
-                                    rule.getEndConfiguration().getWord().get(0)
-                            ));
-                        }
-                    }
+            @Override
+            public ControlLocation<L> readLocation(DataInput in) throws IOException {
+                if (in.readBoolean()) {
+                    return createGeneratedStateFromRule(lookupRule(Checkpoint.readRuleKey(codec, in)));
                 }
+                return codec.readLocation(in);
             }
-        }
+
+            @Override
+            public void writeSymbol(StackSymbol<S> symbol, DataOutput out) throws IOException {
+                codec.writeSymbol(symbol, out);
+            }
+
+            @Override
+            public StackSymbol<S> readSymbol(DataInput in) throws IOException {
+                return codec.readSymbol(in);
+            }
+        };
     }
 
-    public PAutomaton<L, S> getSaturatedAut() {
-        return saturatedAut;
+    private Rule<L,S> lookupRule(List<Object> key) throws IOException {
+        if (rulesByKey == null) {
+            rulesByKey = new HashMap<>();
+            pushdownSystem.getRules().forEach(rule -> rulesByKey.put(Checkpoint.ruleKey(rule), rule));
+        }
+        Rule<L,S> rule = rulesByKey.get(key);
+        if (rule == null) {
+            throw new IOException("Checkpoint refers to a rule that is not part of the pushdown system: " + key);
+        }
+        return rule;
     }
 
     public PAutomaton<L, S> getInitialAut() {
         return initialAut;
     }
 
-    public GeneratedState createGeneratedStateFromRule(Rule<L,S> rule) {
-        return new GeneratedState(rule);
+    public GeneratedState<L,S> createGeneratedStateFromRule(Rule<L,S> rule) {
+        return new GeneratedState<>(rule, generatedStateIdentifierFunction);
+    }
+
+    /**
+     * @return a function creating the states post-* generates for push rules, without an engine. The states are equal
+     * to those of any engine given the same rules
+     */
+    static <L,S> Function<Rule<L,S>, ControlLocation<L>> generatedStates(
+            Function<Rule<L,S>, L> generatedStateIdentifierFunction
+    ) {
+        return rule -> new GeneratedState<>(rule, generatedStateIdentifierFunction);
     }
 
-    public class GeneratedState implements ControlLocation<L> {
+    public static class GeneratedState<L,S> implements ControlLocation<L> {
 
         private final Rule<L,S> generatingRule;
+        private final Function<Rule<L,S>, L> generatedStateIdentifierFunction;
 
-        protected GeneratedState(Rule<L, S> generatingRule) {
+        protected GeneratedState(Rule<L, S> generatingRule, Function<Rule<L,S>, L> generatedStateIdentifierFunction) {
             this.generatingRule = generatingRule;
+            this.generatedStateIdentifierFunction = generatedStateIdentifierFunction;
         }
 
         @Override
@@ -183,7 +342,7 @@ public class Poststar<L,S> {
         public boolean equals(Object o) {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
-            GeneratedState that = (GeneratedState) o;
+            GeneratedState<?,?> that = (GeneratedState<?,?>) o;
             return Objects.equals(generatingRule, that.generatingRule);
         }
 
@@ -1,6 +1,6 @@
 package ds.simplepds.automata;
 
-import com.google.common.collect.Sets;
+import ds.simplepds.automata.demand.Wildcard;
 import ds.simplepds.interfaces.ControlLocation;
 import ds.simplepds.interfaces.EndConfiguration;
 import ds.simplepds.interfaces.PushdownSystem;
@@ -8,11 +8,12 @@ import ds.simplepds.interfaces.Rule;
 import ds.simplepds.interfaces.StackSymbol;
 import ds.simplepds.interfaces.StartConfiguration;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
+import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -20,36 +21,38 @@ import java.util.Set;
  * @param <L>
  * @param <S>
  */
-public class Prestar<L,S> {
+public class Prestar<L,S> extends SaturationEngine<L,S> {
 
-    protected final PAutomaton<L,S> saturatedAut;
     protected final PAutomaton<L,S> initialAut;
     protected final PushdownSystem<L,S> pushdownSystem;
+    // Index of the normal rules synthesized from push rules during saturation
+    protected final GeneratedRuleIndex<L,S> deltaPrime = new GeneratedRuleIndex<>();
 
     public Prestar(
             PushdownSystem<L,S> pushdownSystem,
             PAutomaton<L,S> initialAutomaton
     ) {
         this.pushdownSystem = pushdownSystem;
-        this.saturatedAut = new PAutomaton<>();
         this.initialAut = initialAutomaton;
     }
 
     /**
      * Implementation of pre-* (see Esparza, et al. (CAV00) Alg. 1)
      */
-    public void apply() {
-        //Initialize the worklist and the set of synthesized PDS rules (deltaPrime)
-        Queue<PAutomaton.Transition<L, S>> worklist = new LinkedList<>(initialAut.getTransitionRelation());
-        Set<Rule<L,S>> deltaPrime = new HashSet<>();
+    @Override
+    protected void initialize() {
+        PAutomaton<L,S> initial = trimInitialAutomaton(initialAut);
+
+        //Initialize the worklist
+        worklist.addAll(initial.getTransitionRelation());
 
         // Initialize the states (and final states) of the saturated automaton
-        initialAut.getAllStates().forEach(saturatedAut::addState);
-        initialAut.getFinalStates().forEach(saturatedAut::addFinalState);
-        initialAut.getInitialStates().forEach(saturatedAut::addInitialState);
+        initial.getAllStates().forEach(this::addSaturatedState);
+        initial.getFinalStates().forEach(this::addSaturatedFinalState);
+        initial.getInitialStates().forEach(this::addSaturatedInitialState);
 
         // Handle PDS pop rules
-        for (Rule<L,S> rule : pushdownSystem.getRules()) {
+        for (Rule<L,S> rule : getRulesWithWordSize(0)) {
             if (rule.getEndConfiguration().getWord().size()== 0) {
                 worklist.add(
                         new PAutomaton.Transition<>(
@@ -60,59 +63,131 @@ public class Prestar<L,S> {
                 );
             }
         }
+    }
 
-        // Process the worklist
-        while (!worklist.isEmpty()) {
-            PAutomaton.Transition<L,S> current = worklist.remove();
-            if (!saturatedAut.getTransitionRelation().contains(current)) {
-                saturatedAut.addTransition(current);
-
-                // Handle PDS normal Rules
-                for (Rule<L,S> rule : Sets.union(pushdownSystem.getRules(), deltaPrime)) {
-                    if (rule.getEndConfiguration().getWord().size() == 1 &&
-                        rule.getEndConfiguration().getControlLocation().equals(current.getStartState()) &&
-                        rule.getEndConfiguration().getWord().get(0).equals(current.getLabel()))
-                    {
-                        worklist.add(new PAutomaton.Transition<>(
-                                rule.getStartConfiguration().getControlLocation(),
-                                current.getEndState(),
-                                rule.getStartConfiguration().getStackSymbol()
-                        ));
+    @Override
+    protected void process(PAutomaton.Transition<L,S> current) {
+        // Handle PDS normal Rules
+        for (Rule<L,S> rule : getRulesEndingAt(current.getStartState(), current.getLabel())) {
+            if (rule.getEndConfiguration().getWord().size() == 1 &&
+                rule.getEndConfiguration().getControlLocation().equals(current.getStartState()))
+            {
+                applyNormalRule(rule, current);
+            }
+        }
+        for (Rule<L,S> rule : deltaPrime.lookup(current.getStartState(), current.getLabel())) {
+            applyNormalRule(rule, current);
+        }
+
+        // Handle PDS Push Rules
+        for (Rule<L,S> rule : getRulesEndingAt(current.getStartState(), current.getLabel())) {
+            if (rule.getEndConfiguration().getWord().size() == 2 &&
+                rule.getEndConfiguration().getControlLocation().equals(current.getStartState()) &&
+                Wildcard.matches(rule.getEndConfiguration().getWord().get(1), current.getLabel()))
+            {
+                StackSymbol<S> startSymbol = rule.getStartConfiguration().getStackSymbol();
+                StackSymbol<S> below = rule.getEndConfiguration().getWord().get(0);
+                if (startSymbol instanceof Wildcard<S> &&
+                    rule.getEndConfiguration().getWord().get(1) instanceof Wildcard<S>)
+                {
+                    // The rule keeps the symbol it is applied to as the new top, so that symbol is now known
+                    startSymbol = current.getLabel();
+                    if (below instanceof Wildcard<S>) {
+                        below = current.getLabel();
                     }
                 }
+                GeneratedRule<L,S> generatedRule = new GeneratedRule<>(
+                        rule.getStartConfiguration().getControlLocation(),
+                        startSymbol,
+                        current.getEndState(),
+                        below
+                );
+                if (!deltaPrime.add(generatedRule)) {
+                    // The rule has already been matched against the transitions leaving its end location
+                    continue;
+                }
+                logGeneratedRule(generatedRule);
 
-                // Handle PDS Push Rules
-                for (Rule<L,S> rule : pushdownSystem.getRules()) {
-                    if (rule.getEndConfiguration().getWord().size() == 2 &&
-                        rule.getEndConfiguration().getControlLocation().equals(current.getStartState()) &&
-                        rule.getEndConfiguration().getWord().get(1).equals(current.getLabel()))
-                    {
-                        deltaPrime.add(new GeneratedRule<>(
-                                rule.getStartConfiguration().getControlLocation(),
-                                rule.getStartConfiguration().getStackSymbol(),
-                                current.getEndState(),
-                                rule.getEndConfiguration().getWord().get(0)
-                        ));
-
-                        for (PAutomaton.Transition<L,S> transition : saturatedAut.getTransitionRelation()) {
-                            if (transition.getStartState().equals(current.getEndState()) &&
-                                transition.getLabel().equals(rule.getEndConfiguration().getWord().get(0)))
-                            {
-                                worklist.add(new PAutomaton.Transition<>(
-                                        rule.getStartConfiguration().getControlLocation(),
-                                        transition.getEndState(),
-                                        rule.getStartConfiguration().getStackSymbol()
-                                ));
-                            }
-                        }
+                for (PAutomaton.Transition<L,S> transition : saturatedAut.getTransitionRelation()) {
+                    if (transition.getStartState().equals(current.getEndState())) {
+                        applyNormalRule(generatedRule, transition);
                     }
                 }
             }
         }
     }
 
-    public PAutomaton<L, S> getSaturatedAut() {
-        return saturatedAut;
+    /**
+     * Adds the predecessor of a transition under a normal rule that ends at its start state. A wildcard in the start
+     * configuration of a rule whose end configuration is a wildcard as well stands for the label of the transition.
+     */
+    private void applyNormalRule(Rule<L,S> rule, PAutomaton.Transition<L,S> current) {
+        StackSymbol<S> written = rule.getEndConfiguration().getWord().get(0);
+        if (!Wildcard.matches(written, current.getLabel())) {
+            return;
+        }
+        StackSymbol<S> startSymbol = rule.getStartConfiguration().getStackSymbol();
+        worklist.add(new PAutomaton.Transition<>(
+                rule.getStartConfiguration().getControlLocation(),
+                current.getEndState(),
+                startSymbol instanceof Wildcard<S> && written instanceof Wildcard<S> ? current.getLabel() : startSymbol
+        ));
+    }
+
+    /**
+     * @return the rules of the pushdown system whose end configuration has a word of the given size. The rules may
+     * include rules of other sizes.
+     */
+    protected Iterable<Rule<L,S>> getRulesWithWordSize(int size) {
+        return pushdownSystem.getRules();
+    }
+
+    /**
+     * @return the normal and push rules of the pushdown system that end at the given location with a new top of the
+     * stack that matches the given symbol. The rules may include rules that end elsewhere or with other symbols.
+     */
+    protected Iterable<Rule<L,S>> getRulesEndingAt(ControlLocation<L> location, StackSymbol<S> symbol) {
+        return pushdownSystem.getRules();
+    }
+
+    @Override
+    protected Set<ControlLocation<L>> getLocationsOfInterest() {
+        Set<ControlLocation<L>> locations = new HashSet<>(initialAut.getInitialStates());
+        for (Rule<L,S> rule : pushdownSystem.getRules()) {
+            locations.add(rule.getStartConfiguration().getControlLocation());
+            locations.add(rule.getEndConfiguration().getControlLocation());
+        }
+        return locations;
+    }
+
+    @Override
+    public void enableCheckpointing(Path file, CheckpointCodec<L,S> codec, Duration interval) {
+        super.enableCheckpointing(file, codec, interval);
+    }
+
+    @Override
+    public void enableSpilling(Path directory, CheckpointCodec<L,S> codec, int maxInMemoryItems) {
+        super.enableSpilling(directory, codec, maxInMemoryItems);
+    }
+
+    /**
+     * Processes the worklist component by component, in topological order of the strongly connected components of
+     * the control locations of the pushdown system. Work only returns to an earlier component through a cycle, so
+     * locations upstream of a transition settle before it is processed. Must be called before {@link #apply()} and
+     * cannot be combined with spilling.
+     */
+    public void enableComponentOrdering() {
+        enableComponentOrdering(ComponentOrder.backward(pushdownSystem.getRules()));
+    }
+
+    @Override
+    protected void restoreGeneratedRule(
+            ControlLocation<L> startLocation,
+            StackSymbol<S> startSymbol,
+            ControlLocation<L> endLocation,
+            StackSymbol<S> endSymbol
+    ) {
+        deltaPrime.add(new GeneratedRule<>(startLocation, startSymbol, endLocation, endSymbol));
     }
 
     public PAutomaton<L, S> getInitialAut() {
@@ -123,6 +198,10 @@ public class Prestar<L,S> {
 
         private final StartConfiguration<L,S> startConfiguration;
         private final EndConfiguration<L,S> endConfiguration;
+        private final ControlLocation<L> startLoc;
+        private final StackSymbol<S> startSym;
+        private final ControlLocation<L> endLoc;
+        private final StackSymbol<S> endSym;
 
         protected GeneratedRule(
                 ControlLocation<L> startLoc,
@@ -130,6 +209,10 @@ public class Prestar<L,S> {
                 ControlLocation<L> endLoc,
                 StackSymbol<S> endSym
         ) {
+            this.startLoc = startLoc;
+            this.startSym = startSym;
+            this.endLoc = endLoc;
+            this.endSym = endSym;
             this.startConfiguration = new StartConfiguration<L, S>() {
                 @Override
                 public StackSymbol<S> getStackSymbol() {
@@ -163,5 +246,19 @@ public class Prestar<L,S> {
         public EndConfiguration<L, S> getEndConfiguration() {
             return endConfiguration;
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            GeneratedRule<?, ?> that = (GeneratedRule<?, ?>) o;
+            return Objects.equals(startLoc, that.startLoc) && Objects.equals(startSym, that.startSym) &&
+                    Objects.equals(endLoc, that.endLoc) && Objects.equals(endSym, that.endSym);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(startLoc, startSym, endLoc, endSym);
+        }
     }
 }
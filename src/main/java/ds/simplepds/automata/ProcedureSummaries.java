@@ -0,0 +1,460 @@
+package ds.simplepds.automata;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Table;
+import ds.simplepds.automata.demand.DemandPostStar;
+import ds.simplepds.automata.demand.ForwardFlowFunctions;
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.EndConfiguration;
+import ds.simplepds.interfaces.PushdownSystem;
+import ds.simplepds.interfaces.Rule;
+import ds.simplepds.interfaces.StackSymbol;
+import ds.simplepds.interfaces.StartConfiguration;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Post-* summaries of a library fragment of a pushdown system. A summary is computed once per entry configuration
+ * &lt;p, a&gt; of the fragment by saturating the fragment's rules from a transition p --a--&gt; HOLE, where HOLE stands
+ * for the rest of the stack of any caller. It consists of the saturated transitions (which mention the generated
+ * states of the fragment's push rules) and the epsilon transitions, including those into HOLE that return control
+ * to a caller.
+ *
+ * Engines that are given summaries instantiate the summary of an entry whenever a transition p --a--&gt; q is
+ * saturated, with q in place of HOLE, and do not apply any rules at the locations of the fragment. The fragment
+ * must therefore only return to locations outside of itself, and must not call back into other code.
+ * @param <L>
+ * @param <S>
+ */
+public class ProcedureSummaries<L,S> {
+
+    private static final int MAGIC = 0x53505355;
+    private static final int VERSION = 1;
+
+    private static final byte HOLE = 0;
+    private static final byte LOCATION = 1;
+    private static final byte GENERATED = 2;
+
+    private final Table<ControlLocation<L>, StackSymbol<S>, Summary<L,S>> summaries = HashBasedTable.create();
+    private final Set<ControlLocation<L>> locations = new HashSet<>();
+
+    private ProcedureSummaries() {
+    }
+
+    /**
+     * Computes the summaries of the given entries with {@link Poststar}
+     * @param library the rules of the library fragment
+     * @param entries the entry configurations, as stack symbols by control location
+     */
+    public static <L,S> ProcedureSummaries<L,S> compute(
+            PushdownSystem<L,S> library,
+            Multimap<ControlLocation<L>, StackSymbol<S>> entries,
+            Function<Rule<L,S>, L> generatedStateIdentifierFunction
+    ) {
+        ProcedureSummaries<L,S> procedureSummaries = new ProcedureSummaries<>();
+        entries.forEach((location, symbol) -> {
+            Hole<L> hole = new Hole<>();
+            Poststar<L,S> poststar = new Poststar<>(
+                    library,
+                    entryAutomaton(location, symbol, hole),
+                    generatedStateIdentifierFunction
+            );
+            poststar.apply();
+            procedureSummaries.add(location, symbol, hole, poststar.getSaturatedAut(), poststar.getIncomingEpsilons());
+        });
+        return procedureSummaries;
+    }
+
+    /**
+     * Computes the summaries of the given entries with {@link DemandPostStar}
+     * @param library flow functions generating the rules of the library fragment
+     * @param entries the entry configurations, as stack symbols by control location
+     */
+    public static <L,S> ProcedureSummaries<L,S> computeOnDemand(
+            ForwardFlowFunctions<L,S> library,
+            Multimap<ControlLocation<L>, StackSymbol<S>> entries,
+            Function<Rule<L,S>, L> generatedStateIdentifierFunction
+    ) {
+        ProcedureSummaries<L,S> procedureSummaries = new ProcedureSummaries<>();
+        entries.forEach((location, symbol) -> {
+            Hole<L> hole = new Hole<>();
+            DemandPostStar<L,S> poststar = new DemandPostStar<>(
+                    library,
+                    entryAutomaton(location, symbol, hole),
+                    generatedStateIdentifierFunction
+            );
+            poststar.apply();
+            procedureSummaries.add(location, symbol, hole, poststar.getSaturatedAut(), poststar.getIncomingEpsilons());
+        });
+        return procedureSummaries;
+    }
+
+    private static <L,S> PAutomaton<L,S> entryAutomaton(ControlLocation<L> location, StackSymbol<S> symbol, Hole<L> hole) {
+        PAutomaton<L,S> automaton = new PAutomaton<>();
+        automaton.addInitialState(location);
+        automaton.addTransition(location, hole, symbol);
+        return automaton;
+    }
+
+    private void add(
+            ControlLocation<L> entryLocation,
+            StackSymbol<S> entrySymbol,
+            Hole<L> hole,
+            PAutomaton<L,S> saturated,
+            Multimap<ControlLocation<L>, ControlLocation<L>> incomingEpsilons
+    ) {
+        Summary<L,S> summary = new Summary<>();
+        for (PAutomaton.Transition<L,S> transition : saturated.getTransitionRelation()) {
+            summary.transitions.add(new SummaryTransition<>(
+                    toSummaryState(transition.getStartState(), hole),
+                    transition.getLabel(),
+                    toSummaryState(transition.getEndState(), hole)
+            ));
+        }
+        incomingEpsilons.forEach((state, location) ->
+                summary.epsilons.add(new SummaryEpsilon<>(toSummaryState(state, hole), location))
+        );
+        add(entryLocation, entrySymbol, summary);
+    }
+
+    private void add(ControlLocation<L> entryLocation, StackSymbol<S> entrySymbol, Summary<L,S> summary) {
+        summaries.put(entryLocation, entrySymbol, summary);
+        locations.add(entryLocation);
+        for (SummaryTransition<L,S> transition : summary.transitions) {
+            if (transition.start.kind == LOCATION) {
+                locations.add(transition.start.location);
+            }
+        }
+        for (SummaryEpsilon<L,S> epsilon : summary.epsilons) {
+            if (epsilon.state.kind == HOLE && locations.contains(epsilon.location)) {
+                throw new IllegalArgumentException(
+                        "The library fragment returns to its own location " + epsilon.location
+                );
+            }
+        }
+    }
+
+    private static <L,S> SummaryState<L,S> toSummaryState(ControlLocation<L> state, Hole<L> hole) {
+        if (state.equals(hole)) {
+            return new SummaryState<>(HOLE, null, null);
+        }
+        if (state instanceof Poststar.GeneratedState<?,?>) {
+            @SuppressWarnings("unchecked")
+            Rule<L,S> rule = (Rule<L,S>) ((Poststar.GeneratedState<?,?>) state).getGeneratingRule();
+            return new SummaryState<>(GENERATED, null, rule);
+        }
+        if (state instanceof DemandPostStar<?,?>.GeneratedState) {
+            @SuppressWarnings("unchecked")
+            Rule<L,S> rule = (Rule<L,S>) ((DemandPostStar<?,?>.GeneratedState) state).getGeneratingRule();
+            return new SummaryState<>(GENERATED, null, rule);
+        }
+        return new SummaryState<>(LOCATION, state, null);
+    }
+
+    /**
+     * @return true if the given location belongs to the summarized fragment. Engines do not apply rules at these
+     * locations
+     */
+    public boolean isSummarized(ControlLocation<L> location) {
+        return locations.contains(location);
+    }
+
+    /**
+     * @return true if there is a summary for the given entry configuration
+     */
+    public boolean hasSummary(ControlLocation<L> location, StackSymbol<S> symbol) {
+        return summaries.contains(location, symbol);
+    }
+
+    /**
+     * Instantiates the summary of the entry configuration at the start of the given transition (if there is one), with
+     * the end state of the transition in place of HOLE
+     * @param generatedStates creates the engine's generated state for a push rule of the fragment
+     * @param transitions receives the transitions of the summary
+     * @param epsilons receives the epsilon transitions of the summary, as (state, location)
+     */
+    public void instantiate(
+            PAutomaton.Transition<L,S> entry,
+            Function<Rule<L,S>, ? extends ControlLocation<L>> generatedStates,
+            Consumer<PAutomaton.Transition<L,S>> transitions,
+            BiConsumer<ControlLocation<L>, ControlLocation<L>> epsilons
+    ) {
+        Summary<L,S> summary = summaries.get(entry.getStartState(), entry.getLabel());
+        if (summary == null) {
+            return;
+        }
+        ControlLocation<L> caller = entry.getEndState();
+        for (SummaryTransition<L,S> transition : summary.transitions) {
+            transitions.accept(new PAutomaton.Transition<>(
+                    transition.start.instantiate(caller, generatedStates),
+                    transition.end.instantiate(caller, generatedStates),
+                    transition.label
+            ));
+        }
+        for (SummaryEpsilon<L,S> epsilon : summary.epsilons) {
+            epsilons.accept(epsilon.state.instantiate(caller, generatedStates), epsilon.location);
+        }
+    }
+
+    /**
+     * @return the number of summarized entry configurations
+     */
+    public int size() {
+        return summaries.size();
+    }
+
+    /**
+     * Writes the summaries to a file
+     * @param codec converts control locations and stack symbols of the fragment to their binary form
+     */
+    public void write(Path file, CheckpointCodec<L,S> codec) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(summaries.size());
+            for (Table.Cell<ControlLocation<L>, StackSymbol<S>, Summary<L,S>> cell : summaries.cellSet()) {
+                codec.writeLocation(cell.getRowKey(), out);
+                codec.writeSymbol(cell.getColumnKey(), out);
+                Summary<L,S> summary = cell.getValue();
+                out.writeInt(summary.transitions.size());
+                for (SummaryTransition<L,S> transition : summary.transitions) {
+                    writeState(transition.start, codec, out);
+                    codec.writeSymbol(transition.label, out);
+                    writeState(transition.end, codec, out);
+                }
+                out.writeInt(summary.epsilons.size());
+                for (SummaryEpsilon<L,S> epsilon : summary.epsilons) {
+                    writeState(epsilon.state, codec, out);
+                    codec.writeLocation(epsilon.location, out);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads summaries written by {@link #write}. The generated states of the fragment are identified by rules that
+     * have the same start and end configuration as the original push rules, which are passed to the generated state
+     * identifier function of the engine the summaries are used with
+     */
+    public static <L,S> ProcedureSummaries<L,S> read(Path file, CheckpointCodec<L,S> codec) throws IOException {
+        ProcedureSummaries<L,S> procedureSummaries = new ProcedureSummaries<>();
+        Map<List<Object>, Rule<L,S>> rules = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a procedure summary file: " + file);
+            }
+            int entries = in.readInt();
+            for (int i = 0; i < entries; i++) {
+                ControlLocation<L> entryLocation = codec.readLocation(in);
+                StackSymbol<S> entrySymbol = codec.readSymbol(in);
+                Summary<L,S> summary = new Summary<>();
+                int transitions = in.readInt();
+                for (int j = 0; j < transitions; j++) {
+                    SummaryState<L,S> start = readState(codec, rules, in);
+                    StackSymbol<S> label = codec.readSymbol(in);
+                    summary.transitions.add(new SummaryTransition<>(start, label, readState(codec, rules, in)));
+                }
+                int epsilons = in.readInt();
+                for (int j = 0; j < epsilons; j++) {
+                    SummaryState<L,S> state = readState(codec, rules, in);
+                    summary.epsilons.add(new SummaryEpsilon<>(state, codec.readLocation(in)));
+                }
+                procedureSummaries.add(entryLocation, entrySymbol, summary);
+            }
+        }
+        return procedureSummaries;
+    }
+
+    private static <L,S> void writeState(
+            SummaryState<L,S> state,
+            CheckpointCodec<L,S> codec,
+            DataOutput out
+    ) throws IOException {
+        out.writeByte(state.kind);
+        if (state.kind == LOCATION) {
+            codec.writeLocation(state.location, out);
+        } else if (state.kind == GENERATED) {
+            Checkpoint.writeRule(codec, state.rule, out);
+        }
+    }
+
+    private static <L,S> SummaryState<L,S> readState(
+            CheckpointCodec<L,S> codec,
+            Map<List<Object>, Rule<L,S>> rules,
+            DataInput in
+    ) throws IOException {
+        byte kind = in.readByte();
+        switch (kind) {
+            case HOLE:
+                return new SummaryState<>(HOLE, null, null);
+            case LOCATION:
+                return new SummaryState<>(LOCATION, codec.readLocation(in), null);
+            case GENERATED: {
+                List<Object> key = Checkpoint.readRuleKey(codec, in);
+                Rule<L,S> rule = rules.computeIfAbsent(key, SummaryRule::new);
+                return new SummaryState<>(GENERATED, null, rule);
+            }
+            default:
+                throw new IOException("Unknown summary state kind " + kind);
+        }
+    }
+
+    private static class Summary<L,S> {
+
+        private final List<SummaryTransition<L,S>> transitions = new ArrayList<>();
+        private final List<SummaryEpsilon<L,S>> epsilons = new ArrayList<>();
+    }
+
+    private static class SummaryTransition<L,S> {
+
+        private final SummaryState<L,S> start;
+        private final StackSymbol<S> label;
+        private final SummaryState<L,S> end;
+
+        private SummaryTransition(SummaryState<L,S> start, StackSymbol<S> label, SummaryState<L,S> end) {
+            this.start = start;
+            this.label = label;
+            this.end = end;
+        }
+    }
+
+    private static class SummaryEpsilon<L,S> {
+
+        private final SummaryState<L,S> state;
+        private final ControlLocation<L> location;
+
+        private SummaryEpsilon(SummaryState<L,S> state, ControlLocation<L> location) {
+            this.state = state;
+            this.location = location;
+        }
+    }
+
+    /**
+     * A state of a summary: HOLE, a control location or the generated state of a push rule
+     */
+    private static class SummaryState<L,S> {
+
+        private final byte kind;
+        private final ControlLocation<L> location;
+        private final Rule<L,S> rule;
+
+        private SummaryState(byte kind, ControlLocation<L> location, Rule<L,S> rule) {
+            this.kind = kind;
+            this.location = location;
+            this.rule = rule;
+        }
+
+        private ControlLocation<L> instantiate(
+                ControlLocation<L> caller,
+                Function<Rule<L,S>, ? extends ControlLocation<L>> generatedStates
+        ) {
+            switch (kind) {
+                case HOLE:
+                    return caller;
+                case LOCATION:
+                    return location;
+                default:
+                    return generatedStates.apply(rule);
+            }
+        }
+    }
+
+    /**
+     * The placeholder for the stack of a caller
+     */
+    private static class Hole<L> implements ControlLocation<L> {
+
+        @Override
+        public L unwrap() {
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return "HOLE";
+        }
+    }
+
+    /**
+     * A push rule of the fragment read from a summary file, identified by its start and end configuration
+     */
+    private static class SummaryRule<L,S> implements Rule<L,S> {
+
+        private final List<Object> key;
+        private final StartConfiguration<L,S> startConfiguration;
+        private final EndConfiguration<L,S> endConfiguration;
+
+        @SuppressWarnings("unchecked")
+        private SummaryRule(List<Object> key) {
+            this.key = key;
+            ControlLocation<L> startLocation = (ControlLocation<L>) key.get(0);
+            StackSymbol<S> startSymbol = (StackSymbol<S>) key.get(1);
+            ControlLocation<L> endLocation = (ControlLocation<L>) key.get(2);
+            List<StackSymbol<S>> word = Collections.unmodifiableList((List<StackSymbol<S>>) key.get(3));
+            this.startConfiguration = new StartConfiguration<>() {
+                @Override
+                public StackSymbol<S> getStackSymbol() {
+                    return startSymbol;
+                }
+
+                @Override
+                public ControlLocation<L> getControlLocation() {
+                    return startLocation;
+                }
+            };
+            this.endConfiguration = new EndConfiguration<>() {
+                @Override
+                public List<StackSymbol<S>> getWord() {
+                    return word;
+                }
+
+                @Override
+                public ControlLocation<L> getControlLocation() {
+                    return endLocation;
+                }
+            };
+        }
+
+        @Override
+        public StartConfiguration<L,S> getStartConfiguration() {
+            return startConfiguration;
+        }
+
+        @Override
+        public EndConfiguration<L,S> getEndConfiguration() {
+            return endConfiguration;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            return Objects.equals(key, ((SummaryRule<?,?>) o).key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(key);
+        }
+    }
+}
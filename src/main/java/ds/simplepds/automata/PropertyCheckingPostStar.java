@@ -0,0 +1,208 @@
+package ds.simplepds.automata;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Table;
+import com.google.common.collect.Tables;
+import ds.simplepds.automata.demand.Wildcard;
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.PushdownSystem;
+import ds.simplepds.interfaces.Rule;
+import ds.simplepds.interfaces.StackSymbol;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Post-* that checks on the fly whether a configuration reachable from the initial automaton is accepted by a
+ * property automaton (e.g. an automaton of bad configurations). Saturation stops as soon as such a configuration is
+ * found, which is returned as a witness.
+ *
+ * The engine tracks the pairs of states of the saturated automaton and the property automaton from which a common
+ * word leads to a final state in both. The pairs are extended backwards as transitions and final states are added,
+ * and the intersection is non-empty once a pair of the same initial state is found.
+ * @param <L>
+ * @param <S>
+ */
+public class PropertyCheckingPostStar<L,S> extends Poststar<L,S> {
+
+    private final PAutomaton<L,S> property;
+    private final Multimap<ControlLocation<L>, PAutomaton.Transition<L,S>> propertyIncoming = HashMultimap.create();
+    private final Multimap<ControlLocation<L>, PAutomaton.Transition<L,S>> saturatedIncoming = HashMultimap.create();
+    // Pairs of states from which a common word is accepted, with the first step of that word
+    private final Table<ControlLocation<L>, ControlLocation<L>, Step<L,S>> coReachable = HashBasedTable.create();
+    private final Deque<Table.Cell<ControlLocation<L>, ControlLocation<L>, Step<L,S>>> pairWorklist =
+            new ArrayDeque<>();
+    private boolean synchronizedWithSaturatedAut = false;
+    private AcceptedConfiguration<L,S> witness;
+
+    public PropertyCheckingPostStar(
+            PushdownSystem<L,S> pushdownSystem,
+            PAutomaton<L,S> initialAutomaton,
+            PAutomaton<L,S> property,
+            Function<Rule<L,S>, L> generatedStateIdentifierFunction
+    ) {
+        super(pushdownSystem, initialAutomaton, generatedStateIdentifierFunction);
+        this.property = property;
+        for (PAutomaton.Transition<L,S> transition : property.getTransitionRelation()) {
+            propertyIncoming.put(transition.getEndState(), transition);
+        }
+    }
+
+    /**
+     * Saturates until a configuration accepted by the property automaton is reached or the fixpoint is reached
+     * @return a reachable configuration accepted by the property automaton, or null if there is none
+     */
+    public AcceptedConfiguration<L,S> findViolation() {
+        apply();
+        return getWitness();
+    }
+
+    /**
+     * @return the reachable configuration accepted by the property automaton that was found so far, or null
+     */
+    public AcceptedConfiguration<L,S> getWitness() {
+        synchronizeWithSaturatedAut();
+        return witness;
+    }
+
+    @Override
+    protected boolean isGoalReached() {
+        synchronizeWithSaturatedAut();
+        return witness != null;
+    }
+
+    @Override
+    protected void addSaturatedTransition(PAutomaton.Transition<L,S> transition) {
+        if (saturatedAut.getTransitionRelation().contains(transition)) {
+            return;
+        }
+        super.addSaturatedTransition(transition);
+        onTransition(transition);
+    }
+
+    @Override
+    protected void addSaturatedFinalState(ControlLocation<L> state) {
+        super.addSaturatedFinalState(state);
+        onFinalState(state);
+    }
+
+    @Override
+    protected void addSaturatedInitialState(ControlLocation<L> state) {
+        super.addSaturatedInitialState(state);
+        checkWitness(state, state);
+    }
+
+    /**
+     * Catches up with a saturated automaton that was restored from a checkpoint rather than built through this class
+     */
+    private void synchronizeWithSaturatedAut() {
+        if (synchronizedWithSaturatedAut) {
+            return;
+        }
+        synchronizedWithSaturatedAut = true;
+        for (PAutomaton.Transition<L,S> transition : saturatedAut.getTransitionRelation()) {
+            if (!saturatedIncoming.containsEntry(transition.getEndState(), transition)) {
+                onTransition(transition);
+            }
+        }
+        saturatedAut.getFinalStates().forEach(this::onFinalState);
+        saturatedAut.getInitialStates().forEach(state -> checkWitness(state, state));
+    }
+
+    private void onTransition(PAutomaton.Transition<L,S> transition) {
+        saturatedIncoming.put(transition.getEndState(), transition);
+        for (ControlLocation<L> propertyState : new ArrayList<>(coReachable.row(transition.getEndState()).keySet())) {
+            for (PAutomaton.Transition<L,S> propertyTransition : propertyIncoming.get(propertyState)) {
+                if (Wildcard.matches(propertyTransition.getLabel(), transition.getLabel())) {
+                    markCoReachable(
+                            transition.getStartState(),
+                            propertyTransition.getStartState(),
+                            new Step<>(transition.getLabel(), transition.getEndState(), propertyState)
+                    );
+                }
+            }
+        }
+        propagate();
+    }
+
+    private void onFinalState(ControlLocation<L> state) {
+        for (ControlLocation<L> propertyState : property.getFinalStates()) {
+            markCoReachable(state, propertyState, Step.accept());
+        }
+        propagate();
+    }
+
+    private void markCoReachable(ControlLocation<L> state, ControlLocation<L> propertyState, Step<L,S> step) {
+        if (!coReachable.contains(state, propertyState)) {
+            coReachable.put(state, propertyState, step);
+            pairWorklist.add(Tables.immutableCell(state, propertyState, step));
+        }
+    }
+
+    private void propagate() {
+        while (!pairWorklist.isEmpty()) {
+            Table.Cell<ControlLocation<L>, ControlLocation<L>, Step<L,S>> pair = pairWorklist.remove();
+            checkWitness(pair.getRowKey(), pair.getColumnKey());
+            for (PAutomaton.Transition<L,S> transition : saturatedIncoming.get(pair.getRowKey())) {
+                for (PAutomaton.Transition<L,S> propertyTransition : propertyIncoming.get(pair.getColumnKey())) {
+                    if (Wildcard.matches(propertyTransition.getLabel(), transition.getLabel())) {
+                        markCoReachable(
+                                transition.getStartState(),
+                                propertyTransition.getStartState(),
+                                new Step<>(transition.getLabel(), pair.getRowKey(), pair.getColumnKey())
+                        );
+                    }
+                }
+            }
+        }
+    }
+
+    private void checkWitness(ControlLocation<L> state, ControlLocation<L> propertyState) {
+        if (witness != null
+                || !state.equals(propertyState)
+                || !coReachable.contains(state, propertyState)
+                || !saturatedAut.getInitialStates().contains(state)
+                || !property.getInitialStates().contains(propertyState)) {
+            return;
+        }
+        List<StackSymbol<S>> word = new ArrayList<>();
+        Step<L,S> step = coReachable.get(state, propertyState);
+        while (!step.isAccept()) {
+            word.add(step.label);
+            step = coReachable.get(step.nextState, step.nextPropertyState);
+        }
+        witness = new AcceptedConfiguration<>(state, word);
+    }
+
+    /**
+     * The first symbol of a common accepted word and the pair of states it leads to
+     */
+    private static class Step<L,S> {
+
+        private final StackSymbol<S> label;
+        private final ControlLocation<L> nextState;
+        private final ControlLocation<L> nextPropertyState;
+
+        private Step(StackSymbol<S> label, ControlLocation<L> nextState, ControlLocation<L> nextPropertyState) {
+            this.label = label;
+            this.nextState = nextState;
+            this.nextPropertyState = nextPropertyState;
+        }
+
+        /**
+         * @return the step of a pair of final states, which accept the empty word
+         */
+        private static <L,S> Step<L,S> accept() {
+            return new Step<>(null, null, null);
+        }
+
+        private boolean isAccept() {
+            return label == null;
+        }
+    }
+}
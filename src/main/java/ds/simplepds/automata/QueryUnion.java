@@ -0,0 +1,166 @@
+package ds.simplepds.automata;
+
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.PushdownSystem;
+import ds.simplepds.interfaces.Rule;
+import ds.simplepds.interfaces.Semiring;
+import ds.simplepds.interfaces.WeightedPushdownSystem;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The union of the automata of several queries, in which each transition and final state is labelled with the set of
+ * queries it belongs to. Saturating the union with the weighted engines over the semiring of query sets (union to
+ * combine, intersection to extend) answers all queries at once: a derived transition belongs to the queries that all
+ * the transitions it was derived from belong to.
+ *
+ * Initial states are kept per query, since post-* only applies rules to the transitions of the initial automaton that
+ * leave an initial state.
+ * @param <L>
+ * @param <S>
+ */
+class QueryUnion<L,S> {
+
+    private final List<PAutomaton<L,S>> queries;
+    private final PAutomaton<L,S> union = new PAutomaton<>();
+    private final Map<PAutomaton.Transition<L,S>, BitSet> transitionQueries = new HashMap<>();
+    private final Map<ControlLocation<L>, BitSet> finalQueries = new HashMap<>();
+    private final Map<ControlLocation<L>, BitSet> initialQueries = new HashMap<>();
+    private final BitSet allQueries = new BitSet();
+    private final Semiring<BitSet> semiring = new Semiring<>() {
+        @Override
+        public BitSet zero() {
+            return new BitSet();
+        }
+
+        @Override
+        public BitSet one() {
+            return (BitSet) allQueries.clone();
+        }
+
+        @Override
+        public BitSet combine(BitSet a, BitSet b) {
+            BitSet combined = (BitSet) a.clone();
+            combined.or(b);
+            return combined;
+        }
+
+        @Override
+        public BitSet extend(BitSet a, BitSet b) {
+            BitSet extended = (BitSet) a.clone();
+            extended.and(b);
+            return extended;
+        }
+    };
+
+    QueryUnion(List<PAutomaton<L,S>> queries) {
+        this.queries = List.copyOf(queries);
+        allQueries.set(0, queries.size());
+        for (int query = 0; query < queries.size(); query++) {
+            PAutomaton<L,S> automaton = queries.get(query);
+            automaton.getAllStates().forEach(union::addState);
+            for (ControlLocation<L> state : automaton.getInitialStates()) {
+                union.addInitialState(state);
+                initialQueries.computeIfAbsent(state, s -> new BitSet()).set(query);
+            }
+            for (ControlLocation<L> state : automaton.getFinalStates()) {
+                union.addFinalState(state);
+                finalQueries.computeIfAbsent(state, s -> new BitSet()).set(query);
+            }
+            for (PAutomaton.Transition<L,S> transition : automaton.getTransitionRelation()) {
+                union.addTransition(transition);
+                transitionQueries.computeIfAbsent(transition, t -> new BitSet()).set(query);
+            }
+        }
+    }
+
+    PAutomaton<L,S> getUnion() {
+        return union;
+    }
+
+    Semiring<BitSet> getSemiring() {
+        return semiring;
+    }
+
+    int size() {
+        return queries.size();
+    }
+
+    /**
+     * @return the queries whose automaton contains the given transition
+     */
+    BitSet getQueries(PAutomaton.Transition<L,S> transition) {
+        BitSet queriesOfTransition = transitionQueries.get(transition);
+        return queriesOfTransition == null ? new BitSet() : (BitSet) queriesOfTransition.clone();
+    }
+
+    /**
+     * @return the queries whose automaton contains the given transition without it leaving an initial state of that
+     * automaton. Post-* keeps these transitions as they are in these queries
+     */
+    BitSet getFixedQueries(PAutomaton.Transition<L,S> transition) {
+        BitSet fixed = getQueries(transition);
+        BitSet initial = initialQueries.get(transition.getStartState());
+        if (initial != null) {
+            fixed.andNot(initial);
+        }
+        return fixed;
+    }
+
+    /**
+     * @return the queries in which the given state is final
+     */
+    BitSet getFinalQueries(ControlLocation<L> state) {
+        BitSet queriesOfState = finalQueries.get(state);
+        return queriesOfState == null ? new BitSet() : (BitSet) queriesOfState.clone();
+    }
+
+    /**
+     * Marks the given state as final in the given queries
+     */
+    void addFinalQueries(ControlLocation<L> state, BitSet queriesOfState) {
+        finalQueries.computeIfAbsent(state, s -> new BitSet()).or(queriesOfState);
+    }
+
+    /**
+     * @return a pushdown system with the rules of the given one, each of which applies in every query
+     */
+    WeightedPushdownSystem<L,S,BitSet> applyingToAllQueries(PushdownSystem<L,S> pushdownSystem) {
+        return new WeightedPushdownSystem<>() {
+            @Override
+            public Set<Rule<L,S>> getRules() {
+                return pushdownSystem.getRules();
+            }
+
+            @Override
+            public BitSet getWeight(Rule<L,S> rule) {
+                return semiring.one();
+            }
+        };
+    }
+
+    /**
+     * @return the part of the saturated union that belongs to the given query
+     */
+    PAutomaton<L,S> demultiplex(WeightedPAutomaton<L,S,BitSet> saturated, int query) {
+        PAutomaton<L,S> automaton = new PAutomaton<>();
+        PAutomaton<L,S> initial = queries.get(query);
+        initial.getAllStates().forEach(automaton::addState);
+        initial.getInitialStates().forEach(automaton::addInitialState);
+        for (PAutomaton.Transition<L,S> transition : saturated.getTransitionRelation()) {
+            if (saturated.getWeight(transition).get(query)) {
+                automaton.addTransition(transition);
+            }
+        }
+        for (Map.Entry<ControlLocation<L>, BitSet> entry : finalQueries.entrySet()) {
+            if (entry.getValue().get(query)) {
+                automaton.addFinalState(entry.getKey());
+            }
+        }
+        return automaton;
+    }
+}
@@ -0,0 +1,114 @@
+package ds.simplepds.automata;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Table;
+import ds.simplepds.automata.demand.Wildcard;
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.Rule;
+import ds.simplepds.interfaces.StackSymbol;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Indexes rules by a control location and a stack symbol of either their start or their end configuration, so that a
+ * transition only needs to be matched against the rules that can fire on it.
+ *
+ * Rules whose indexed symbol is a {@link Wildcard} match every symbol at their location and are kept in a separate
+ * bucket, since wildcards cannot be used as hash keys. The bucket is merged into every lookup at the location.
+ * @param <L>
+ * @param <S>
+ */
+public class RuleIndex<L,S> {
+
+    private final Function<Rule<L,S>, ControlLocation<L>> locationKey;
+    private final Function<Rule<L,S>, StackSymbol<S>> symbolKey;
+    private final Set<Rule<L,S>> rules = new HashSet<>();
+    private final Table<ControlLocation<L>, StackSymbol<S>, Set<Rule<L,S>>> exactIndex = HashBasedTable.create();
+    private final SetMultimap<ControlLocation<L>, Rule<L,S>> wildcardIndex = HashMultimap.create();
+    private final SetMultimap<ControlLocation<L>, Rule<L,S>> locationIndex = HashMultimap.create();
+
+    public RuleIndex(
+            Function<Rule<L,S>, ControlLocation<L>> locationKey,
+            Function<Rule<L,S>, StackSymbol<S>> symbolKey
+    ) {
+        this.locationKey = locationKey;
+        this.symbolKey = symbolKey;
+    }
+
+    /**
+     * @return an index by start location and start stack symbol
+     */
+    public static <L,S> RuleIndex<L,S> byStartConfiguration() {
+        return new RuleIndex<>(
+                rule -> rule.getStartConfiguration().getControlLocation(),
+                rule -> rule.getStartConfiguration().getStackSymbol()
+        );
+    }
+
+    /**
+     * @return an index by end location and the new top of the stack. Only normal and push rules may be added
+     */
+    public static <L,S> RuleIndex<L,S> byEndConfiguration() {
+        return new RuleIndex<>(
+                rule -> rule.getEndConfiguration().getControlLocation(),
+                rule -> {
+                    // The new top of the stack comes last in the word of an end configuration
+                    int size = rule.getEndConfiguration().getWord().size();
+                    return rule.getEndConfiguration().getWord().get(size - 1);
+                }
+        );
+    }
+
+    /**
+     * @return true if the rule was not indexed yet
+     */
+    public boolean add(Rule<L,S> rule) {
+        if (!rules.add(rule)) {
+            return false;
+        }
+        ControlLocation<L> location = locationKey.apply(rule);
+        StackSymbol<S> symbol = symbolKey.apply(rule);
+        if (symbol instanceof Wildcard<S>) {
+            wildcardIndex.put(location, rule);
+        } else {
+            Set<Rule<L,S>> bucket = exactIndex.get(location, symbol);
+            if (bucket == null) {
+                bucket = new HashSet<>();
+                exactIndex.put(location, symbol, bucket);
+            }
+            bucket.add(rule);
+        }
+        locationIndex.put(location, rule);
+        return true;
+    }
+
+    /**
+     * @return all indexed rules that match the given location and stack symbol. A wildcard symbol matches all rules at
+     * the location
+     */
+    public Iterable<Rule<L,S>> lookup(ControlLocation<L> location, StackSymbol<S> symbol) {
+        if (symbol instanceof Wildcard<S>) {
+            return locationIndex.get(location);
+        }
+        Set<Rule<L,S>> exact = exactIndex.get(location, symbol);
+        Set<Rule<L,S>> wildcards = wildcardIndex.get(location);
+        if (exact == null) {
+            return wildcards;
+        }
+        return wildcards.isEmpty() ? exact : Iterables.concat(exact, wildcards);
+    }
+
+    public Set<Rule<L,S>> getRules() {
+        return Collections.unmodifiableSet(rules);
+    }
+
+    public int size() {
+        return rules.size();
+    }
+}
@@ -0,0 +1,349 @@
+package ds.simplepds.automata;
+
+import ds.simplepds.automata.demand.BackwardFlowFunctions;
+import ds.simplepds.automata.demand.DemandPostStar;
+import ds.simplepds.automata.demand.DemandPreStar;
+import ds.simplepds.automata.demand.ForwardFlowFunctions;
+import ds.simplepds.automata.demand.Wildcard;
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.PushdownSystem;
+import ds.simplepds.interfaces.Rule;
+import ds.simplepds.interfaces.StackSymbol;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Single entry point for pre* and post-* that picks the engine from the shape of the pushdown system and the query
+ * and the resources of the runtime:
+ * <ul>
+ *     <li>The rule index of {@link HashBasedPostStar} and {@link HashBasedPreStar} replaces a scan of all rules per
+ *     processed transition by a lookup. It is built when the scans it saves, roughly the number of rules times the
+ *     number of rules and initial transitions, outweigh building it, and when its estimated size fits in half of the
+ *     free heap. Otherwise {@link Poststar} and {@link Prestar} are used.</li>
+ *     <li>If spilling is allowed and the heap is too small for the index, the worklist is spilled beyond what fits in a
+ *     quarter of the free heap.</li>
+ *     <li>Batches of queries are saturated together by {@link MultiQueryPoststar} and {@link MultiQueryPrestar} when
+ *     there are more queries than cores, and in parallel with a shared index otherwise. The multi-query engines do not
+ *     support wildcard rules, trimming or spilling. Either way, the saturated automata are those of {@link Poststar} and
+ *     {@link Prestar}, including the states generated for push rules.</li>
+ *     <li>Rules that are generated on demand by flow functions are saturated by {@link DemandPostStar} and
+ *     {@link DemandPreStar}. These are never picked for a given pushdown system, which the other engines saturate
+ *     directly.</li>
+ * </ul>
+ */
+public final class Saturation {
+
+    // Below this many rule scans, building the index costs more than it saves
+    static final long INDEX_MIN_SCANS = 1L << 16;
+    // Estimated heap per rule in each of the structures of a FastLookupRuleMap
+    static final long INDEX_BYTES_PER_ENTRY = 64;
+    // Estimated heap per worklist item
+    static final long WORKLIST_BYTES_PER_ITEM = 128;
+    static final int MIN_IN_MEMORY_ITEMS = 1024;
+
+    private Saturation() {
+    }
+
+    /**
+     * Saturates the post-* of the initial automaton to its fixpoint
+     */
+    public static <L,S> PAutomaton<L,S> poststar(
+            PushdownSystem<L,S> pushdownSystem,
+            PAutomaton<L,S> initialAutomaton,
+            SaturationOptions<L,S> options
+    ) {
+        SaturationEngine<L,S> engine = poststarEngine(pushdownSystem, initialAutomaton, options);
+        engine.apply();
+        return engine.getSaturatedAut();
+    }
+
+    /**
+     * Saturates the pre* of the target automaton to its fixpoint
+     */
+    public static <L,S> PAutomaton<L,S> prestar(
+            PushdownSystem<L,S> pushdownSystem,
+            PAutomaton<L,S> targetAutomaton,
+            SaturationOptions<L,S> options
+    ) {
+        SaturationEngine<L,S> engine = prestarEngine(pushdownSystem, targetAutomaton, options);
+        engine.apply();
+        return engine.getSaturatedAut();
+    }
+
+    /**
+     * @return the engine that {@link #poststar(PushdownSystem, PAutomaton, SaturationOptions)} would use, configured
+     * but not yet applied, so that it can be run in slices or observed with listeners
+     */
+    public static <L,S> SaturationEngine<L,S> poststarEngine(
+            PushdownSystem<L,S> pushdownSystem,
+            PAutomaton<L,S> initialAutomaton,
+            SaturationOptions<L,S> options
+    ) {
+        Plan plan = plan(PushdownSystemProfile.of(pushdownSystem), initialAutomaton, options);
+        FastLookupRuleMap<L,S> index = plan.indexed ? new FastLookupRuleMap<>(pushdownSystem) : null;
+        return configure(poststarEngine(pushdownSystem, initialAutomaton, options, index), plan, options);
+    }
+
+    /**
+     * @return the engine that {@link #prestar(PushdownSystem, PAutomaton, SaturationOptions)} would use, configured
+     * but not yet applied
+     */
+    public static <L,S> SaturationEngine<L,S> prestarEngine(
+            PushdownSystem<L,S> pushdownSystem,
+            PAutomaton<L,S> targetAutomaton,
+            SaturationOptions<L,S> options
+    ) {
+        Plan plan = plan(PushdownSystemProfile.of(pushdownSystem), targetAutomaton, options);
+        FastLookupRuleMap<L,S> index = plan.indexed ? new FastLookupRuleMap<>(pushdownSystem) : null;
+        return configure(prestarEngine(pushdownSystem, targetAutomaton, index), plan, options);
+    }
+
+    /**
+     * Saturates the post-* of each of the initial automata
+     * @return the saturated automata, in the order of the initial automata
+     */
+    public static <L,S> List<PAutomaton<L,S>> poststar(
+            PushdownSystem<L,S> pushdownSystem,
+            List<PAutomaton<L,S>> initialAutomata,
+            SaturationOptions<L,S> options
+    ) {
+        PushdownSystemProfile profile = PushdownSystemProfile.of(pushdownSystem);
+        if (isSharedSaturationPreferred(profile, initialAutomata.size(), options)) {
+            MultiQueryPoststar<L,S> poststar = new MultiQueryPoststar<>(
+                    pushdownSystem,
+                    initialAutomata,
+                    options.getGeneratedStateIdentifierFunction()
+            );
+            poststar.apply();
+            // Name the generated states as the single-query engines do, so that the result does not depend on the engine
+            Function<Rule<L,S>, ControlLocation<L>> generatedStates =
+                    Poststar.generatedStates(options.getGeneratedStateIdentifierFunction());
+            return demultiplex(initialAutomata.size(), query -> poststar.getSaturatedAut(query, generatedStates));
+        }
+        Plan plan = plan(profile, largest(initialAutomata), options);
+        FastLookupRuleMap<L,S> index = plan.indexed ? new FastLookupRuleMap<>(pushdownSystem) : null;
+        return initialAutomata.parallelStream()
+                .map(initialAutomaton -> {
+                    SaturationEngine<L,S> engine = configure(
+                            poststarEngine(pushdownSystem, initialAutomaton, options, index), plan, options);
+                    engine.apply();
+                    return engine.getSaturatedAut();
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Saturates the pre* of each of the target automata
+     * @return the saturated automata, in the order of the target automata
+     */
+    public static <L,S> List<PAutomaton<L,S>> prestar(
+            PushdownSystem<L,S> pushdownSystem,
+            List<PAutomaton<L,S>> targetAutomata,
+            SaturationOptions<L,S> options
+    ) {
+        PushdownSystemProfile profile = PushdownSystemProfile.of(pushdownSystem);
+        if (isSharedSaturationPreferred(profile, targetAutomata.size(), options)) {
+            MultiQueryPrestar<L,S> prestar = new MultiQueryPrestar<>(pushdownSystem, targetAutomata);
+            prestar.apply();
+            return demultiplex(targetAutomata.size(), prestar::getSaturatedAut);
+        }
+        Plan plan = plan(profile, largest(targetAutomata), options);
+        FastLookupRuleMap<L,S> index = plan.indexed ? new FastLookupRuleMap<>(pushdownSystem) : null;
+        return targetAutomata.parallelStream()
+                .map(targetAutomaton -> {
+                    SaturationEngine<L,S> engine =
+                            configure(prestarEngine(pushdownSystem, targetAutomaton, index), plan, options);
+                    engine.apply();
+                    return engine.getSaturatedAut();
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Saturates the post-* of the initial automaton for rules generated on demand
+     */
+    public static <L,S> PAutomaton<L,S> poststar(
+            ForwardFlowFunctions<L,S> flowFunctions,
+            PAutomaton<L,S> initialAutomaton,
+            SaturationOptions<L,S> options
+    ) {
+        DemandPostStar<L,S> poststar = new DemandPostStar<>(
+                flowFunctions,
+                initialAutomaton,
+                options.getGeneratedStateIdentifierFunction()
+        );
+        options.configure(poststar);
+        poststar.apply();
+        return poststar.getSaturatedAut();
+    }
+
+    /**
+     * Saturates the pre* of the target automaton for rules generated on demand
+     */
+    public static <L,S> PAutomaton<L,S> prestar(
+            BackwardFlowFunctions<L,S> flowFunctions,
+            PAutomaton<L,S> targetAutomaton,
+            SaturationOptions<L,S> options
+    ) {
+        DemandPreStar<L,S> prestar = new DemandPreStar<>(flowFunctions, targetAutomaton);
+        options.configure(prestar);
+        prestar.apply();
+        return prestar.getSaturatedAut();
+    }
+
+    private static <L,S> Poststar<L,S> poststarEngine(
+            PushdownSystem<L,S> pushdownSystem,
+            PAutomaton<L,S> initialAutomaton,
+            SaturationOptions<L,S> options,
+            FastLookupRuleMap<L,S> index
+    ) {
+        if (index == null) {
+            return new Poststar<>(pushdownSystem, initialAutomaton, options.getGeneratedStateIdentifierFunction());
+        }
+        return new HashBasedPostStar<>(
+                pushdownSystem,
+                initialAutomaton,
+                options.getGeneratedStateIdentifierFunction(),
+                index
+        );
+    }
+
+    private static <L,S> Prestar<L,S> prestarEngine(
+            PushdownSystem<L,S> pushdownSystem,
+            PAutomaton<L,S> targetAutomaton,
+            FastLookupRuleMap<L,S> index
+    ) {
+        if (index == null) {
+            return new Prestar<>(pushdownSystem, targetAutomaton);
+        }
+        return new HashBasedPreStar<>(pushdownSystem, targetAutomaton, index);
+    }
+
+    private static <L,S> SaturationEngine<L,S> configure(
+            SaturationEngine<L,S> engine,
+            Plan plan,
+            SaturationOptions<L,S> options
+    ) {
+        options.configure(engine);
+        if (plan.maxInMemoryItems > 0) {
+            options.enableSpilling(engine, plan.maxInMemoryItems);
+        }
+        return engine;
+    }
+
+    static <L,S> Plan plan(PushdownSystemProfile profile, PAutomaton<L,S> queryAutomaton, SaturationOptions<L,S> options) {
+        long freeHeap = freeHeap();
+        long rules = profile.getRuleCount();
+        long scans = rules * (rules + queryAutomaton.getTransitionRelation().size());
+        boolean fits = profile.getIndexEntryCount() * INDEX_BYTES_PER_ENTRY <= freeHeap / 2;
+        int maxInMemoryItems = 0;
+        if (!fits && options.isSpillingAllowed()) {
+            maxInMemoryItems = (int) Math.min(
+                    Integer.MAX_VALUE,
+                    Math.max(MIN_IN_MEMORY_ITEMS, freeHeap / 4 / WORKLIST_BYTES_PER_ITEM)
+            );
+        }
+        return new Plan(scans >= INDEX_MIN_SCANS && fits, maxInMemoryItems);
+    }
+
+    static boolean isSharedSaturationPreferred(
+            PushdownSystemProfile profile,
+            int queryCount,
+            SaturationOptions<?,?> options
+    ) {
+        return queryCount > Runtime.getRuntime().availableProcessors()
+                && !profile.hasWildcardRules()
+                && !options.isTrimming()
+                && !options.isSpillingAllowed();
+    }
+
+    private static long freeHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    private static <L,S> PAutomaton<L,S> largest(List<PAutomaton<L,S>> automata) {
+        PAutomaton<L,S> largest = new PAutomaton<>();
+        for (PAutomaton<L,S> automaton : automata) {
+            if (automaton.getTransitionRelation().size() > largest.getTransitionRelation().size()) {
+                largest = automaton;
+            }
+        }
+        return largest;
+    }
+
+    private static <L,S> List<PAutomaton<L,S>> demultiplex(
+            int queryCount,
+            IntFunction<PAutomaton<L,S>> query
+    ) {
+        return IntStream.range(0, queryCount)
+                .mapToObj(query)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * How a saturation is run
+     */
+    static class Plan {
+
+        final boolean indexed;
+        // Zero if the worklist is not spilled
+        final int maxInMemoryItems;
+
+        Plan(boolean indexed, int maxInMemoryItems) {
+            this.indexed = indexed;
+            this.maxInMemoryItems = maxInMemoryItems;
+        }
+    }
+
+    /**
+     * The counts of the rules of a pushdown system by kind
+     */
+    static class PushdownSystemProfile {
+
+        private int popRules = 0;
+        private int normalRules = 0;
+        private int pushRules = 0;
+        private boolean wildcardRules = false;
+
+        static <L,S> PushdownSystemProfile of(PushdownSystem<L,S> pushdownSystem) {
+            PushdownSystemProfile profile = new PushdownSystemProfile();
+            for (Rule<L,S> rule : pushdownSystem.getRules()) {
+                List<StackSymbol<S>> word = rule.getEndConfiguration().getWord();
+                if (word.isEmpty()) {
+                    profile.popRules++;
+                } else if (word.size() == 1) {
+                    profile.normalRules++;
+                } else {
+                    profile.pushRules++;
+                }
+                boolean wildcard = rule.getStartConfiguration().getStackSymbol() instanceof Wildcard<S>;
+                for (StackSymbol<S> symbol : word) {
+                    wildcard |= symbol instanceof Wildcard<S>;
+                }
+                profile.wildcardRules |= wildcard;
+            }
+            return profile;
+        }
+
+        long getRuleCount() {
+            return (long) popRules + normalRules + pushRules;
+        }
+
+        /**
+         * Every rule is indexed by word size, start location, end location and start configuration, and rules that
+         * are not pop rules by end configuration as well
+         */
+        long getIndexEntryCount() {
+            return 4 * getRuleCount() + normalRules + pushRules;
+        }
+
+        boolean hasWildcardRules() {
+            return wildcardRules;
+        }
+    }
+}
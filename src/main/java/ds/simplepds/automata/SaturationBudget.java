@@ -0,0 +1,44 @@
+package ds.simplepds.automata;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds one slice of a saturation by a number of worklist items, a timeout and a {@link CancellationToken}. The
+ * worklist loops of {@link SaturationEngine} and {@link WeightedSaturationEngine} check it between items, and yield
+ * once it is exhausted.
+ */
+class SaturationBudget {
+
+    // How often a cancellation token is checked while waiting for pending work
+    private static final long CANCELLATION_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final long maxItems;
+    private final long timeoutNanos;
+    private final CancellationToken token;
+    private final long start = System.nanoTime();
+    private long processed = 0;
+
+    SaturationBudget(long maxItems, long timeoutNanos, CancellationToken token) {
+        this.maxItems = maxItems;
+        this.timeoutNanos = timeoutNanos;
+        this.token = token;
+    }
+
+    void itemProcessed() {
+        processed++;
+    }
+
+    boolean isExhausted() {
+        return processed >= maxItems
+                || System.nanoTime() - start >= timeoutNanos
+                || (token != null && token.isCancelled());
+    }
+
+    /**
+     * @return how long to wait for pending work before the budget is checked again
+     */
+    long waitNanos() {
+        long wait = timeoutNanos == Long.MAX_VALUE ? Long.MAX_VALUE : timeoutNanos - (System.nanoTime() - start);
+        return token == null ? wait : Math.min(wait, CANCELLATION_POLL_NANOS);
+    }
+}
@@ -0,0 +1,498 @@
+package ds.simplepds.automata;
+
+import com.google.common.collect.ForwardingQueue;
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.Rule;
+import ds.simplepds.interfaces.StackSymbol;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * The worklist loop shared by the saturation engines. Subclasses seed the worklist and the saturated automaton in
+ * {@link #initialize()} and apply the rules of the pushdown system to each new transition in
+ * {@link #process(PAutomaton.Transition)}. All changes to the saturated automaton and the worklist go through this
+ * class, so that they can be checkpointed.
+ *
+ * Saturation can be run to its fixpoint with {@link #apply()}, or in slices bounded by a number of worklist items, a
+ * timeout or a {@link CancellationToken}. Each slice continues where the previous one stopped. An engine that is
+ * abandoned before its fixpoint or its goal is reached must be closed to release its spill and checkpoint files.
+ * @param <L>
+ * @param <S>
+ */
+public abstract class SaturationEngine<L,S> implements AutoCloseable {
+
+    protected final PAutomaton<L,S> saturatedAut = new PAutomaton<>();
+    protected final Queue<PAutomaton.Transition<L,S>> worklist = new Worklist();
+    private Queue<PAutomaton.Transition<L,S>> pending = new LinkedList<>();
+    private SpillingWorklist<L,S> spillingWorklist;
+    private Checkpoint<L,S> checkpoint;
+    private boolean initialized = false;
+    private boolean fixpointReached = false;
+    private boolean closed = false;
+    private boolean trimming = false;
+    private Set<ControlLocation<L>> locationsOfInterest;
+    private final SaturationListeners<L,S> listeners = new SaturationListeners<>();
+
+    /**
+     * Saturates the automaton until a fixpoint is reached. If checkpointing is enabled and the checkpoint file holds
+     * a consistent checkpoint, saturation resumes from there instead of starting over.
+     */
+    public void apply() {
+        saturate(new SaturationBudget(Long.MAX_VALUE, Long.MAX_VALUE, null));
+    }
+
+    /**
+     * Saturates the automaton until a fixpoint is reached or the timeout expires. A later call continues where this
+     * one stopped.
+     * @return true if the fixpoint was reached
+     */
+    public boolean apply(Duration timeout) {
+        return saturate(new SaturationBudget(Long.MAX_VALUE, timeout.toNanos(), null));
+    }
+
+    /**
+     * Saturates the automaton until a fixpoint is reached or the token is cancelled. A later call continues where
+     * this one stopped.
+     * @return true if the fixpoint was reached
+     */
+    public boolean apply(CancellationToken token) {
+        return saturate(new SaturationBudget(Long.MAX_VALUE, Long.MAX_VALUE, token));
+    }
+
+    /**
+     * Saturates the automaton until a fixpoint is reached, the timeout expires or the token is cancelled. A later
+     * call continues where this one stopped.
+     * @return true if the fixpoint was reached
+     */
+    public boolean apply(Duration timeout, CancellationToken token) {
+        return saturate(new SaturationBudget(Long.MAX_VALUE, timeout.toNanos(), token));
+    }
+
+    /**
+     * Processes at most the given number of worklist items. A later call continues where this one stopped.
+     * @return true if the fixpoint was reached
+     */
+    public boolean step(int maxItems) {
+        return saturate(new SaturationBudget(maxItems, Long.MAX_VALUE, null));
+    }
+
+    /**
+     * @return true if the saturated automaton has reached its fixpoint. Until then, {@link #getSaturatedAut()} holds
+     * the part of the automaton that has been saturated so far
+     */
+    public boolean isFixpointReached() {
+        return fixpointReached;
+    }
+
+    private boolean saturate(SaturationBudget budget) {
+        if (closed) {
+            throw new IllegalStateException("Saturation cannot continue once the engine is closed");
+        }
+        if (!initialized) {
+            boolean restored = false;
+            if (checkpoint != null) {
+                CheckpointReplay replay = new CheckpointReplay();
+                restored = checkpoint.restore(replay);
+                pending.addAll(replay.unprocessed);
+            }
+            if (!restored) {
+                initialize();
+            }
+            initialized = true;
+        }
+        while (!worklist.isEmpty() || hasPendingWork()) {
+            boolean goalReached = isGoalReached();
+            if (budget.isExhausted() || goalReached) {
+                // Make everything processed so far part of the checkpoint before yielding
+                if (checkpoint != null) {
+                    checkpoint.commit();
+                }
+                if (goalReached) {
+                    // Saturation does not continue past its goal
+                    releaseFiles();
+                }
+                return false;
+            }
+            if (worklist.isEmpty()) {
+                awaitPendingWork(budget.waitNanos());
+                continue;
+            }
+            PAutomaton.Transition<L,S> current = worklist.remove();
+            budget.itemProcessed();
+            if (!saturatedAut.getTransitionRelation().contains(current)) {
+                addSaturatedTransition(current);
+                process(current);
+            }
+            if (checkpoint != null) {
+                checkpoint.tick();
+            }
+        }
+        if (!fixpointReached) {
+            fixpointReached = true;
+            if (trimming) {
+                AutomatonTrimmer.trim(
+                        saturatedAut,
+                        locationsOfInterest != null ? locationsOfInterest : getLocationsOfInterest(),
+                        listeners
+                );
+            }
+            if (checkpoint != null) {
+                checkpoint.commit();
+            }
+            releaseFiles();
+            listeners.fixpointReached();
+        }
+        return true;
+    }
+
+    /**
+     * Deletes the spilled worklist items that have not been read back and closes the checkpoint file, which keeps
+     * what was committed so far. Engines do this themselves once they reach their fixpoint or their goal, so this is
+     * only needed for an engine that is abandoned before, e.g. after a timeout or a cancellation. Saturation cannot
+     * continue once the engine is closed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        releaseFiles();
+    }
+
+    private void releaseFiles() {
+        if (checkpoint != null) {
+            checkpoint.close();
+            checkpoint = null;
+        }
+        if (spillingWorklist != null) {
+            spillingWorklist.close();
+        }
+    }
+
+    /**
+     * Seeds the worklist and the saturated automaton
+     */
+    protected abstract void initialize();
+
+    /**
+     * Applies the rules of the pushdown system to a transition that was just added to the saturated automaton
+     */
+    protected abstract void process(PAutomaton.Transition<L,S> current);
+
+    /**
+     * @return true if the engine has found what it was looking for and saturation should stop before the fixpoint
+     */
+    protected boolean isGoalReached() {
+        return false;
+    }
+
+    /**
+     * @return true if an engine is waiting for work that will be added to the worklist later (e.g. for rules from
+     * asynchronous flow functions)
+     */
+    protected boolean hasPendingWork() {
+        return false;
+    }
+
+    /**
+     * Waits at most the given time for pending work to be added to the worklist
+     */
+    protected void awaitPendingWork(long timeoutNanos) {
+    }
+
+    /**
+     * Periodically appends the changes made during saturation to the given file, so that a later call to
+     * {@link #apply()} on an engine created for the same pushdown system and initial automaton can resume from the
+     * last checkpoint. Must be called before {@link #apply()}. Engines whose state can be restored from a checkpoint
+     * make this public.
+     * @param file the checkpoint file. It is created if it does not exist
+     * @param codec converts control locations and stack symbols to and from their binary form
+     * @param interval the minimum time between two checkpoints
+     */
+    protected void enableCheckpointing(Path file, CheckpointCodec<L,S> codec, Duration interval) {
+        if (initialized) {
+            throw new IllegalStateException("Checkpointing must be enabled before saturation starts");
+        }
+        this.checkpoint = new Checkpoint<>(file, checkpointCodec(codec), interval);
+    }
+
+    /**
+     * Removes the states of the saturated automaton that cannot be part of an accepted configuration at one of the
+     * control locations of the pushdown system. States of the initial automaton that can never reach a final state are
+     * dropped before saturation starts, and the remaining useless states once the fixpoint is reached. Listeners are
+     * told about the transitions and final states removed at the fixpoint. Must be called before {@link #apply()}.
+     */
+    public void enableTrimming() {
+        enableTrimming(null);
+    }
+
+    /**
+     * Like {@link #enableTrimming()}, but only keeps the configurations at the given control locations
+     */
+    public void enableTrimming(Set<ControlLocation<L>> locationsOfInterest) {
+        if (initialized) {
+            throw new IllegalStateException("Trimming must be enabled before saturation starts");
+        }
+        this.trimming = true;
+        this.locationsOfInterest = locationsOfInterest;
+    }
+
+    protected boolean isTrimming() {
+        return trimming;
+    }
+
+    /**
+     * @return the control locations whose configurations are kept by trimming if none are given. By default these are
+     * the initial states of the saturated automaton
+     */
+    protected Set<ControlLocation<L>> getLocationsOfInterest() {
+        return saturatedAut.getInitialStates();
+    }
+
+    /**
+     * @return the given initial automaton without the states that trimming drops before saturation starts
+     */
+    protected PAutomaton<L,S> trimInitialAutomaton(PAutomaton<L,S> initialAut) {
+        if (!trimming) {
+            return initialAut;
+        }
+        Set<ControlLocation<L>> controlLocations = new HashSet<>(getLocationsOfInterest());
+        controlLocations.addAll(initialAut.getInitialStates());
+        if (locationsOfInterest != null) {
+            controlLocations.addAll(locationsOfInterest);
+        }
+        return AutomatonTrimmer.trimFixedStates(initialAut, controlLocations);
+    }
+
+    /**
+     * Bounds the number of worklist items kept on the heap. Once the bound is exceeded, the newest half of the
+     * worklist is written to a file in the given directory and read back when the rest has been processed. Must be
+     * called before {@link #apply()}. Engines whose states can be written to a file make this public.
+     * @param directory the directory for the spill files. Files are deleted once they have been read back
+     * @param codec converts control locations and stack symbols to and from their binary form
+     * @param maxInMemoryItems the maximum number of worklist items kept on the heap
+     */
+    protected void enableSpilling(Path directory, CheckpointCodec<L,S> codec, int maxInMemoryItems) {
+        if (initialized) {
+            throw new IllegalStateException("Spilling must be enabled before saturation starts");
+        }
+        if (pending instanceof ComponentWorklist) {
+            throw new IllegalStateException("Spilling cannot be combined with component ordering");
+        }
+        this.spillingWorklist = new SpillingWorklist<>(
+                directory,
+                checkpointCodec(codec),
+                maxInMemoryItems,
+                transition -> saturatedAut.getTransitionRelation().contains(transition)
+        );
+        this.pending = spillingWorklist;
+    }
+
+    /**
+     * Processes the worklist component by component, in the given order of the control locations in which work flows
+     * during saturation. Must be called before {@link #apply()} and cannot be combined with spilling. Engines that
+     * know the rules of their pushdown system up front offer this publicly.
+     */
+    void enableComponentOrdering(ComponentOrder<L> order) {
+        if (initialized) {
+            throw new IllegalStateException("Component ordering must be enabled before saturation starts");
+        }
+        if (spillingWorklist != null) {
+            throw new IllegalStateException("Component ordering cannot be combined with spilling");
+        }
+        this.pending = new ComponentWorklist<>(order);
+    }
+
+    /**
+     * Reports the changes to the saturated automaton to the given listener as they are made. Changes restored from a
+     * checkpoint are reported when they are restored, except for generated rules. Must be called before
+     * {@link #apply()}.
+     */
+    public void addListener(SaturationListener<L,S> listener) {
+        if (initialized) {
+            throw new IllegalStateException("Listeners must be added before saturation starts");
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * Extends the given codec with the states and rules that are specific to an engine
+     */
+    protected CheckpointCodec<L,S> checkpointCodec(CheckpointCodec<L,S> codec) {
+        return codec;
+    }
+
+    protected void addSaturatedTransition(PAutomaton.Transition<L,S> transition) {
+        if (saturatedAut.getTransitionRelation().contains(transition)) {
+            return;
+        }
+        saturatedAut.addTransition(transition);
+        if (checkpoint != null) {
+            checkpoint.logTransition(transition);
+        }
+        listeners.transitionAdded(transition);
+    }
+
+    protected void addSaturatedState(ControlLocation<L> state) {
+        if (saturatedAut.getAllStates().contains(state)) {
+            return;
+        }
+        saturatedAut.addState(state);
+        if (checkpoint != null) {
+            checkpoint.logState(state);
+        }
+    }
+
+    protected void addSaturatedInitialState(ControlLocation<L> state) {
+        if (saturatedAut.getInitialStates().contains(state)) {
+            return;
+        }
+        saturatedAut.addInitialState(state);
+        if (checkpoint != null) {
+            checkpoint.logInitialState(state);
+        }
+    }
+
+    protected void addSaturatedFinalState(ControlLocation<L> state) {
+        if (saturatedAut.getFinalStates().contains(state)) {
+            return;
+        }
+        saturatedAut.addFinalState(state);
+        if (checkpoint != null) {
+            checkpoint.logFinalState(state);
+        }
+        listeners.finalStateAdded(state);
+    }
+
+    /**
+     * Records an epsilon transition from the given location to the given state
+     */
+    protected void logIncomingEpsilon(ControlLocation<L> state, ControlLocation<L> location) {
+        if (checkpoint != null) {
+            checkpoint.logEpsilon(state, location);
+        }
+    }
+
+    /**
+     * Records a normal rule synthesized during saturation
+     */
+    protected void logGeneratedRule(Rule<L,S> rule) {
+        if (checkpoint != null) {
+            checkpoint.logGeneratedRule(rule);
+        }
+        listeners.ruleGenerated(rule);
+    }
+
+    /**
+     * Restores an epsilon transition recorded by {@link #logIncomingEpsilon}
+     */
+    protected void restoreIncomingEpsilon(ControlLocation<L> state, ControlLocation<L> location) {
+        throw new IllegalStateException("Checkpoint contains epsilon transitions, which are not used by " + getClass());
+    }
+
+    /**
+     * Restores a synthesized rule recorded by {@link #logGeneratedRule}
+     */
+    protected void restoreGeneratedRule(
+            ControlLocation<L> startLocation,
+            StackSymbol<S> startSymbol,
+            ControlLocation<L> endLocation,
+            StackSymbol<S> endSymbol
+    ) {
+        throw new IllegalStateException("Checkpoint contains generated rules, which are not used by " + getClass());
+    }
+
+    public PAutomaton<L, S> getSaturatedAut() {
+        return saturatedAut;
+    }
+
+    /**
+     * The worklist of the engine. Items are logged as they are added if checkpointing is enabled
+     */
+    private class Worklist extends ForwardingQueue<PAutomaton.Transition<L,S>> {
+
+        @Override
+        protected Queue<PAutomaton.Transition<L,S>> delegate() {
+            return pending;
+        }
+
+        @Override
+        public boolean add(PAutomaton.Transition<L,S> transition) {
+            if (checkpoint != null) {
+                checkpoint.logWorklistItem(transition);
+            }
+            return pending.add(transition);
+        }
+
+        @Override
+        public boolean offer(PAutomaton.Transition<L,S> transition) {
+            return add(transition);
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends PAutomaton.Transition<L,S>> transitions) {
+            return standardAddAll(transitions);
+        }
+    }
+
+    private class CheckpointReplay implements Checkpoint.Replay<L,S> {
+
+        // Items that were added to the worklist but have not been saturated yet. Anything else was processed
+        // before the checkpoint was written
+        private final Set<PAutomaton.Transition<L,S>> unprocessed = new LinkedHashSet<>();
+
+        @Override
+        public void transition(PAutomaton.Transition<L,S> transition) {
+            if (!saturatedAut.getTransitionRelation().contains(transition)) {
+                saturatedAut.addTransition(transition);
+                listeners.transitionAdded(transition);
+            }
+            unprocessed.remove(transition);
+        }
+
+        @Override
+        public void worklistItem(PAutomaton.Transition<L,S> transition) {
+            if (!saturatedAut.getTransitionRelation().contains(transition)) {
+                unprocessed.add(transition);
+            }
+        }
+
+        @Override
+        public void state(ControlLocation<L> state) {
+            saturatedAut.addState(state);
+        }
+
+        @Override
+        public void initialState(ControlLocation<L> state) {
+            saturatedAut.addInitialState(state);
+        }
+
+        @Override
+        public void finalState(ControlLocation<L> state) {
+            if (!saturatedAut.getFinalStates().contains(state)) {
+                saturatedAut.addFinalState(state);
+                listeners.finalStateAdded(state);
+            }
+        }
+
+        @Override
+        public void epsilon(ControlLocation<L> state, ControlLocation<L> location) {
+            restoreIncomingEpsilon(state, location);
+        }
+
+        @Override
+        public void generatedRule(
+                ControlLocation<L> startLocation,
+                StackSymbol<S> startSymbol,
+                ControlLocation<L> endLocation,
+                StackSymbol<S> endSymbol
+        ) {
+            restoreGeneratedRule(startLocation, startSymbol, endLocation, endSymbol);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package ds.simplepds.automata;
+
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.Rule;
+
+/**
+ * Receives the changes to the saturated automaton as they are made, so that consumers can process results while
+ * saturation runs. Listeners are called synchronously on the thread that runs the saturation; slow consumers can be
+ * decoupled with an {@link AsyncSaturationListener}.
+ *
+ * Saturation only adds to the automaton. If trimming is enabled, some of the added transitions and final states are
+ * removed again once the fixpoint is reached; these removals are reported before {@link #fixpointReached()} is called,
+ * so that applying all changes in order gives the saturated automaton.
+ * @param <L>
+ * @param <S>
+ */
+public interface SaturationListener<L,S> {
+
+    /**
+     * Called once for each transition added to the saturated automaton
+     */
+    default void transitionAdded(PAutomaton.Transition<L,S> transition) {
+    }
+
+    /**
+     * Called once for each state that becomes final in the saturated automaton
+     */
+    default void finalStateAdded(ControlLocation<L> state) {
+    }
+
+    /**
+     * Called once for each transition that trimming removes from the saturated automaton at the fixpoint
+     */
+    default void transitionRemoved(PAutomaton.Transition<L,S> transition) {
+    }
+
+    /**
+     * Called once for each final state that trimming removes from the saturated automaton at the fixpoint
+     */
+    default void finalStateRemoved(ControlLocation<L> state) {
+    }
+
+    /**
+     * Called once for each normal rule synthesized from a push rule during pre*
+     */
+    default void ruleGenerated(Rule<L,S> rule) {
+    }
+
+    /**
+     * Called once when saturation reaches its fixpoint. No further changes are reported afterwards
+     */
+    default void fixpointReached() {
+    }
+}
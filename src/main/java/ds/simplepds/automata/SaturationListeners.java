@@ -0,0 +1,67 @@
+package ds.simplepds.automata;
+
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.Rule;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The listeners registered with an engine, notified in the order they were added
+ * @param <L>
+ * @param <S>
+ */
+class SaturationListeners<L,S> implements SaturationListener<L,S> {
+
+    private final List<SaturationListener<L,S>> listeners = new ArrayList<>();
+
+    void add(SaturationListener<L,S> listener) {
+        listeners.add(listener);
+    }
+
+    boolean isEmpty() {
+        return listeners.isEmpty();
+    }
+
+    @Override
+    public void transitionAdded(PAutomaton.Transition<L,S> transition) {
+        for (SaturationListener<L,S> listener : listeners) {
+            listener.transitionAdded(transition);
+        }
+    }
+
+    @Override
+    public void finalStateAdded(ControlLocation<L> state) {
+        for (SaturationListener<L,S> listener : listeners) {
+            listener.finalStateAdded(state);
+        }
+    }
+
+    @Override
+    public void transitionRemoved(PAutomaton.Transition<L,S> transition) {
+        for (SaturationListener<L,S> listener : listeners) {
+            listener.transitionRemoved(transition);
+        }
+    }
+
+    @Override
+    public void finalStateRemoved(ControlLocation<L> state) {
+        for (SaturationListener<L,S> listener : listeners) {
+            listener.finalStateRemoved(state);
+        }
+    }
+
+    @Override
+    public void ruleGenerated(Rule<L,S> rule) {
+        for (SaturationListener<L,S> listener : listeners) {
+            listener.ruleGenerated(rule);
+        }
+    }
+
+    @Override
+    public void fixpointReached() {
+        for (SaturationListener<L,S> listener : listeners) {
+            listener.fixpointReached();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ds.simplepds.automata;
+
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.Rule;
+
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * What a caller of {@link Saturation} asks for, as opposed to how it is computed, which is left to the facade
+ * @param <L>
+ * @param <S>
+ */
+public class SaturationOptions<L,S> {
+
+    private Function<Rule<L,S>, L> generatedStateIdentifierFunction;
+    private boolean trimming = false;
+    private Set<ControlLocation<L>> locationsOfInterest;
+    private Path spillDirectory;
+    private CheckpointCodec<L,S> spillCodec;
+
+    /**
+     * Names the states generated for push rules during post-*. Required for post-*. For batches of queries run in
+     * parallel, the function must be thread-safe
+     */
+    public SaturationOptions<L,S> setGeneratedStateIdentifierFunction(Function<Rule<L,S>, L> function) {
+        this.generatedStateIdentifierFunction = function;
+        return this;
+    }
+
+    /**
+     * See {@link SaturationEngine#enableTrimming()}
+     */
+    public SaturationOptions<L,S> enableTrimming() {
+        this.trimming = true;
+        this.locationsOfInterest = null;
+        return this;
+    }
+
+    /**
+     * See {@link SaturationEngine#enableTrimming(Set)}
+     */
+    public SaturationOptions<L,S> enableTrimming(Set<ControlLocation<L>> locationsOfInterest) {
+        this.trimming = true;
+        this.locationsOfInterest = locationsOfInterest;
+        return this;
+    }
+
+    /**
+     * Allows the worklist to be spilled to the given directory if the heap is too small for the saturation. Whether
+     * and when to spill is decided by the facade
+     */
+    public SaturationOptions<L,S> allowSpilling(Path directory, CheckpointCodec<L,S> codec) {
+        this.spillDirectory = directory;
+        this.spillCodec = codec;
+        return this;
+    }
+
+    Function<Rule<L,S>, L> getGeneratedStateIdentifierFunction() {
+        if (generatedStateIdentifierFunction == null) {
+            throw new IllegalArgumentException("Post-* requires a generated state identifier function");
+        }
+        return generatedStateIdentifierFunction;
+    }
+
+    boolean isTrimming() {
+        return trimming;
+    }
+
+    boolean isSpillingAllowed() {
+        return spillDirectory != null;
+    }
+
+    /**
+     * Applies the options that do not depend on the choice of engine
+     */
+    void configure(SaturationEngine<L,S> engine) {
+        if (trimming) {
+            engine.enableTrimming(locationsOfInterest);
+        }
+    }
+
+    void enableSpilling(SaturationEngine<L,S> engine, int maxInMemoryItems) {
+        engine.enableSpilling(spillDirectory, spillCodec, maxInMemoryItems);
+    }
+}
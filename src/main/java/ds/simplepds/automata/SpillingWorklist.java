@@ -0,0 +1,220 @@
+package ds.simplepds.automata;
+
+import com.google.common.collect.Iterators;
+import com.google.common.primitives.UnsignedBytes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A worklist that keeps at most a fixed number of items on the heap. When the limit is exceeded, the newest half of
+ * the items is written to a run file in the spill directory. Runs are sorted by their binary encoding, which drops
+ * duplicate items and allows each item to be stored as the suffix it does not share with its predecessor. Runs are
+ * read back, oldest first, once the items on the heap have been processed.
+ * @param <L>
+ * @param <S>
+ */
+class SpillingWorklist<L,S> extends AbstractQueue<PAutomaton.Transition<L,S>> implements Closeable {
+
+    private final Path directory;
+    private final CheckpointCodec<L,S> codec;
+    private final int maxInMemoryItems;
+    private final Predicate<PAutomaton.Transition<L,S>> stale;
+    private final Deque<PAutomaton.Transition<L,S>> memory = new ArrayDeque<>();
+    private final Deque<Run> runs = new ArrayDeque<>();
+    private int spilledItems = 0;
+
+    /**
+     * @param stale identifies items that no longer need to be processed. They are dropped when items are spilled or
+     *              read back
+     */
+    SpillingWorklist(
+            Path directory,
+            CheckpointCodec<L,S> codec,
+            int maxInMemoryItems,
+            Predicate<PAutomaton.Transition<L,S>> stale
+    ) {
+        if (maxInMemoryItems < 2) {
+            throw new IllegalArgumentException("At least two items must fit into memory");
+        }
+        this.directory = directory;
+        this.codec = codec;
+        this.maxInMemoryItems = maxInMemoryItems;
+        this.stale = stale;
+    }
+
+    @Override
+    public boolean offer(PAutomaton.Transition<L,S> transition) {
+        memory.add(transition);
+        if (memory.size() > maxInMemoryItems) {
+            spill();
+        }
+        return true;
+    }
+
+    @Override
+    public PAutomaton.Transition<L,S> poll() {
+        refill();
+        return memory.poll();
+    }
+
+    @Override
+    public PAutomaton.Transition<L,S> peek() {
+        refill();
+        return memory.peek();
+    }
+
+    @Override
+    public int size() {
+        return memory.size() + spilledItems;
+    }
+
+    @Override
+    public Iterator<PAutomaton.Transition<L,S>> iterator() {
+        // Spilled runs are read lazily and cannot be modified through the iterator
+        return Iterators.concat(
+                memory.iterator(),
+                Iterators.unmodifiableIterator(Iterators.concat(
+                        Iterators.transform(runs.iterator(), run -> read(run).iterator())
+                ))
+        );
+    }
+
+    /**
+     * Deletes the run files that have not been read back
+     */
+    @Override
+    public void close() {
+        try {
+            for (Run run : runs) {
+                Files.deleteIfExists(run.file);
+            }
+            runs.clear();
+            spilledItems = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void spill() {
+        List<byte[]> encoded = new ArrayList<>();
+        try {
+            while (memory.size() > maxInMemoryItems / 2) {
+                PAutomaton.Transition<L,S> transition = memory.removeLast();
+                if (!stale.test(transition)) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    Checkpoint.writeTransition(codec, transition, new DataOutputStream(bytes));
+                    encoded.add(bytes.toByteArray());
+                }
+            }
+            encoded.sort(UnsignedBytes.lexicographicalComparator());
+
+            Path file = Files.createTempFile(directory, "worklist", ".run");
+            int count = 0;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                byte[] previous = new byte[0];
+                for (byte[] item : encoded) {
+                    if (Arrays.equals(item, previous)) {
+                        continue;
+                    }
+                    int shared = Arrays.mismatch(item, previous);
+                    if (shared < 0) {
+                        shared = item.length;
+                    }
+                    writeVarInt(shared, out);
+                    writeVarInt(item.length - shared, out);
+                    out.write(item, shared, item.length - shared);
+                    previous = item;
+                    count++;
+                }
+            }
+            runs.add(new Run(file, count));
+            spilledItems += count;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void refill() {
+        while (memory.isEmpty() && !runs.isEmpty()) {
+            Run run = runs.remove();
+            spilledItems -= run.size;
+            for (PAutomaton.Transition<L,S> transition : read(run)) {
+                if (!stale.test(transition)) {
+                    memory.add(transition);
+                }
+            }
+            try {
+                Files.delete(run.file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private List<PAutomaton.Transition<L,S>> read(Run run) {
+        List<PAutomaton.Transition<L,S>> transitions = new ArrayList<>(run.size);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run.file)))) {
+            byte[] previous = new byte[0];
+            for (int i = 0; i < run.size; i++) {
+                int shared = readVarInt(in);
+                byte[] item = Arrays.copyOf(previous, shared + readVarInt(in));
+                in.readFully(item, shared, item.length - shared);
+                transitions.add(Checkpoint.readTransition(codec, new DataInputStream(new ByteArrayInputStream(item))));
+                previous = item;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return transitions;
+    }
+
+    private static void writeVarInt(int value, DataOutput out) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private static class Run {
+
+        private final Path file;
+        private final int size;
+
+        private Run(Path file, int size) {
+            this.file = file;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package ds.simplepds.automata;
+
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.Semiring;
+import ds.simplepds.interfaces.StackSymbol;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A P-automaton whose transitions carry weights. The weight of a configuration is the combination of the weights of
+ * all accepting paths for it. The weight of a path is the extension of the weights of its transitions, in the order
+ * of the path for pre-* and in reverse order for post-*, so that it always follows the order in which the rules fire.
+ * @param <L>
+ * @param <S>
+ * @param <W>
+ */
+public class WeightedPAutomaton<L,S,W> extends PAutomaton<L,S> {
+
+    private final Semiring<W> semiring;
+    private final boolean reversedPaths;
+    private final Map<Transition<L,S>, W> weights = new HashMap<>();
+
+    WeightedPAutomaton(Semiring<W> semiring, boolean reversedPaths) {
+        this.semiring = semiring;
+        this.reversedPaths = reversedPaths;
+    }
+
+    /**
+     * @return the weight of the given transition, or zero if there is no such transition
+     */
+    public W getWeight(Transition<L,S> transition) {
+        W weight = weights.get(transition);
+        return weight == null ? semiring.zero() : weight;
+    }
+
+    /**
+     * @return the weight of the configuration with the given control location and stack (from top to bottom), or zero
+     * if the configuration is not accepted
+     */
+    public W getWeight(ControlLocation<L> location, List<StackSymbol<S>> word) {
+        Map<ControlLocation<L>, W> current = Collections.singletonMap(location, semiring.one());
+        for (StackSymbol<S> symbol : word) {
+            Map<ControlLocation<L>, W> next = new HashMap<>();
+            for (Transition<L,S> transition : getTransitionRelation()) {
+                W before = current.get(transition.getStartState());
+                if (before == null || !transition.getLabel().equals(symbol)) {
+                    continue;
+                }
+                W weight = reversedPaths
+                        ? semiring.extend(getWeight(transition), before)
+                        : semiring.extend(before, getWeight(transition));
+                next.merge(transition.getEndState(), weight, semiring::combine);
+            }
+            current = next;
+        }
+        W result = semiring.zero();
+        for (Map.Entry<ControlLocation<L>, W> entry : current.entrySet()) {
+            if (getFinalStates().contains(entry.getKey())) {
+                result = semiring.combine(result, entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Combines the given weight into the weight of a transition, adding the transition if it is new
+     * @return true if the weight of the transition changed
+     */
+    boolean addWeight(Transition<L,S> transition, W weight) {
+        W old = getWeight(transition);
+        W combined = semiring.combine(old, weight);
+        if (combined.equals(old) && getTransitionRelation().contains(transition)) {
+            return false;
+        }
+        addTransition(transition);
+        weights.put(transition, combined);
+        return true;
+    }
+
+    public Semiring<W> getSemiring() {
+        return semiring;
+    }
+}
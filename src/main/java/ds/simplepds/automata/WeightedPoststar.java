@@ -0,0 +1,159 @@
+package ds.simplepds.automata;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Table;
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.Rule;
+import ds.simplepds.interfaces.Semiring;
+import ds.simplepds.interfaces.StackSymbol;
+import ds.simplepds.interfaces.WeightedPushdownSystem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Weighted post-* (see Reps, et al. (SCP05)). The weight of a configuration in the saturated automaton is the
+ * combination, over all paths from the initial configurations, of the extension of the rule weights along the path.
+ * Paths of the saturated automaton are read in reverse order (see {@link WeightedPAutomaton}).
+ * @param <L>
+ * @param <S>
+ * @param <W>
+ */
+public class WeightedPoststar<L,S,W> extends WeightedSaturationEngine<L,S,W> {
+
+    protected final Function<Rule<L,S>, L> generatedStateIdentifierFunction;
+    private final Multimap<Map.Entry<ControlLocation<L>, StackSymbol<S>>, Rule<L,S>> rulesByStart = HashMultimap.create();
+    // Weights of the epsilon transitions of the saturated automaton, by the state they lead to and the location they
+    // leave from
+    private final Table<ControlLocation<L>, ControlLocation<L>, W> epsilons = HashBasedTable.create();
+
+    public WeightedPoststar(
+            WeightedPushdownSystem<L,S,W> pushdownSystem,
+            PAutomaton<L,S> initialAutomaton,
+            Semiring<W> semiring,
+            Function<Rule<L,S>, L> generatedStateIdentifierFunction
+    ) {
+        super(pushdownSystem, initialAutomaton, semiring, true);
+        this.generatedStateIdentifierFunction = generatedStateIdentifierFunction;
+        for (Rule<L,S> rule : pushdownSystem.getRules()) {
+            rulesByStart.put(Maps.immutableEntry(
+                    rule.getStartConfiguration().getControlLocation(),
+                    rule.getStartConfiguration().getStackSymbol()
+            ), rule);
+        }
+    }
+
+    @Override
+    protected void initialize() {
+        initialAut.getAllStates().forEach(saturatedAut::addState);
+        initialAut.getFinalStates().forEach(this::addSaturatedFinalState);
+        initialAut.getInitialStates().forEach(saturatedAut::addInitialState);
+        // Only transitions from initial states can be extended by rules, the others keep weight one
+        for (PAutomaton.Transition<L,S> transition : initialAut.getTransitionRelation()) {
+            if (initialAut.getInitialStates().contains(transition.getStartState())) {
+                update(transition, getInitialWeight(transition));
+            } else {
+                addInitialTransition(transition);
+            }
+        }
+    }
+
+    @Override
+    protected void process(PAutomaton.Transition<L,S> current, W weight) {
+        // Epsilon transitions into the start state lead on with this transition
+        for (Map.Entry<ControlLocation<L>, W> epsilon : epsilons.row(current.getStartState()).entrySet()) {
+            update(
+                    new PAutomaton.Transition<>(epsilon.getKey(), current.getEndState(), current.getLabel()),
+                    semiring.extend(weight, epsilon.getValue())
+            );
+        }
+
+        for (Rule<L,S> rule : rulesByStart.get(Maps.immutableEntry(current.getStartState(), current.getLabel()))) {
+            ControlLocation<L> end = rule.getEndConfiguration().getControlLocation();
+            List<StackSymbol<S>> word = rule.getEndConfiguration().getWord();
+            W extended = semiring.extend(weight, pushdownSystem.getWeight(rule));
+            if (word.isEmpty()) {
+                addEpsilon(current.getEndState(), end, extended);
+            } else if (word.size() == 1) {
+                update(new PAutomaton.Transition<>(end, current.getEndState(), word.get(0)), extended);
+            } else {
+                GeneratedState generated = new GeneratedState(rule);
+                saturatedAut.addState(generated);
+                update(new PAutomaton.Transition<>(end, generated, word.get(1)), semiring.one());
+                update(new PAutomaton.Transition<>(generated, current.getEndState(), word.get(0)), extended);
+            }
+        }
+    }
+
+    private void addEpsilon(ControlLocation<L> state, ControlLocation<L> location, W weight) {
+        W old = epsilons.get(state, location);
+        W combined = old == null ? weight : semiring.combine(old, weight);
+        if (combined.equals(old)) {
+            return;
+        }
+        epsilons.put(state, location, combined);
+        if (saturatedAut.getFinalStates().contains(state)) {
+            addSaturatedFinalState(location);
+        }
+        for (PAutomaton.Transition<L,S> transition : new ArrayList<>(outgoing.get(state))) {
+            update(
+                    new PAutomaton.Transition<>(location, transition.getEndState(), transition.getLabel()),
+                    semiring.extend(saturatedAut.getWeight(transition), combined)
+            );
+        }
+    }
+
+    /**
+     * @return the weight of the epsilon transition from the given location to the given state, or zero
+     */
+    public W getEpsilonWeight(ControlLocation<L> location, ControlLocation<L> state) {
+        W weight = epsilons.get(state, location);
+        return weight == null ? semiring.zero() : weight;
+    }
+
+    public GeneratedState createGeneratedStateFromRule(Rule<L,S> rule) {
+        return new GeneratedState(rule);
+    }
+
+    public class GeneratedState implements ControlLocation<L> {
+
+        private final Rule<L,S> generatingRule;
+
+        protected GeneratedState(Rule<L,S> generatingRule) {
+            this.generatingRule = generatingRule;
+        }
+
+        @Override
+        public L unwrap() {
+            return generatedStateIdentifierFunction.apply(generatingRule);
+        }
+
+        public Rule<L,S> getGeneratingRule() {
+            return generatingRule;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            WeightedPoststar<?,?,?>.GeneratedState that = (WeightedPoststar<?,?,?>.GeneratedState) o;
+            return Objects.equals(generatingRule, that.generatingRule);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(generatingRule);
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(unwrap());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package ds.simplepds.automata;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.Rule;
+import ds.simplepds.interfaces.Semiring;
+import ds.simplepds.interfaces.StackSymbol;
+import ds.simplepds.interfaces.WeightedPushdownSystem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Weighted pre-* (see Reps, et al. (SCP05)). The weight of a configuration in the saturated automaton is the
+ * combination, over all paths to the target configurations, of the extension of the rule weights along the path.
+ * Paths of the saturated automaton are read in order (see {@link WeightedPAutomaton}).
+ * @param <L>
+ * @param <S>
+ * @param <W>
+ */
+public class WeightedPrestar<L,S,W> extends WeightedSaturationEngine<L,S,W> {
+
+    // Normal and push rules by the head they push on top of the stack
+    private final Multimap<Map.Entry<ControlLocation<L>, StackSymbol<S>>, Rule<L,S>> rulesByEndHead =
+            HashMultimap.create();
+    // Push rules by the symbol they leave below the top of the stack
+    private final Multimap<StackSymbol<S>, Rule<L,S>> pushRulesByBelow = HashMultimap.create();
+
+    public WeightedPrestar(
+            WeightedPushdownSystem<L,S,W> pushdownSystem,
+            PAutomaton<L,S> initialAutomaton,
+            Semiring<W> semiring
+    ) {
+        super(pushdownSystem, initialAutomaton, semiring, false);
+        for (Rule<L,S> rule : pushdownSystem.getRules()) {
+            List<StackSymbol<S>> word = rule.getEndConfiguration().getWord();
+            if (word.isEmpty()) {
+                continue;
+            }
+            rulesByEndHead.put(Maps.immutableEntry(
+                    rule.getEndConfiguration().getControlLocation(),
+                    word.get(word.size() - 1)
+            ), rule);
+            if (word.size() == 2) {
+                pushRulesByBelow.put(word.get(0), rule);
+            }
+        }
+    }
+
+    @Override
+    protected void initialize() {
+        initialAut.getAllStates().forEach(saturatedAut::addState);
+        initialAut.getFinalStates().forEach(this::addSaturatedFinalState);
+        initialAut.getInitialStates().forEach(saturatedAut::addInitialState);
+        for (PAutomaton.Transition<L,S> transition : initialAut.getTransitionRelation()) {
+            update(transition, getInitialWeight(transition));
+        }
+
+        // Handle PDS pop rules
+        for (Rule<L,S> rule : pushdownSystem.getRules()) {
+            if (rule.getEndConfiguration().getWord().isEmpty()) {
+                update(new PAutomaton.Transition<>(
+                        rule.getStartConfiguration().getControlLocation(),
+                        rule.getEndConfiguration().getControlLocation(),
+                        rule.getStartConfiguration().getStackSymbol()
+                ), pushdownSystem.getWeight(rule));
+            }
+        }
+    }
+
+    @Override
+    protected void process(PAutomaton.Transition<L,S> current, W weight) {
+        for (Rule<L,S> rule : rulesByEndHead.get(Maps.immutableEntry(current.getStartState(), current.getLabel()))) {
+            ControlLocation<L> start = rule.getStartConfiguration().getControlLocation();
+            StackSymbol<S> symbol = rule.getStartConfiguration().getStackSymbol();
+            W extended = semiring.extend(pushdownSystem.getWeight(rule), weight);
+            List<StackSymbol<S>> word = rule.getEndConfiguration().getWord();
+            if (word.size() == 1) {
+                update(new PAutomaton.Transition<>(start, current.getEndState(), symbol), extended);
+                continue;
+            }
+            // The current transition reads the top of a push rule, continue with the symbol below
+            for (PAutomaton.Transition<L,S> below : new ArrayList<>(outgoing.get(current.getEndState()))) {
+                if (below.getLabel().equals(word.get(0))) {
+                    update(
+                            new PAutomaton.Transition<>(start, below.getEndState(), symbol),
+                            semiring.extend(extended, saturatedAut.getWeight(below))
+                    );
+                }
+            }
+        }
+
+        // The current transition reads the symbol below the top of a push rule
+        for (Rule<L,S> rule : pushRulesByBelow.get(current.getLabel())) {
+            PAutomaton.Transition<L,S> top = new PAutomaton.Transition<>(
+                    rule.getEndConfiguration().getControlLocation(),
+                    current.getStartState(),
+                    rule.getEndConfiguration().getWord().get(1)
+            );
+            if (saturatedAut.getTransitionRelation().contains(top)) {
+                update(
+                        new PAutomaton.Transition<>(
+                                rule.getStartConfiguration().getControlLocation(),
+                                current.getEndState(),
+                                rule.getStartConfiguration().getStackSymbol()
+                        ),
+                        semiring.extend(
+                                semiring.extend(pushdownSystem.getWeight(rule), saturatedAut.getWeight(top)),
+                                weight
+                        )
+                );
+            }
+        }
+    }
+}
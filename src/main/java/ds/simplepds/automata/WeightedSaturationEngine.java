@@ -0,0 +1,195 @@
+package ds.simplepds.automata;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import ds.simplepds.automata.demand.Wildcard;
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.Rule;
+import ds.simplepds.interfaces.Semiring;
+import ds.simplepds.interfaces.StackSymbol;
+import ds.simplepds.interfaces.WeightedPushdownSystem;
+
+import java.time.Duration;
+
+/**
+ * The worklist loop shared by the weighted saturation engines. A transition is processed whenever its weight
+ * changes, and the weights it contributes to other transitions are combined into theirs. Saturation terminates
+ * because the semiring is bounded.
+ *
+ * As with {@link SaturationEngine}, saturation can be run to its fixpoint with {@link #apply()}, or in slices bounded
+ * by a number of worklist items, a timeout or a {@link CancellationToken}.
+ * @param <L>
+ * @param <S>
+ * @param <W>
+ */
+public abstract class WeightedSaturationEngine<L,S,W> {
+
+    protected final WeightedPushdownSystem<L,S,W> pushdownSystem;
+    protected final PAutomaton<L,S> initialAut;
+    protected final Semiring<W> semiring;
+    protected final WeightedPAutomaton<L,S,W> saturatedAut;
+    // Transitions of the saturated automaton by start state
+    protected final Multimap<ControlLocation<L>, PAutomaton.Transition<L,S>> outgoing = HashMultimap.create();
+    private final WeightedWorklist<L,S> worklist;
+    private final SaturationListeners<L,S> listeners = new SaturationListeners<>();
+    private boolean initialized = false;
+    private boolean fixpointReached = false;
+
+    WeightedSaturationEngine(
+            WeightedPushdownSystem<L,S,W> pushdownSystem,
+            PAutomaton<L,S> initialAutomaton,
+            Semiring<W> semiring,
+            boolean forward
+    ) {
+        for (Rule<L,S> rule : pushdownSystem.getRules()) {
+            boolean wildcard = rule.getStartConfiguration().getStackSymbol() instanceof Wildcard<S>;
+            for (StackSymbol<S> symbol : rule.getEndConfiguration().getWord()) {
+                wildcard |= symbol instanceof Wildcard<S>;
+            }
+            if (wildcard) {
+                throw new IllegalArgumentException("Weighted rules must not contain wildcards: " + rule);
+            }
+        }
+        this.pushdownSystem = pushdownSystem;
+        this.initialAut = initialAutomaton;
+        this.semiring = semiring;
+        this.saturatedAut = new WeightedPAutomaton<>(semiring, forward);
+        this.worklist = new WeightedWorklist<>(forward
+                ? ComponentOrder.forward(pushdownSystem.getRules())
+                : ComponentOrder.backward(pushdownSystem.getRules()));
+    }
+
+    /**
+     * Saturates the automaton until a fixpoint is reached
+     */
+    public void apply() {
+        saturate(new SaturationBudget(Long.MAX_VALUE, Long.MAX_VALUE, null));
+    }
+
+    /**
+     * Saturates the automaton until a fixpoint is reached or the timeout expires. A later call continues where this
+     * one stopped.
+     * @return true if the fixpoint was reached
+     */
+    public boolean apply(Duration timeout) {
+        return saturate(new SaturationBudget(Long.MAX_VALUE, timeout.toNanos(), null));
+    }
+
+    /**
+     * Saturates the automaton until a fixpoint is reached or the token is cancelled. A later call continues where
+     * this one stopped.
+     * @return true if the fixpoint was reached
+     */
+    public boolean apply(CancellationToken token) {
+        return saturate(new SaturationBudget(Long.MAX_VALUE, Long.MAX_VALUE, token));
+    }
+
+    /**
+     * Saturates the automaton until a fixpoint is reached, the timeout expires or the token is cancelled. A later
+     * call continues where this one stopped.
+     * @return true if the fixpoint was reached
+     */
+    public boolean apply(Duration timeout, CancellationToken token) {
+        return saturate(new SaturationBudget(Long.MAX_VALUE, timeout.toNanos(), token));
+    }
+
+    /**
+     * Processes at most the given number of worklist items. A later call continues where this one stopped.
+     * @return true if the fixpoint was reached
+     */
+    public boolean step(int maxItems) {
+        return saturate(new SaturationBudget(maxItems, Long.MAX_VALUE, null));
+    }
+
+    /**
+     * @return true if the saturated automaton has reached its fixpoint. Until then, the weights of
+     * {@link #getSaturatedAut()} may still change
+     */
+    public boolean isFixpointReached() {
+        return fixpointReached;
+    }
+
+    private boolean saturate(SaturationBudget budget) {
+        if (!initialized) {
+            initialize();
+            initialized = true;
+        }
+        while (!worklist.isEmpty()) {
+            if (budget.isExhausted()) {
+                return false;
+            }
+            PAutomaton.Transition<L,S> current = worklist.remove();
+            budget.itemProcessed();
+            process(current, saturatedAut.getWeight(current));
+        }
+        if (!fixpointReached) {
+            fixpointReached = true;
+            listeners.fixpointReached();
+        }
+        return true;
+    }
+
+    /**
+     * Reports new transitions and final states of the saturated automaton as they are added. Changes to the weights
+     * of existing transitions are not reported. Must be called before {@link #apply()}.
+     */
+    public void addListener(SaturationListener<L,S> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Seeds the saturated automaton and the worklist
+     */
+    protected abstract void initialize();
+
+    /**
+     * Propagates the current weight of a transition
+     */
+    protected abstract void process(PAutomaton.Transition<L,S> current, W weight);
+
+    /**
+     * Combines the given weight into the weight of a transition, and queues the transition if its weight changed
+     */
+    protected void update(PAutomaton.Transition<L,S> transition, W weight) {
+        // Zero is the weight of no path, the transition is not derived
+        if (weight.equals(semiring.zero())) {
+            return;
+        }
+        boolean isNew = !saturatedAut.getTransitionRelation().contains(transition);
+        if (saturatedAut.addWeight(transition, weight)) {
+            if (isNew) {
+                outgoing.put(transition.getStartState(), transition);
+                listeners.transitionAdded(transition);
+            }
+            worklist.add(transition);
+        }
+    }
+
+    /**
+     * @return the weight a transition of the initial automaton starts with, one by default
+     */
+    protected W getInitialWeight(PAutomaton.Transition<L,S> transition) {
+        return semiring.one();
+    }
+
+    /**
+     * Adds a transition of the initial automaton with its initial weight, without queueing it
+     */
+    protected void addInitialTransition(PAutomaton.Transition<L,S> transition) {
+        saturatedAut.addWeight(transition, getInitialWeight(transition));
+        outgoing.put(transition.getStartState(), transition);
+        listeners.transitionAdded(transition);
+    }
+
+    protected void addSaturatedFinalState(ControlLocation<L> state) {
+        if (saturatedAut.getFinalStates().contains(state)) {
+            return;
+        }
+        saturatedAut.addFinalState(state);
+        listeners.finalStateAdded(state);
+    }
+
+    public WeightedPAutomaton<L,S,W> getSaturatedAut() {
+        return saturatedAut;
+    }
+}
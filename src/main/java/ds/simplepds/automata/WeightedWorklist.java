@@ -0,0 +1,51 @@
+package ds.simplepds.automata;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * The worklist of the weighted saturation engines. It holds transitions whose weight changed since they were last
+ * processed, each at most once: a transition whose weight changes again while it waits is processed once, with its
+ * latest weight. Transitions are handed out by the component of their start state, earliest first, so that weights
+ * upstream settle before they are propagated further.
+ * @param <L>
+ * @param <S>
+ */
+class WeightedWorklist<L,S> {
+
+    private final ComponentOrder<L> order;
+    private final LinkedHashSet<PAutomaton.Transition<L,S>>[] buckets;
+    private final BitSet nonEmpty = new BitSet();
+
+    WeightedWorklist(ComponentOrder<L> order) {
+        this.order = order;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        LinkedHashSet<PAutomaton.Transition<L,S>>[] buckets = new LinkedHashSet[order.getComponentCount()];
+        this.buckets = buckets;
+    }
+
+    void add(PAutomaton.Transition<L,S> transition) {
+        int component = order.componentOf(transition.getStartState());
+        if (buckets[component] == null) {
+            buckets[component] = new LinkedHashSet<>();
+        }
+        buckets[component].add(transition);
+        nonEmpty.set(component);
+    }
+
+    boolean isEmpty() {
+        return nonEmpty.isEmpty();
+    }
+
+    PAutomaton.Transition<L,S> remove() {
+        int component = nonEmpty.nextSetBit(0);
+        Iterator<PAutomaton.Transition<L,S>> iterator = buckets[component].iterator();
+        PAutomaton.Transition<L,S> transition = iterator.next();
+        iterator.remove();
+        if (buckets[component].isEmpty()) {
+            nonEmpty.clear(component);
+        }
+        return transition;
+    }
+}
@@ -0,0 +1,44 @@
+package ds.simplepds.automata.demand;
+
+import ds.simplepds.interfaces.Rule;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Flow functions that generate rules asynchronously. Demand-driven engines keep saturating other worklist items
+ * while the rules for a location are being computed, and resume the transitions waiting on that location once
+ * its rules arrive.
+ * @param <L>
+ * @param <S>
+ */
+public interface AsyncFlowFunctions<L,S> extends FlowFunctions<L,S> {
+
+    CompletableFuture<Set<Rule<L,S>>> applyAsync(L currentLocation);
+
+    /**
+     * Asynchronous counterpart of {@link #applyAll(Set)}
+     */
+    default CompletableFuture<Map<L, Set<Rule<L,S>>>> applyAllAsync(Set<L> currentLocations) {
+        Map<L, CompletableFuture<Set<Rule<L,S>>>> requests = new HashMap<>();
+        currentLocations.forEach(location -> requests.put(location, applyAsync(location)));
+        return CompletableFuture.allOf(requests.values().toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    Map<L, Set<Rule<L,S>>> rules = new HashMap<>();
+                    requests.forEach((location, request) -> rules.put(location, request.join()));
+                    return rules;
+                });
+    }
+
+    @Override
+    default Set<Rule<L,S>> apply(L currentLocation) {
+        return applyAsync(currentLocation).join();
+    }
+
+    @Override
+    default Map<L, Set<Rule<L,S>>> applyAll(Set<L> currentLocations) {
+        return applyAllAsync(currentLocations).join();
+    }
+}
@@ -0,0 +1,29 @@
+package ds.simplepds.automata.demand;
+
+import ds.simplepds.interfaces.Rule;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+public interface AsyncForwardFlowFunctions<L,S> extends ForwardFlowFunctions<L,S>, AsyncFlowFunctions<L,S> {
+
+    /**
+     * Runs a set of (blocking) flow functions on the given executor. Batches are handed to the flow functions
+     * as a whole.
+     */
+    static <L,S> AsyncForwardFlowFunctions<L,S> onExecutor(ForwardFlowFunctions<L,S> flowFunctions, Executor executor) {
+        return new AsyncForwardFlowFunctions<>() {
+            @Override
+            public CompletableFuture<Set<Rule<L,S>>> applyAsync(L currentLocation) {
+                return CompletableFuture.supplyAsync(() -> flowFunctions.apply(currentLocation), executor);
+            }
+
+            @Override
+            public CompletableFuture<Map<L, Set<Rule<L,S>>>> applyAllAsync(Set<L> currentLocations) {
+                return CompletableFuture.supplyAsync(() -> flowFunctions.applyAll(currentLocations), executor);
+            }
+        };
+    }
+}
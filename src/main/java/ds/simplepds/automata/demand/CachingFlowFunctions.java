@@ -0,0 +1,91 @@
+package ds.simplepds.automata.demand;
+
+import ds.simplepds.interfaces.Rule;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A thread-safe memoizing wrapper around a set of flow functions. Rules are generated at most once per location,
+ * even when several queries ask for the same location at the same time, and can then be shared by any number of
+ * concurrently running demand-driven queries.
+ * @param <L>
+ * @param <S>
+ */
+public class CachingFlowFunctions<L,S> implements ForwardFlowFunctions<L,S>, BackwardFlowFunctions<L,S> {
+
+    private final FlowFunctions<L,S> delegate;
+    private final ConcurrentMap<L, CompletableFuture<Set<Rule<L,S>>>> cache = new ConcurrentHashMap<>();
+
+    public CachingFlowFunctions(FlowFunctions<L,S> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Set<Rule<L,S>> apply(L currentLocation) {
+        CompletableFuture<Set<Rule<L,S>>> cached = cache.get(currentLocation);
+        if (cached == null) {
+            // Only the thread that wins the race computes the rules, others wait for its result
+            CompletableFuture<Set<Rule<L,S>>> computation = new CompletableFuture<>();
+            cached = cache.putIfAbsent(currentLocation, computation);
+            if (cached == null) {
+                try {
+                    computation.complete(Collections.unmodifiableSet(delegate.apply(currentLocation)));
+                } catch (RuntimeException e) {
+                    cache.remove(currentLocation, computation);
+                    computation.completeExceptionally(e);
+                    throw e;
+                }
+                cached = computation;
+            }
+        }
+        return cached.join();
+    }
+
+    @Override
+    public Map<L, Set<Rule<L,S>>> applyAll(Set<L> currentLocations) {
+        Map<L, CompletableFuture<Set<Rule<L,S>>>> computations = new HashMap<>();
+        Map<L, CompletableFuture<Set<Rule<L,S>>>> lookups = new HashMap<>();
+        for (L location : currentLocations) {
+            CompletableFuture<Set<Rule<L,S>>> computation = new CompletableFuture<>();
+            CompletableFuture<Set<Rule<L,S>>> cached = cache.putIfAbsent(location, computation);
+            if (cached == null) {
+                computations.put(location, computation);
+                lookups.put(location, computation);
+            } else {
+                lookups.put(location, cached);
+            }
+        }
+        // Generate the missing rules with a single batched call
+        if (!computations.isEmpty()) {
+            try {
+                Map<L, Set<Rule<L,S>>> generated = delegate.applyAll(computations.keySet());
+                computations.forEach((location, computation) -> computation.complete(
+                        Collections.unmodifiableSet(generated.getOrDefault(location, Collections.emptySet()))
+                ));
+            } catch (RuntimeException e) {
+                computations.forEach((location, computation) -> {
+                    cache.remove(location, computation);
+                    computation.completeExceptionally(e);
+                });
+                throw e;
+            }
+        }
+        Map<L, Set<Rule<L,S>>> rules = new HashMap<>();
+        lookups.forEach((location, lookup) -> rules.put(location, lookup.join()));
+        return rules;
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+}
@@ -3,15 +3,18 @@ package ds.simplepds.automata.demand;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
 import com.google.common.collect.Sets;
 import ds.simplepds.automata.PAutomaton;
+import ds.simplepds.automata.ProcedureSummaries;
+import ds.simplepds.automata.SaturationEngine;
 import ds.simplepds.interfaces.ControlLocation;
 import ds.simplepds.interfaces.Rule;
 
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Objects;
-import java.util.Queue;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -24,61 +27,111 @@ import java.util.stream.Collectors;
  * @param <L>
  * @param <S>
  */
-public class DemandPostStar<L,S>{
-    private final ForwardFlowFunctions<L,S> flowFunction;
+public class DemandPostStar<L,S> extends SaturationEngine<L,S> {
+    private final RuleResolver<L,S> ruleResolver;
     private final PAutomaton<L,S> initialAutomaton;
     private final Function<Rule<L,S>, L> generatedStateIdentifierFunction;
-    protected final PAutomaton<L,S> saturatedAut = new PAutomaton<>();
     protected final Multimap<ControlLocation<L>, ControlLocation<L>> incomingEpsilons = HashMultimap.create();
-    protected final Queue<PAutomaton.Transition<L, S>> worklist;
+    private ProcedureSummaries<L,S> procedureSummaries;
 
     public DemandPostStar(
             ForwardFlowFunctions<L,S> flowFunction,
             PAutomaton<L,S> initialAutomaton,
             Function<Rule<L,S>, L> generatedStateIdentifierFunction
     ) {
-        this.flowFunction = flowFunction;
+        this.ruleResolver = new RuleResolver<>(flowFunction, this::processRules);
         this.initialAutomaton = initialAutomaton;
         this.generatedStateIdentifierFunction = generatedStateIdentifierFunction;
-        this.worklist =
+    }
+
+    @Override
+    protected void initialize() {
+        List<PAutomaton.Transition<L, S>> initialTransitions =
                 initialAutomaton.getTransitionRelation()
                         .stream()
                         .filter(transition ->
                                 initialAutomaton.getInitialStates()
                                         .contains(transition.getStartState())
                         ).collect(Collectors.toCollection(LinkedList::new));
-    }
-
-    public void apply() {
+        worklist.addAll(initialTransitions);
 
         // All transitions from the initial automaton that are not in the worklist
         // are added directly to the transition relation for the saturated automaton
-        Sets.difference(initialAutomaton.getTransitionRelation(), new HashSet<>(worklist))
-                .forEach(saturatedAut::addTransition);
+        Sets.difference(initialAutomaton.getTransitionRelation(), new HashSet<>(initialTransitions))
+                .forEach(this::addSaturatedTransition);
 
         // Initialize the states of the saturated automaton
-        initialAutomaton.getAllStates().forEach(saturatedAut::addState);
-        initialAutomaton.getFinalStates().forEach(saturatedAut::addFinalState);
-        initialAutomaton.getInitialStates().forEach(saturatedAut::addInitialState);
-
-        // process the worklist
-        while (!worklist.isEmpty()) {
-            PAutomaton.Transition<L,S> current = worklist.remove();
-            if (!saturatedAut.getTransitionRelation().contains(current)) {
-                saturatedAut.addTransition(current);
-
-                Set<Rule<L,S>> rules = flowFunction.apply(current.getStartState().unwrap());
-                rules.forEach(rule -> {
-                    if (rule.getEndConfiguration().getWord().size() == 2) {
-                        handlePushRule(rule, current);
-                    } else if (rule.getEndConfiguration().getWord().size() == 0) {
-                        handlePopRule(rule, current);
-                    } else if (rule.getEndConfiguration().getWord().size() == 1) {
-                        handleNormalRule(rule, current);
-                    }
-                });
-            }
+        initialAutomaton.getAllStates().forEach(this::addSaturatedState);
+        initialAutomaton.getFinalStates().forEach(this::addSaturatedFinalState);
+        initialAutomaton.getInitialStates().forEach(this::addSaturatedInitialState);
+    }
+
+    // Transitions whose rules are not known yet are parked by the rule resolver, which requests the rules for their
+    // locations in batches (see RuleResolver)
+    @Override
+    protected void process(PAutomaton.Transition<L,S> current) {
+        if (procedureSummaries != null && procedureSummaries.isSummarized(current.getStartState())) {
+            procedureSummaries.instantiate(current, GeneratedState::new, worklist::add, this::addIncomingEpsilon);
+            return;
         }
+        ruleResolver.resolve(current);
+    }
+
+    @Override
+    protected boolean hasPendingWork() {
+        return ruleResolver.hasPending();
+    }
+
+    @Override
+    protected void awaitPendingWork(long timeoutNanos) {
+        ruleResolver.processArrivals(timeoutNanos);
+    }
+
+    /**
+     * The control locations are only discovered during saturation, so trimming keeps the configurations at every
+     * state but the generated ones
+     */
+    @Override
+    protected Set<ControlLocation<L>> getLocationsOfInterest() {
+        return saturatedAut.getAllStates().stream()
+                .filter(state -> !(state instanceof DemandPostStar<?,?>.GeneratedState))
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Uses precomputed summaries for a library fragment instead of applying the fragment's rules. The summary of an
+     * entry configuration is instantiated whenever a transition leaving it is saturated.
+     */
+    public void setProcedureSummaries(ProcedureSummaries<L,S> procedureSummaries) {
+        this.procedureSummaries = procedureSummaries;
+    }
+
+    /**
+     * @return the epsilon transitions of the saturated automaton, as control locations by the state they lead to
+     */
+    public Multimap<ControlLocation<L>, ControlLocation<L>> getIncomingEpsilons() {
+        return Multimaps.unmodifiableMultimap(incomingEpsilons);
+    }
+
+    /**
+     * Limits how many unresolved locations are collected before their rules are requested. By default all
+     * unresolved locations are collected until the worklist runs dry, or, for asynchronous flow functions, until no
+     * request is in flight.
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        ruleResolver.setMaxBatchSize(maxBatchSize);
+    }
+
+    protected void processRules(PAutomaton.Transition<L,S> current, Set<Rule<L,S>> rules) {
+        rules.forEach(rule -> {
+            if (rule.getEndConfiguration().getWord().size() == 2) {
+                handlePushRule(rule, current);
+            } else if (rule.getEndConfiguration().getWord().size() == 0) {
+                handlePopRule(rule, current);
+            } else if (rule.getEndConfiguration().getWord().size() == 1) {
+                handleNormalRule(rule, current);
+            }
+        });
     }
 
     protected void handleNormalRule(Rule<L, S> rule,  PAutomaton.Transition<L,S> current) {
@@ -92,23 +145,28 @@ public class DemandPostStar<L,S>{
     }
 
     protected void handlePopRule(Rule<L, S> rule,  PAutomaton.Transition<L,S> current) {
-        if (rule.getStartConfiguration().getStackSymbol().equals(current.getLabel()) &&
-                !incomingEpsilons.containsEntry(
-                        current.getEndState(),
-                        rule.getEndConfiguration().getControlLocation()
-                )
-            ) {
-            incomingEpsilons.put(current.getEndState(), rule.getEndConfiguration().getControlLocation());
-            for (PAutomaton.Transition<L,S> transition : saturatedAut.getTransitionRelation()) {
-                if (transition.getStartState().equals(current.getEndState())) {
-                    worklist.add(new PAutomaton.Transition<>(
-                            rule.getEndConfiguration().getControlLocation(),
-                            transition.getEndState(),
-                            transition.getLabel()
-                    ));
-                    if (saturatedAut.getFinalStates().contains(current.getEndState())) {
-                        saturatedAut.addFinalState(rule.getEndConfiguration().getControlLocation());
-                    }
+        if (rule.getStartConfiguration().getStackSymbol().equals(current.getLabel())) {
+            addIncomingEpsilon(current.getEndState(), rule.getEndConfiguration().getControlLocation());
+        }
+    }
+
+    /**
+     * Adds an epsilon transition from the given location to the given state, and the transitions it implies for the
+     * location
+     */
+    protected void addIncomingEpsilon(ControlLocation<L> state, ControlLocation<L> location) {
+        if (!incomingEpsilons.put(state, location)) {
+            return;
+        }
+        for (PAutomaton.Transition<L,S> transition : saturatedAut.getTransitionRelation()) {
+            if (transition.getStartState().equals(state)) {
+                worklist.add(new PAutomaton.Transition<>(
+                        location,
+                        transition.getEndState(),
+                        transition.getLabel()
+                ));
+                if (saturatedAut.getFinalStates().contains(state)) {
+                    addSaturatedFinalState(location);
                 }
             }
         }
@@ -117,7 +175,7 @@ public class DemandPostStar<L,S>{
     protected void handlePushRule(Rule<L, S> rule,  PAutomaton.Transition<L,S> current) {
         // Initial push rule processing
         GeneratedState generated = new GeneratedState(rule);
-        saturatedAut.addState(generated);
+        addSaturatedState(generated);
         worklist.add(new PAutomaton.Transition<>(
                 rule.getEndConfiguration().getControlLocation(),
                 generated,
@@ -126,7 +184,7 @@ public class DemandPostStar<L,S>{
 
         if (rule.getStartConfiguration().getStackSymbol().equals(current.getLabel())) {
             GeneratedState newGenerated = new GeneratedState(rule);
-            saturatedAut.addTransition(new PAutomaton.Transition<>(
+            addSaturatedTransition(new PAutomaton.Transition<>(
                     newGenerated,
                     current.getEndState(),
                     rule.getEndConfiguration().getWord().get(1)
@@ -141,10 +199,6 @@ public class DemandPostStar<L,S>{
         }
     }
 
-    public PAutomaton<L, S> getSaturatedAut() {
-        return saturatedAut;
-    }
-
     public PAutomaton<L, S> getInitialAutomaton() {
         return initialAutomaton;
     }
@@ -1,6 +1,8 @@
 package ds.simplepds.automata.demand;
 
+import ds.simplepds.automata.GeneratedRuleIndex;
 import ds.simplepds.automata.PAutomaton;
+import ds.simplepds.automata.SaturationEngine;
 import ds.simplepds.interfaces.ControlLocation;
 import ds.simplepds.interfaces.EndConfiguration;
 import ds.simplepds.interfaces.Rule;
@@ -8,10 +10,8 @@ import ds.simplepds.interfaces.StackSymbol;
 import ds.simplepds.interfaces.StartConfiguration;
 
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
+import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -21,48 +21,74 @@ import java.util.Set;
  * @param <L>
  * @param <S>
  */
-public class DemandPreStar<L,S> {
-    private final BackwardFlowFunctions<L,S> flowFunction;
+public class DemandPreStar<L,S> extends SaturationEngine<L,S> {
+    private final RuleResolver<L,S> ruleResolver;
     private final PAutomaton<L,S> initialAutomaton;
-    protected final PAutomaton<L,S> saturatedAut = new PAutomaton<>();
-    protected final Queue<PAutomaton.Transition<L, S>> worklist;
-    protected final Set<Rule<L,S>> deltaPrime = new HashSet<>();
+    protected final GeneratedRuleIndex<L,S> deltaPrime = new GeneratedRuleIndex<>();
 
     public DemandPreStar(BackwardFlowFunctions<L, S> flowFunction, PAutomaton<L, S> initialAutomaton) {
-        this.flowFunction = flowFunction;
+        this.ruleResolver = new RuleResolver<>(flowFunction, this::processRules);
         this.initialAutomaton = initialAutomaton;
-        this.worklist = new LinkedList<>(initialAutomaton.getTransitionRelation());
     }
 
-    public void apply() {
+    @Override
+    protected void initialize() {
+        worklist.addAll(initialAutomaton.getTransitionRelation());
+
         // Initialize the states (and final states) of the saturated automaton
-        initialAutomaton.getAllStates().forEach(saturatedAut::addState);
-        initialAutomaton.getFinalStates().forEach(saturatedAut::addFinalState);
-        initialAutomaton.getInitialStates().forEach(saturatedAut::addInitialState);
-
-        // process the worklist
-        while (!worklist.isEmpty()) {
-            PAutomaton.Transition<L,S> current = worklist.remove();
-            if (!saturatedAut.getTransitionRelation().contains(current)) {
-                saturatedAut.addTransition(current);
-
-                Set<Rule<L,S>> rules = flowFunction.apply(current.getStartState().unwrap());
-                rules.forEach(rule -> {
-                    if (rule.getEndConfiguration().getWord().size() == 2) {
-                        handlePushRule(rule, current);
-                    } else if (rule.getEndConfiguration().getWord().size() == 0) {
-                        handlePopRule(rule, current);
-                    } else if (rule.getEndConfiguration().getWord().size() == 1) {
-                        handleNormalRule(rule, current);
-                    }
-                });
-                // Handle extra rules generated by pop rule
-                deltaPrime.forEach(rule -> {
-                    if (rule.getEndConfiguration().getControlLocation().equals(current.getStartState())) {
-                        handleNormalRule(rule, current);
-                    }
-                });
+        initialAutomaton.getAllStates().forEach(this::addSaturatedState);
+        initialAutomaton.getFinalStates().forEach(this::addSaturatedFinalState);
+        initialAutomaton.getInitialStates().forEach(this::addSaturatedInitialState);
+    }
+
+    // Transitions whose rules are not known yet are parked by the rule resolver, which requests the rules for their
+    // locations in batches (see RuleResolver)
+    @Override
+    protected void process(PAutomaton.Transition<L,S> current) {
+        ruleResolver.resolve(current);
+    }
+
+    @Override
+    protected boolean hasPendingWork() {
+        return ruleResolver.hasPending();
+    }
+
+    @Override
+    protected void awaitPendingWork(long timeoutNanos) {
+        ruleResolver.processArrivals(timeoutNanos);
+    }
+
+    /**
+     * The control locations are only discovered during saturation, so trimming keeps the configurations at every
+     * state
+     */
+    @Override
+    protected Set<ControlLocation<L>> getLocationsOfInterest() {
+        return saturatedAut.getAllStates();
+    }
+
+    /**
+     * Limits how many unresolved locations are collected before their rules are requested. By default all
+     * unresolved locations are collected until the worklist runs dry, or, for asynchronous flow functions, until no
+     * request is in flight.
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        ruleResolver.setMaxBatchSize(maxBatchSize);
+    }
+
+    protected void processRules(PAutomaton.Transition<L,S> current, Set<Rule<L,S>> rules) {
+        rules.forEach(rule -> {
+            if (rule.getEndConfiguration().getWord().size() == 2) {
+                handlePushRule(rule, current);
+            } else if (rule.getEndConfiguration().getWord().size() == 0) {
+                handlePopRule(rule, current);
+            } else if (rule.getEndConfiguration().getWord().size() == 1) {
+                handleNormalRule(rule, current);
             }
+        });
+        // Handle extra rules generated by pop rule
+        for (Rule<L,S> rule : deltaPrime.lookup(current.getStartState(), current.getLabel())) {
+            handleNormalRule(rule, current);
         }
     }
 
@@ -88,12 +114,17 @@ public class DemandPreStar<L,S> {
 
     protected void handlePushRule(Rule<L, S> rule, PAutomaton.Transition<L, S> current) {
         if (rule.getEndConfiguration().getWord().get(0).equals(current.getLabel())) {
-            deltaPrime.add(new GeneratedRule<>(
+            GeneratedRule<L,S> generatedRule = new GeneratedRule<>(
                     rule.getStartConfiguration().getControlLocation(),
                     rule.getStartConfiguration().getStackSymbol(),
                     current.getEndState(),
                     rule.getEndConfiguration().getWord().get(1)
-            ));
+            );
+            if (!deltaPrime.add(generatedRule)) {
+                // The rule has already been matched against the transitions leaving its end location
+                return;
+            }
+            logGeneratedRule(generatedRule);
 
             for (PAutomaton.Transition<L,S> transition : saturatedAut.getTransitionRelation()) {
                 if (transition.getStartState().equals(current.getEndState()) &&
@@ -109,10 +140,6 @@ public class DemandPreStar<L,S> {
         }
     }
 
-    public PAutomaton<L, S> getSaturatedAut() {
-        return saturatedAut;
-    }
-
     public PAutomaton<L, S> getInitialAutomaton() {
         return initialAutomaton;
     }
@@ -121,6 +148,10 @@ public class DemandPreStar<L,S> {
 
         private final StartConfiguration<L,S> startConfiguration;
         private final EndConfiguration<L,S> endConfiguration;
+        private final ControlLocation<L> startLoc;
+        private final StackSymbol<S> startSym;
+        private final ControlLocation<L> endLoc;
+        private final StackSymbol<S> endSym;
 
         protected GeneratedRule(
                 ControlLocation<L> startLoc,
@@ -128,6 +159,10 @@ public class DemandPreStar<L,S> {
                 ControlLocation<L> endLoc,
                 StackSymbol<S> endSym
         ) {
+            this.startLoc = startLoc;
+            this.startSym = startSym;
+            this.endLoc = endLoc;
+            this.endSym = endSym;
             this.startConfiguration = new StartConfiguration<L, S>() {
                 @Override
                 public StackSymbol<S> getStackSymbol() {
@@ -161,5 +196,19 @@ public class DemandPreStar<L,S> {
         public EndConfiguration<L, S> getEndConfiguration() {
             return endConfiguration;
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            GeneratedRule<?, ?> that = (GeneratedRule<?, ?>) o;
+            return Objects.equals(startLoc, that.startLoc) && Objects.equals(startSym, that.startSym) &&
+                    Objects.equals(endLoc, that.endLoc) && Objects.equals(endSym, that.endSym);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(startLoc, startSym, endLoc, endSym);
+        }
     }
 }
@@ -2,9 +2,22 @@ package ds.simplepds.automata.demand;
 
 import ds.simplepds.interfaces.Rule;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 public interface FlowFunctions<L,S> {
     Set<Rule<L,S>>  apply(L currentLocation);
-}
 
+    /**
+     * Generates the rules for several locations in one call. The demand-driven engines resolve the unresolved
+     * locations of their worklist in batches through this method, so implementations with a high fixed cost per
+     * call should override it.
+     * @return the rules for each of the given locations. Locations without an entry have no rules
+     */
+    default Map<L, Set<Rule<L,S>>> applyAll(Set<L> currentLocations) {
+        Map<L, Set<Rule<L,S>>> rules = new HashMap<>();
+        currentLocations.forEach(location -> rules.put(location, apply(location)));
+        return rules;
+    }
+}
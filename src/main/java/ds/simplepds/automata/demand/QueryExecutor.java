@@ -0,0 +1,137 @@
+package ds.simplepds.automata.demand;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import ds.simplepds.automata.PAutomaton;
+import ds.simplepds.interfaces.Rule;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Runs many independent demand-driven queries against the same system concurrently. Each query gets its own
+ * saturation engine, while all of them share one thread-safe {@link CachingFlowFunctions} so rules for a location
+ * are only generated once.
+ *
+ * By default queries run on virtual threads when the runtime supports them, and on a thread pool with one thread
+ * per available core otherwise.
+ * @param <L>
+ * @param <S>
+ */
+public class QueryExecutor<L,S> implements AutoCloseable {
+
+    private final Function<PAutomaton<L,S>, PAutomaton<L,S>> query;
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+
+    /**
+     * @param query runs a single query to completion and returns its saturated automaton
+     * @param executor the executor queries are submitted to. It is not shut down by {@link #close()}
+     */
+    public QueryExecutor(Function<PAutomaton<L,S>, PAutomaton<L,S>> query, Executor executor) {
+        this.query = query;
+        this.executor = executor;
+        this.ownedExecutor = null;
+    }
+
+    /**
+     * Creates an executor that runs queries on the default executor, which is shut down by {@link #close()}
+     * @param query runs a single query to completion and returns its saturated automaton
+     */
+    public QueryExecutor(Function<PAutomaton<L,S>, PAutomaton<L,S>> query) {
+        this.query = query;
+        this.ownedExecutor = createDefaultExecutor();
+        this.executor = ownedExecutor;
+    }
+
+    public static <L,S> QueryExecutor<L,S> forPoststar(
+            ForwardFlowFunctions<L,S> flowFunctions,
+            Function<Rule<L,S>, L> generatedStateIdentifierFunction
+    ) {
+        return new QueryExecutor<>(poststarQuery(flowFunctions, generatedStateIdentifierFunction));
+    }
+
+    public static <L,S> QueryExecutor<L,S> forPoststar(
+            ForwardFlowFunctions<L,S> flowFunctions,
+            Function<Rule<L,S>, L> generatedStateIdentifierFunction,
+            Executor executor
+    ) {
+        return new QueryExecutor<>(poststarQuery(flowFunctions, generatedStateIdentifierFunction), executor);
+    }
+
+    public static <L,S> QueryExecutor<L,S> forPrestar(BackwardFlowFunctions<L,S> flowFunctions) {
+        return new QueryExecutor<>(prestarQuery(flowFunctions));
+    }
+
+    public static <L,S> QueryExecutor<L,S> forPrestar(BackwardFlowFunctions<L,S> flowFunctions, Executor executor) {
+        return new QueryExecutor<>(prestarQuery(flowFunctions), executor);
+    }
+
+    /**
+     * Schedules a single query
+     * @param initialAutomaton the initial automaton of the query
+     * @return a future that completes with the saturated automaton of the query
+     */
+    public CompletableFuture<PAutomaton<L,S>> submit(PAutomaton<L,S> initialAutomaton) {
+        return CompletableFuture.supplyAsync(() -> query.apply(initialAutomaton), executor);
+    }
+
+    /**
+     * Schedules a batch of queries
+     * @param initialAutomata the initial automata of the queries
+     * @return one future per query, in the iteration order of the batch
+     */
+    public List<CompletableFuture<PAutomaton<L,S>>> submitAll(Collection<PAutomaton<L,S>> initialAutomata) {
+        return initialAutomata.stream()
+                .map(this::submit)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void close() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    private static <L,S> Function<PAutomaton<L,S>, PAutomaton<L,S>> poststarQuery(
+            ForwardFlowFunctions<L,S> flowFunctions,
+            Function<Rule<L,S>, L> generatedStateIdentifierFunction
+    ) {
+        CachingFlowFunctions<L,S> cache = new CachingFlowFunctions<>(flowFunctions);
+        return initialAutomaton -> {
+            DemandPostStar<L,S> poststar =
+                    new DemandPostStar<>(cache, initialAutomaton, generatedStateIdentifierFunction);
+            poststar.apply();
+            return poststar.getSaturatedAut();
+        };
+    }
+
+    private static <L,S> Function<PAutomaton<L,S>, PAutomaton<L,S>> prestarQuery(
+            BackwardFlowFunctions<L,S> flowFunctions
+    ) {
+        CachingFlowFunctions<L,S> cache = new CachingFlowFunctions<>(flowFunctions);
+        return initialAutomaton -> {
+            DemandPreStar<L,S> prestar = new DemandPreStar<>(cache, initialAutomaton);
+            prestar.apply();
+            return prestar.getSaturatedAut();
+        };
+    }
+
+    private static ExecutorService createDefaultExecutor() {
+        // Virtual threads are only available from Java 21 onwards, while this library targets Java 17
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(
+                    Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("simplepds-query-%d").build()
+            );
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package ds.simplepds.automata.demand;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+import ds.simplepds.automata.PAutomaton;
+import ds.simplepds.interfaces.Rule;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Looks up the rules for the start location of saturated transitions on behalf of the demand-driven engines.
+ * Transitions whose rules are not known yet are parked until the flow functions deliver them, so that slow
+ * (asynchronous) flow functions do not block the processing of other worklist items. Rules are only requested once
+ * per location, and unresolved locations are collected into batches that are requested together once the engine
+ * runs out of other work (or the batch reaches its maximum size). Asynchronous flow functions are also sent the
+ * collected batch whenever no request is in flight, so that they compute rules while the engine processes other
+ * items.
+ * @param <L>
+ * @param <S>
+ */
+class RuleResolver<L,S> {
+
+    private final Function<Set<L>, CompletableFuture<Map<L, Set<Rule<L,S>>>>> ruleRequest;
+    private final BiConsumer<PAutomaton.Transition<L,S>, Set<Rule<L,S>>> handler;
+    private final boolean async;
+    private final Map<L, Set<Rule<L,S>>> resolved = new HashMap<>();
+    private final Multimap<L, PAutomaton.Transition<L,S>> parked = ArrayListMultimap.create();
+    private final BlockingQueue<Arrival<L,S>> arrivals = new LinkedBlockingQueue<>();
+    private final Set<L> batch = new LinkedHashSet<>();
+    private int maxBatchSize = Integer.MAX_VALUE;
+    private int inFlight = 0;
+
+    /**
+     * @param flowFunctions the flow functions used to generate rules. If these are {@link AsyncFlowFunctions}, rules
+     *                      are requested asynchronously
+     * @param handler processes a transition with the rules of its start location
+     */
+    RuleResolver(
+            FlowFunctions<L,S> flowFunctions,
+            BiConsumer<PAutomaton.Transition<L,S>, Set<Rule<L,S>>> handler
+    ) {
+        if (flowFunctions instanceof AsyncFlowFunctions<L,S> asyncFlowFunctions) {
+            this.ruleRequest = asyncFlowFunctions::applyAllAsync;
+            this.async = true;
+        } else {
+            this.async = false;
+            this.ruleRequest = locations -> CompletableFuture.completedFuture(flowFunctions.applyAll(locations));
+        }
+        this.handler = handler;
+    }
+
+    /**
+     * Processes the given transition right away if the rules for its start location are known, otherwise parks it
+     * until they are available
+     */
+    void resolve(PAutomaton.Transition<L,S> current) {
+        L location = current.getStartState().unwrap();
+        Set<Rule<L,S>> rules = resolved.get(location);
+        if (rules != null) {
+            handler.accept(current, rules);
+            return;
+        }
+        if (!parked.containsKey(location)) {
+            batch.add(location);
+        }
+        parked.put(location, current);
+        if (batch.size() >= maxBatchSize) {
+            requestBatch();
+        }
+        processArrivals(0);
+    }
+
+    void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @return true if rules have been requested that have not been processed yet
+     */
+    boolean hasPending() {
+        return inFlight > 0 || !batch.isEmpty();
+    }
+
+    /**
+     * Hands the rules that have arrived so far to the transitions waiting for them
+     * @param timeoutNanos how long to wait for at least one batch of rules to arrive. If positive, any partially
+     *                     collected batch is requested first
+     */
+    void processArrivals(long timeoutNanos) {
+        if (timeoutNanos > 0 && !batch.isEmpty()) {
+            requestBatch();
+        }
+        Arrival<L,S> arrival = timeoutNanos > 0 ? poll(timeoutNanos) : arrivals.poll();
+        while (arrival != null) {
+            inFlight--;
+            if (arrival.error != null) {
+                throw new CompletionException(arrival.error);
+            }
+            for (L location : arrival.locations) {
+                Set<Rule<L,S>> rules = arrival.rules.getOrDefault(location, Collections.emptySet());
+                resolved.put(location, rules);
+                for (PAutomaton.Transition<L,S> transition : parked.removeAll(location)) {
+                    handler.accept(transition, rules);
+                }
+            }
+            arrival = arrivals.poll();
+        }
+        if (async && inFlight == 0 && !batch.isEmpty()) {
+            requestBatch();
+        }
+    }
+
+    private void requestBatch() {
+        Set<L> locations = new HashSet<>(batch);
+        batch.clear();
+        inFlight++;
+        ruleRequest.apply(locations).whenComplete((result, error) ->
+                arrivals.add(new Arrival<>(locations, result, error))
+        );
+    }
+
+    private Arrival<L,S> poll(long timeoutNanos) {
+        try {
+            return arrivals.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for flow functions");
+        }
+    }
+
+    private static class Arrival<L,S> {
+
+        private final Set<L> locations;
+        private final Map<L, Set<Rule<L,S>>> rules;
+        private final Throwable error;
+
+        private Arrival(Set<L> locations, Map<L, Set<Rule<L,S>>> rules, Throwable error) {
+            this.locations = locations;
+            this.rules = rules;
+            this.error = error;
+        }
+    }
+}
@@ -6,4 +6,11 @@ public interface Wildcard<S> extends StackSymbol<S> {
 
     @Override
     public boolean equals(Object o);
+
+    /**
+     * @return true if the symbols are equal or either of them is a wildcard
+     */
+    static <S> boolean matches(StackSymbol<S> a, StackSymbol<S> b) {
+        return a.equals(b) || b.equals(a);
+    }
 }
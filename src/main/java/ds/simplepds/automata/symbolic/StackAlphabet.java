@@ -0,0 +1,67 @@
+package ds.simplepds.automata.symbolic;
+
+import ds.simplepds.interfaces.StackSymbol;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Numbers the stack symbols of a pushdown system, so that sets of symbols can be represented as {@link SymbolSet}s.
+ * Symbols that belong together (e.g. the data-flow facts of one variable) should be added consecutively, so that
+ * the sets referring to them form few intervals.
+ * @param <S>
+ */
+public class StackAlphabet<S> {
+
+    private final Map<StackSymbol<S>, Integer> indices = new HashMap<>();
+    private final List<StackSymbol<S>> symbols = new ArrayList<>();
+
+    /**
+     * @return the index of the symbol. The symbol is added to the alphabet if it is not part of it yet
+     */
+    public int add(StackSymbol<S> symbol) {
+        Integer index = indices.get(symbol);
+        if (index == null) {
+            index = symbols.size();
+            indices.put(symbol, index);
+            symbols.add(symbol);
+        }
+        return index;
+    }
+
+    /**
+     * @return the index of the symbol, or -1 if it is not part of the alphabet
+     */
+    public int indexOf(StackSymbol<S> symbol) {
+        return indices.getOrDefault(symbol, -1);
+    }
+
+    public StackSymbol<S> symbolAt(int index) {
+        return symbols.get(index);
+    }
+
+    /**
+     * @return the set of the given symbols, adding them to the alphabet if necessary
+     */
+    @SafeVarargs
+    public final SymbolSet setOf(StackSymbol<S>... symbols) {
+        int[] indices = new int[symbols.length];
+        for (int i = 0; i < symbols.length; i++) {
+            indices[i] = add(symbols[i]);
+        }
+        return SymbolSet.of(indices);
+    }
+
+    /**
+     * @return the set of all symbols currently in the alphabet
+     */
+    public SymbolSet all() {
+        return SymbolSet.range(0, symbols.size());
+    }
+
+    public int size() {
+        return symbols.size();
+    }
+}
@@ -0,0 +1,161 @@
+package ds.simplepds.automata.symbolic;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable set of stack symbol indices (see {@link StackAlphabet}), stored as a sorted list of disjoint,
+ * non-adjacent intervals. Sets that cover large ranges of the alphabet, such as the symbols an identity rule applies
+ * to, take space proportional to the number of intervals rather than the number of symbols.
+ */
+public final class SymbolSet {
+
+    public static final SymbolSet EMPTY = new SymbolSet(new int[0]);
+
+    private static final int UNION = 0;
+    private static final int INTERSECTION = 1;
+    private static final int DIFFERENCE = 2;
+
+    // Alternating inclusive lower and exclusive upper bounds
+    private final int[] bounds;
+
+    private SymbolSet(int[] bounds) {
+        this.bounds = bounds;
+    }
+
+    /**
+     * @return the set of indices from (inclusive) to (exclusive)
+     */
+    public static SymbolSet range(int from, int to) {
+        if (from >= to) {
+            return EMPTY;
+        }
+        return new SymbolSet(new int[]{from, to});
+    }
+
+    public static SymbolSet of(int... indices) {
+        int[] sorted = indices.clone();
+        Arrays.sort(sorted);
+        int[] bounds = new int[sorted.length * 2];
+        int size = 0;
+        for (int index : sorted) {
+            if (size > 0 && bounds[size - 1] >= index) {
+                // Duplicate or adjacent to the current interval
+                bounds[size - 1] = Math.max(bounds[size - 1], index + 1);
+            } else {
+                bounds[size++] = index;
+                bounds[size++] = index + 1;
+            }
+        }
+        return new SymbolSet(Arrays.copyOf(bounds, size));
+    }
+
+    public SymbolSet union(SymbolSet other) {
+        return merge(this, other, UNION);
+    }
+
+    public SymbolSet intersect(SymbolSet other) {
+        return merge(this, other, INTERSECTION);
+    }
+
+    public SymbolSet minus(SymbolSet other) {
+        return merge(this, other, DIFFERENCE);
+    }
+
+    public boolean contains(int index) {
+        // Even insertion points lie outside of all intervals, odd ones inside
+        int position = Arrays.binarySearch(bounds, index);
+        return position >= 0 ? position % 2 == 0 : (-position - 1) % 2 == 1;
+    }
+
+    public boolean isEmpty() {
+        return bounds.length == 0;
+    }
+
+    /**
+     * @return the number of indices in the set
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < bounds.length; i += 2) {
+            size += bounds[i + 1] - bounds[i];
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of intervals the set is stored as
+     */
+    public int intervalCount() {
+        return bounds.length / 2;
+    }
+
+    public IntStream stream() {
+        return IntStream.range(0, intervalCount())
+                .flatMap(interval -> IntStream.range(bounds[2 * interval], bounds[2 * interval + 1]));
+    }
+
+    private static SymbolSet merge(SymbolSet a, SymbolSet b, int operation) {
+        int[] merged = new int[a.bounds.length + b.bounds.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        boolean inA = false;
+        boolean inB = false;
+        boolean in = false;
+        // Sweep over the bounds of both sets, emitting a bound whenever membership in the result changes
+        while (i < a.bounds.length || j < b.bounds.length) {
+            int point = j >= b.bounds.length || (i < a.bounds.length && a.bounds[i] <= b.bounds[j])
+                    ? a.bounds[i]
+                    : b.bounds[j];
+            if (i < a.bounds.length && a.bounds[i] == point) {
+                inA = !inA;
+                i++;
+            }
+            if (j < b.bounds.length && b.bounds[j] == point) {
+                inB = !inB;
+                j++;
+            }
+            boolean now;
+            if (operation == UNION) {
+                now = inA || inB;
+            } else if (operation == INTERSECTION) {
+                now = inA && inB;
+            } else {
+                now = inA && !inB;
+            }
+            if (now != in) {
+                merged[size++] = point;
+                in = now;
+            }
+        }
+        return size == 0 ? EMPTY : new SymbolSet(Arrays.copyOf(merged, size));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return Arrays.equals(bounds, ((SymbolSet) o).bounds);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bounds);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < bounds.length; i += 2) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(bounds[i]);
+            if (bounds[i + 1] - bounds[i] > 1) {
+                builder.append("..").append(bounds[i + 1] - 1);
+            }
+        }
+        return builder.append("}").toString();
+    }
+}
@@ -0,0 +1,144 @@
+package ds.simplepds.automata.symbolic;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+import ds.simplepds.automata.PAutomaton;
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.StackSymbol;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A P-automaton that stores one set of stack symbols per pair of states instead of one transition per symbol
+ * @param <L>
+ * @param <S>
+ */
+public class SymbolicPAutomaton<L,S> {
+
+    private final StackAlphabet<S> alphabet;
+    private final Set<ControlLocation<L>> initialStates = new HashSet<>();
+    private final Set<ControlLocation<L>> finalStates = new HashSet<>();
+    private final Set<ControlLocation<L>> states = new HashSet<>();
+    private final Table<ControlLocation<L>, ControlLocation<L>, SymbolSet> transitions = HashBasedTable.create();
+
+    public SymbolicPAutomaton(StackAlphabet<S> alphabet) {
+        this.alphabet = alphabet;
+    }
+
+    public void addInitialState(ControlLocation<L> initialState) {
+        initialStates.add(initialState);
+        states.add(initialState);
+    }
+
+    public void addFinalState(ControlLocation<L> finalState) {
+        finalStates.add(finalState);
+        states.add(finalState);
+    }
+
+    public void addState(ControlLocation<L> state) {
+        states.add(state);
+    }
+
+    /**
+     * Adds transitions from start to end for each of the given symbols
+     * @return the symbols that were not yet on a transition from start to end
+     */
+    public SymbolSet addTransitions(ControlLocation<L> start, ControlLocation<L> end, SymbolSet labels) {
+        SymbolSet existing = getLabels(start, end);
+        SymbolSet added = labels.minus(existing);
+        if (!added.isEmpty()) {
+            transitions.put(start, end, existing.union(added));
+            states.add(start);
+            states.add(end);
+        }
+        return added;
+    }
+
+    /**
+     * @return the symbols on the transitions from start to end
+     */
+    public SymbolSet getLabels(ControlLocation<L> start, ControlLocation<L> end) {
+        SymbolSet labels = transitions.get(start, end);
+        return labels == null ? SymbolSet.EMPTY : labels;
+    }
+
+    /**
+     * @return the labels of all transitions leaving the given state, by end state
+     */
+    public Map<ControlLocation<L>, SymbolSet> getTransitionsFrom(ControlLocation<L> start) {
+        return Collections.unmodifiableMap(transitions.row(start));
+    }
+
+    public boolean containsTransition(ControlLocation<L> start, ControlLocation<L> end, StackSymbol<S> label) {
+        int index = alphabet.indexOf(label);
+        return index >= 0 && getLabels(start, end).contains(index);
+    }
+
+    /**
+     * @return the number of pairs of states that are connected by at least one transition
+     */
+    public int getStatePairCount() {
+        return transitions.size();
+    }
+
+    /**
+     * @return the number of transitions the automaton represents
+     */
+    public long getTransitionCount() {
+        return transitions.values().stream().mapToLong(SymbolSet::size).sum();
+    }
+
+    public Set<ControlLocation<L>> getInitialStates() {
+        return initialStates;
+    }
+
+    public Set<ControlLocation<L>> getFinalStates() {
+        return finalStates;
+    }
+
+    public Set<ControlLocation<L>> getAllStates() {
+        return states;
+    }
+
+    public StackAlphabet<S> getAlphabet() {
+        return alphabet;
+    }
+
+    /**
+     * @return the explicit automaton with one transition per symbol
+     */
+    public PAutomaton<L,S> expand() {
+        PAutomaton<L,S> expanded = new PAutomaton<>();
+        states.forEach(expanded::addState);
+        initialStates.forEach(expanded::addInitialState);
+        finalStates.forEach(expanded::addFinalState);
+        for (Table.Cell<ControlLocation<L>, ControlLocation<L>, SymbolSet> cell : transitions.cellSet()) {
+            cell.getValue().stream().forEach(index ->
+                    expanded.addTransition(cell.getRowKey(), cell.getColumnKey(), alphabet.symbolAt(index))
+            );
+        }
+        return expanded;
+    }
+
+    public String toDotString() {
+        StringBuilder out = new StringBuilder();
+        out.append("digraph {\n");
+        for (Table.Cell<ControlLocation<L>, ControlLocation<L>, SymbolSet> cell : transitions.cellSet()) {
+            out.append("\t\"")
+                    .append(cell.getRowKey())
+                    .append("\"")
+                    .append(" -> ")
+                    .append("\"")
+                    .append(cell.getColumnKey())
+                    .append("\"")
+                    .append("[label=\"")
+                    .append(cell.getValue())
+                    .append("\"];\n");
+        }
+        out.append("}");
+        return out.toString();
+    }
+}
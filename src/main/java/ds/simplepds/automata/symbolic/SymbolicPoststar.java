@@ -0,0 +1,193 @@
+package ds.simplepds.automata.symbolic;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import ds.simplepds.automata.PAutomaton;
+import ds.simplepds.interfaces.ControlLocation;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.function.Function;
+
+/**
+ * Post-* over symbolic rules (see Esparza, et al. (CAV00) Alg. 3). Instead of one transition per stack symbol, the
+ * worklist holds sets of symbols that were newly added between a pair of states, so rules that apply to many symbols
+ * are processed once per set rather than once per symbol.
+ *
+ * Unlike the engines built on {@link ds.simplepds.automata.SaturationEngine}, whose worklist holds single transitions,
+ * this engine always runs to its fixpoint: it cannot be stepped, bounded by a timeout or cancelled, and takes no
+ * listeners.
+ * @param <L>
+ * @param <S>
+ */
+public class SymbolicPoststar<L,S> {
+
+    protected final SymbolicPAutomaton<L,S> saturatedAut;
+    protected final PAutomaton<L,S> initialAut;
+    protected final SymbolicPushdownSystem<L,S> pushdownSystem;
+    protected final Function<SymbolicRule<L>, L> generatedStateIdentifierFunction;
+    private final Multimap<ControlLocation<L>, SymbolicRule<L>> rulesByStartLocation = HashMultimap.create();
+
+    public SymbolicPoststar(
+            SymbolicPushdownSystem<L,S> pushdownSystem,
+            PAutomaton<L,S> initialAutomaton,
+            Function<SymbolicRule<L>, L> generatedStateIdentifierFunction
+    ) {
+        this.pushdownSystem = pushdownSystem;
+        this.initialAut = initialAutomaton;
+        this.generatedStateIdentifierFunction = generatedStateIdentifierFunction;
+        this.saturatedAut = new SymbolicPAutomaton<>(pushdownSystem.getAlphabet());
+        pushdownSystem.getRules().forEach(rule -> rulesByStartLocation.put(rule.getStartLocation(), rule));
+    }
+
+    public void apply() {
+        StackAlphabet<S> alphabet = pushdownSystem.getAlphabet();
+        Queue<Item<L>> worklist = new LinkedList<>();
+
+        // The labels of the initial automaton are grouped by pair of states, so that each pair is processed once
+        Map<Map.Entry<ControlLocation<L>, ControlLocation<L>>, SymbolSet> initialLabels = new LinkedHashMap<>();
+        for (PAutomaton.Transition<L,S> transition : initialAut.getTransitionRelation()) {
+            initialLabels.merge(
+                    Maps.immutableEntry(transition.getStartState(), transition.getEndState()),
+                    SymbolSet.of(alphabet.add(transition.getLabel())),
+                    SymbolSet::union
+            );
+        }
+        // Transitions from the initial automaton that start at an initial state go to the worklist, all others
+        // are added directly to the saturated automaton
+        for (Map.Entry<Map.Entry<ControlLocation<L>, ControlLocation<L>>, SymbolSet> pair : initialLabels.entrySet()) {
+            ControlLocation<L> start = pair.getKey().getKey();
+            ControlLocation<L> end = pair.getKey().getValue();
+            if (initialAut.getInitialStates().contains(start)) {
+                worklist.add(new Item<>(start, end, pair.getValue()));
+            } else {
+                saturatedAut.addTransitions(start, end, pair.getValue());
+            }
+        }
+
+        // Initialize the states of the saturated automaton
+        initialAut.getAllStates().forEach(saturatedAut::addState);
+        initialAut.getFinalStates().forEach(saturatedAut::addFinalState);
+        initialAut.getInitialStates().forEach(saturatedAut::addInitialState);
+
+        // Initial processing of push rules. For each push rule we create a new
+        // state and add a transition from the push rule's end location
+        for (SymbolicRule<L> rule : pushdownSystem.getRules()) {
+            if (rule.getWordSize() == 2) {
+                GeneratedState generated = new GeneratedState(rule);
+                saturatedAut.addState(generated);
+                worklist.add(new Item<>(rule.getEndLocation(), generated, rule.getTop(SymbolSet.EMPTY)));
+            }
+        }
+
+        // Keeps track of incoming epsilon transitions for each state
+        Multimap<ControlLocation<L>, ControlLocation<L>> incomingEpsilons = HashMultimap.create();
+
+        // Process the worklist
+        while (!worklist.isEmpty()) {
+            Item<L> current = worklist.remove();
+            SymbolSet added = saturatedAut.addTransitions(current.start, current.end, current.labels);
+            if (added.isEmpty()) {
+                continue;
+            }
+            for (SymbolicRule<L> rule : rulesByStartLocation.get(current.start)) {
+                SymbolSet matched = added.intersect(rule.getStartSymbols());
+                if (matched.isEmpty()) {
+                    continue;
+                }
+
+                // Handle PDS pop rules
+                if (rule.getWordSize() == 0 && incomingEpsilons.put(current.end, rule.getEndLocation())) {
+                    for (Map.Entry<ControlLocation<L>, SymbolSet> transition :
+                            saturatedAut.getTransitionsFrom(current.end).entrySet()) {
+                        worklist.add(new Item<>(rule.getEndLocation(), transition.getKey(), transition.getValue()));
+                    }
+                    if (saturatedAut.getFinalStates().contains(current.end)) {
+                        saturatedAut.addFinalState(rule.getEndLocation());
+                    }
+                }
+
+                // Handle PDS normal rules
+                if (rule.getWordSize() == 1) {
+                    worklist.add(new Item<>(rule.getEndLocation(), current.end, rule.getTop(matched)));
+                }
+
+                // Handle PDS push rules
+                if (rule.getWordSize() == 2) {
+                    GeneratedState generated = new GeneratedState(rule);
+                    SymbolSet below = saturatedAut.addTransitions(generated, current.end, rule.getBelow(matched));
+                    if (!below.isEmpty()) {
+                        for (ControlLocation<L> state : incomingEpsilons.get(generated)) {
+                            worklist.add(new Item<>(state, current.end, below));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public SymbolicPAutomaton<L,S> getSaturatedAut() {
+        return saturatedAut;
+    }
+
+    public PAutomaton<L,S> getInitialAut() {
+        return initialAut;
+    }
+
+    public GeneratedState createGeneratedStateFromRule(SymbolicRule<L> rule) {
+        return new GeneratedState(rule);
+    }
+
+    private static class Item<L> {
+
+        private final ControlLocation<L> start;
+        private final ControlLocation<L> end;
+        private final SymbolSet labels;
+
+        private Item(ControlLocation<L> start, ControlLocation<L> end, SymbolSet labels) {
+            this.start = start;
+            this.end = end;
+            this.labels = labels;
+        }
+    }
+
+    public class GeneratedState implements ControlLocation<L> {
+
+        private final SymbolicRule<L> generatingRule;
+
+        protected GeneratedState(SymbolicRule<L> generatingRule) {
+            this.generatingRule = generatingRule;
+        }
+
+        @Override
+        public L unwrap() {
+            return generatedStateIdentifierFunction.apply(generatingRule);
+        }
+
+        public SymbolicRule<L> getGeneratingRule() {
+            return generatingRule;
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(unwrap());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            SymbolicPoststar<?,?>.GeneratedState that = (SymbolicPoststar<?,?>.GeneratedState) o;
+            return Objects.equals(generatingRule, that.generatingRule);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(generatingRule);
+        }
+    }
+}
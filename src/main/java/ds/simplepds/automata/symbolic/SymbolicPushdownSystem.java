@@ -0,0 +1,15 @@
+package ds.simplepds.automata.symbolic;
+
+import java.util.Set;
+
+/**
+ * A pushdown system whose rules apply to sets of stack symbols
+ * @param <L>
+ * @param <S>
+ */
+public interface SymbolicPushdownSystem<L,S> {
+
+    Set<SymbolicRule<L>> getRules();
+
+    StackAlphabet<S> getAlphabet();
+}
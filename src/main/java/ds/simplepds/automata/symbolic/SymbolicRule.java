@@ -0,0 +1,142 @@
+package ds.simplepds.automata.symbolic;
+
+import ds.simplepds.interfaces.ControlLocation;
+
+import java.util.Objects;
+
+/**
+ * A pushdown rule that applies to a set of stack symbols at once. Each symbol of the end configuration is either a
+ * set of symbols (the rule may write any of them) or the symbol the rule was applied to, which allows e.g. identity
+ * transfer rules to be expressed as a single rule for the whole alphabet.
+ * @param <L>
+ */
+public class SymbolicRule<L> {
+
+    private final ControlLocation<L> startLocation;
+    private final SymbolSet startSymbols;
+    private final ControlLocation<L> endLocation;
+    private final int wordSize;
+    // The new top of the stack, or null if it is the symbol the rule was applied to
+    private final SymbolSet top;
+    // The symbol below the new top for push rules, or null if it is the symbol the rule was applied to
+    private final SymbolSet below;
+
+    private SymbolicRule(
+            ControlLocation<L> startLocation,
+            SymbolSet startSymbols,
+            ControlLocation<L> endLocation,
+            int wordSize,
+            SymbolSet top,
+            SymbolSet below
+    ) {
+        this.startLocation = startLocation;
+        this.startSymbols = startSymbols;
+        this.endLocation = endLocation;
+        this.wordSize = wordSize;
+        this.top = top;
+        this.below = below;
+    }
+
+    /**
+     * &lt;p, a&gt; -&gt; &lt;p', &epsilon;&gt; for each a in the start symbols
+     */
+    public static <L> SymbolicRule<L> pop(ControlLocation<L> p, SymbolSet startSymbols, ControlLocation<L> pPrime) {
+        return new SymbolicRule<>(p, startSymbols, pPrime, 0, null, null);
+    }
+
+    /**
+     * &lt;p, a&gt; -&gt; &lt;p', b&gt; for each a in the start symbols and each b in the end symbols
+     */
+    public static <L> SymbolicRule<L> normal(
+            ControlLocation<L> p,
+            SymbolSet startSymbols,
+            ControlLocation<L> pPrime,
+            SymbolSet endSymbols
+    ) {
+        return new SymbolicRule<>(p, startSymbols, pPrime, 1, endSymbols, null);
+    }
+
+    /**
+     * &lt;p, a&gt; -&gt; &lt;p', a&gt; for each a in the start symbols
+     */
+    public static <L> SymbolicRule<L> identity(
+            ControlLocation<L> p,
+            SymbolSet startSymbols,
+            ControlLocation<L> pPrime
+    ) {
+        return new SymbolicRule<>(p, startSymbols, pPrime, 1, null, null);
+    }
+
+    /**
+     * &lt;p, a&gt; -&gt; &lt;p', b c&gt; for each a in the start symbols, each b in the top symbols and each c in the
+     * below symbols
+     */
+    public static <L> SymbolicRule<L> push(
+            ControlLocation<L> p,
+            SymbolSet startSymbols,
+            ControlLocation<L> pPrime,
+            SymbolSet topSymbols,
+            SymbolSet belowSymbols
+    ) {
+        return new SymbolicRule<>(p, startSymbols, pPrime, 2, topSymbols, belowSymbols);
+    }
+
+    /**
+     * &lt;p, a&gt; -&gt; &lt;p', b a&gt; for each a in the start symbols and each b in the top symbols
+     */
+    public static <L> SymbolicRule<L> pushKeepingSymbol(
+            ControlLocation<L> p,
+            SymbolSet startSymbols,
+            ControlLocation<L> pPrime,
+            SymbolSet topSymbols
+    ) {
+        return new SymbolicRule<>(p, startSymbols, pPrime, 2, topSymbols, null);
+    }
+
+    public ControlLocation<L> getStartLocation() {
+        return startLocation;
+    }
+
+    public SymbolSet getStartSymbols() {
+        return startSymbols;
+    }
+
+    public ControlLocation<L> getEndLocation() {
+        return endLocation;
+    }
+
+    public int getWordSize() {
+        return wordSize;
+    }
+
+    /**
+     * @param matched start symbols the rule is applied to
+     * @return the symbols the rule writes as the new top of the stack
+     */
+    public SymbolSet getTop(SymbolSet matched) {
+        return top == null ? matched : top;
+    }
+
+    /**
+     * @param matched start symbols the rule is applied to
+     * @return the symbols a push rule writes below the new top of the stack
+     */
+    public SymbolSet getBelow(SymbolSet matched) {
+        return below == null ? matched : below;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SymbolicRule<?> that = (SymbolicRule<?>) o;
+        return wordSize == that.wordSize && Objects.equals(startLocation, that.startLocation) &&
+                Objects.equals(startSymbols, that.startSymbols) && Objects.equals(endLocation, that.endLocation) &&
+                Objects.equals(top, that.top) && Objects.equals(below, that.below);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(startLocation, startSymbols, endLocation, wordSize, top, below);
+    }
+}
@@ -0,0 +1,221 @@
+package ds.simplepds.automata.transform;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multiset;
+import ds.simplepds.automata.PAutomaton;
+import ds.simplepds.automata.demand.Wildcard;
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.PushdownSystem;
+import ds.simplepds.interfaces.Rule;
+import ds.simplepds.interfaces.StackSymbol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A pushdown system in which chains of normal rules are collapsed into single normal rules. A head, i.e. a control
+ * location with a symbol on top of the stack, is skipped if exactly one rule leads to it and exactly one rule leaves
+ * it, both normal rules. Saturating the compressed system gives the transitions of the original system at all heads
+ * that were not skipped, and {@link #expandPoststar} and {@link #expandPrestar} add the transitions of the skipped
+ * heads on demand.
+ * @param <L>
+ * @param <S>
+ */
+public class CompressedPushdownSystem<L,S> implements PushdownSystem<L,S> {
+
+    private final Set<Rule<L,S>> rules;
+    // The skipped heads of each compound rule, in the order in which the original rules visit them
+    private final Map<Rule<L,S>, List<Map.Entry<ControlLocation<L>, StackSymbol<S>>>> chains;
+
+    private CompressedPushdownSystem(
+            Set<Rule<L,S>> rules,
+            Map<Rule<L,S>, List<Map.Entry<ControlLocation<L>, StackSymbol<S>>>> chains
+    ) {
+        this.rules = Collections.unmodifiableSet(rules);
+        this.chains = chains;
+    }
+
+    /**
+     * Compresses the chains of normal rules of a pushdown system
+     * @param queryAutomaton the initial automaton of the query (for post-*) or its target (for pre*). Heads of its
+     *                       transitions, and heads at the states its transitions lead to, are never skipped
+     */
+    public static <L,S> CompressedPushdownSystem<L,S> compress(
+            PushdownSystem<L,S> pushdownSystem,
+            PAutomaton<L,S> queryAutomaton
+    ) {
+        Multiset<Map.Entry<ControlLocation<L>, StackSymbol<S>>> incoming = HashMultiset.create();
+        Multimap<Map.Entry<ControlLocation<L>, StackSymbol<S>>, Rule<L,S>> outgoing = HashMultimap.create();
+        // Locations at which a rule can lead to or leave from any head
+        Set<ControlLocation<L>> unrestricted = new HashSet<>();
+        for (Rule<L,S> rule : pushdownSystem.getRules()) {
+            ControlLocation<L> start = rule.getStartConfiguration().getControlLocation();
+            StackSymbol<S> startSymbol = rule.getStartConfiguration().getStackSymbol();
+            ControlLocation<L> end = rule.getEndConfiguration().getControlLocation();
+            List<StackSymbol<S>> word = rule.getEndConfiguration().getWord();
+            if (startSymbol instanceof Wildcard<S>) {
+                unrestricted.add(start);
+            } else {
+                outgoing.put(Maps.immutableEntry(start, startSymbol), rule);
+            }
+            StackSymbol<S> top = word.isEmpty() ? null : word.get(word.size() - 1);
+            if (top == null || top instanceof Wildcard<S>) {
+                unrestricted.add(end);
+            } else {
+                // A push counts twice so that its new top is never skipped
+                incoming.add(Maps.immutableEntry(end, top), word.size());
+            }
+        }
+        Set<Map.Entry<ControlLocation<L>, StackSymbol<S>>> queryHeads = new HashSet<>();
+        for (PAutomaton.Transition<L,S> transition : queryAutomaton.getTransitionRelation()) {
+            queryHeads.add(Maps.immutableEntry(transition.getStartState(), transition.getLabel()));
+            // Saturation reads the transitions of a state that the query leads to when the state is also a control
+            // location, through an epsilon transition in post-* or the second step of a push in pre*
+            unrestricted.add(transition.getEndState());
+        }
+
+        Set<Map.Entry<ControlLocation<L>, StackSymbol<S>>> skippable = new HashSet<>();
+        for (Map.Entry<ControlLocation<L>, StackSymbol<S>> head : outgoing.keySet()) {
+            if (incoming.count(head) == 1
+                    && outgoing.get(head).size() == 1
+                    && isNormal(outgoing.get(head).iterator().next())
+                    && !unrestricted.contains(head.getKey())
+                    && !queryHeads.contains(head)) {
+                skippable.add(head);
+            }
+        }
+
+        Set<Rule<L,S>> rules = new LinkedHashSet<>(pushdownSystem.getRules());
+        Map<Rule<L,S>, List<Map.Entry<ControlLocation<L>, StackSymbol<S>>>> chains = new HashMap<>();
+        for (Rule<L,S> entry : pushdownSystem.getRules()) {
+            Map.Entry<ControlLocation<L>, StackSymbol<S>> entryHead = startHead(entry);
+            if (!isNormal(entry) || skippable.contains(entryHead) || !skippable.contains(endHead(entry))) {
+                continue;
+            }
+            // Follow the chain from a head that is not skipped until it leaves the skipped heads. A chain that is
+            // only entered from within itself is a cycle that cannot be reached and is left alone
+            List<Map.Entry<ControlLocation<L>, StackSymbol<S>>> skipped = new ArrayList<>();
+            rules.remove(entry);
+            Rule<L,S> last = entry;
+            while (skippable.contains(endHead(last))) {
+                skipped.add(endHead(last));
+                last = outgoing.get(endHead(last)).iterator().next();
+                rules.remove(last);
+            }
+            Rule<L,S> compound = new DerivedRule<>(
+                    entryHead.getKey(),
+                    entryHead.getValue(),
+                    last.getEndConfiguration().getControlLocation(),
+                    last.getEndConfiguration().getWord()
+            );
+            rules.add(compound);
+            chains.put(compound, skipped);
+        }
+        return new CompressedPushdownSystem<>(rules, chains);
+    }
+
+    @Override
+    public Set<Rule<L,S>> getRules() {
+        return rules;
+    }
+
+    /**
+     * @return the number of heads that saturation of this system skips
+     */
+    public int getSkippedHeadCount() {
+        return chains.values().stream().mapToInt(List::size).sum();
+    }
+
+    /**
+     * Rebuilds the post-* automaton of the original system from the post-* automaton of this system
+     * @return a copy of the given automaton with the transitions of the skipped heads added
+     */
+    public PAutomaton<L,S> expandPoststar(PAutomaton<L,S> saturated) {
+        PAutomaton<L,S> expanded = copy(saturated);
+        Multimap<Map.Entry<ControlLocation<L>, StackSymbol<S>>, ControlLocation<L>> targets = targetsByHead(saturated);
+        // Each skipped head has the targets of the head before it in the chain
+        for (Map.Entry<Rule<L,S>, List<Map.Entry<ControlLocation<L>, StackSymbol<S>>>> chain : chains.entrySet()) {
+            Set<ControlLocation<L>> chainTargets = new HashSet<>(targets.get(startHead(chain.getKey())));
+            for (Map.Entry<ControlLocation<L>, StackSymbol<S>> head : chain.getValue()) {
+                addTransitions(expanded, head, chainTargets);
+            }
+        }
+        return expanded;
+    }
+
+    /**
+     * Rebuilds the pre* automaton of the original system from the pre* automaton of this system
+     * @return a copy of the given automaton with the transitions of the skipped heads added
+     */
+    public PAutomaton<L,S> expandPrestar(PAutomaton<L,S> saturated) {
+        PAutomaton<L,S> expanded = copy(saturated);
+        Multimap<Map.Entry<ControlLocation<L>, StackSymbol<S>>, ControlLocation<L>> targets = targetsByHead(saturated);
+        // Each skipped head has the targets of the head after it in the chain
+        for (Map.Entry<Rule<L,S>, List<Map.Entry<ControlLocation<L>, StackSymbol<S>>>> chain : chains.entrySet()) {
+            Set<ControlLocation<L>> chainTargets = new HashSet<>(targets.get(endHead(chain.getKey())));
+            for (Map.Entry<ControlLocation<L>, StackSymbol<S>> head : chain.getValue()) {
+                addTransitions(expanded, head, chainTargets);
+            }
+        }
+        return expanded;
+    }
+
+    private static <L,S> void addTransitions(
+            PAutomaton<L,S> automaton,
+            Map.Entry<ControlLocation<L>, StackSymbol<S>> head,
+            Set<ControlLocation<L>> targets
+    ) {
+        for (ControlLocation<L> target : targets) {
+            automaton.addTransition(head.getKey(), target, head.getValue());
+        }
+    }
+
+    private static <L,S> Multimap<Map.Entry<ControlLocation<L>, StackSymbol<S>>, ControlLocation<L>> targetsByHead(
+            PAutomaton<L,S> automaton
+    ) {
+        Multimap<Map.Entry<ControlLocation<L>, StackSymbol<S>>, ControlLocation<L>> targets = HashMultimap.create();
+        for (PAutomaton.Transition<L,S> transition : automaton.getTransitionRelation()) {
+            targets.put(Maps.immutableEntry(transition.getStartState(), transition.getLabel()), transition.getEndState());
+        }
+        return targets;
+    }
+
+    private static <L,S> PAutomaton<L,S> copy(PAutomaton<L,S> automaton) {
+        PAutomaton<L,S> copy = new PAutomaton<>();
+        automaton.getAllStates().forEach(copy::addState);
+        automaton.getInitialStates().forEach(copy::addInitialState);
+        automaton.getFinalStates().forEach(copy::addFinalState);
+        automaton.getTransitionRelation().forEach(copy::addTransition);
+        return copy;
+    }
+
+    private static <L,S> boolean isNormal(Rule<L,S> rule) {
+        return rule.getEndConfiguration().getWord().size() == 1
+                && !(rule.getStartConfiguration().getStackSymbol() instanceof Wildcard<S>)
+                && !(rule.getEndConfiguration().getWord().get(0) instanceof Wildcard<S>);
+    }
+
+    private static <L,S> Map.Entry<ControlLocation<L>, StackSymbol<S>> startHead(Rule<L,S> rule) {
+        return Maps.immutableEntry(
+                rule.getStartConfiguration().getControlLocation(),
+                rule.getStartConfiguration().getStackSymbol()
+        );
+    }
+
+    // Only defined for normal rules
+    private static <L,S> Map.Entry<ControlLocation<L>, StackSymbol<S>> endHead(Rule<L,S> rule) {
+        return Maps.immutableEntry(
+                rule.getEndConfiguration().getControlLocation(),
+                rule.getEndConfiguration().getWord().get(0)
+        );
+    }
+}
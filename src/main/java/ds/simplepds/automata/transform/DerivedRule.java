@@ -0,0 +1,85 @@
+package ds.simplepds.automata.transform;
+
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.EndConfiguration;
+import ds.simplepds.interfaces.Rule;
+import ds.simplepds.interfaces.StackSymbol;
+import ds.simplepds.interfaces.StartConfiguration;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A rule created by a transformation of a pushdown system. Rules are equal if their configurations are equal.
+ * @param <L>
+ * @param <S>
+ */
+class DerivedRule<L,S> implements Rule<L,S> {
+
+    private final ControlLocation<L> startLocation;
+    private final StackSymbol<S> startSymbol;
+    private final ControlLocation<L> endLocation;
+    private final List<StackSymbol<S>> word;
+
+    DerivedRule(
+            ControlLocation<L> startLocation,
+            StackSymbol<S> startSymbol,
+            ControlLocation<L> endLocation,
+            List<StackSymbol<S>> word
+    ) {
+        this.startLocation = startLocation;
+        this.startSymbol = startSymbol;
+        this.endLocation = endLocation;
+        this.word = Collections.unmodifiableList(word);
+    }
+
+    @Override
+    public StartConfiguration<L,S> getStartConfiguration() {
+        return new StartConfiguration<>() {
+            @Override
+            public StackSymbol<S> getStackSymbol() {
+                return startSymbol;
+            }
+
+            @Override
+            public ControlLocation<L> getControlLocation() {
+                return startLocation;
+            }
+        };
+    }
+
+    @Override
+    public EndConfiguration<L,S> getEndConfiguration() {
+        return new EndConfiguration<>() {
+            @Override
+            public List<StackSymbol<S>> getWord() {
+                return word;
+            }
+
+            @Override
+            public ControlLocation<L> getControlLocation() {
+                return endLocation;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DerivedRule<?, ?> that = (DerivedRule<?, ?>) o;
+        return Objects.equals(startLocation, that.startLocation) && Objects.equals(startSymbol, that.startSymbol) &&
+                Objects.equals(endLocation, that.endLocation) && Objects.equals(word, that.word);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(startLocation, startSymbol, endLocation, word);
+    }
+
+    @Override
+    public String toString() {
+        return "<" + startLocation + ", " + startSymbol + "> -> <" + endLocation + ", " + word + ">";
+    }
+}
@@ -0,0 +1,193 @@
+package ds.simplepds.automata.transform;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.SetMultimap;
+import ds.simplepds.automata.PAutomaton;
+import ds.simplepds.automata.demand.Wildcard;
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.PushdownSystem;
+import ds.simplepds.interfaces.Rule;
+import ds.simplepds.interfaces.StackSymbol;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes the rules of a pushdown system that cannot take part in a post-* or pre* query. Both slices are computed on
+ * heads, i.e. pairs of a control location and the stack symbol on top, and over-approximate the rules that can fire,
+ * so the automaton saturated for the sliced system accepts the same configurations as the one saturated for the whole
+ * system. Their transitions can differ: pre* adds a transition for every pop rule and post-* one to the generated state
+ * of every push rule it is given, whether or not the rule can fire.
+ */
+public class PushdownSystemSlicer {
+
+    private PushdownSystemSlicer() {
+    }
+
+    /**
+     * Keeps the rules that may fire in a configuration reachable from the configurations accepted by the given
+     * automaton (as in post-*). A pop is assumed to expose any symbol that may be below the top of the stack, i.e.
+     * any symbol of the initial automaton or any symbol pushed below a new top.
+     */
+    public static <L,S> PushdownSystem<L,S> forward(PushdownSystem<L,S> pushdownSystem, PAutomaton<L,S> initialAut) {
+        Multimap<ControlLocation<L>, Rule<L,S>> rulesByStart = HashMultimap.create();
+        for (Rule<L,S> rule : pushdownSystem.getRules()) {
+            rulesByStart.put(rule.getStartConfiguration().getControlLocation(), rule);
+        }
+        SetMultimap<ControlLocation<L>, StackSymbol<S>> heads = HashMultimap.create();
+        Deque<Map.Entry<ControlLocation<L>, StackSymbol<S>>> worklist = new ArrayDeque<>();
+        Set<StackSymbol<S>> belowSymbols = new HashSet<>();
+        Set<ControlLocation<L>> popTargets = new HashSet<>();
+        Set<Rule<L,S>> slice = new LinkedHashSet<>();
+
+        for (PAutomaton.Transition<L,S> transition : initialAut.getTransitionRelation()) {
+            belowSymbols.add(transition.getLabel());
+            if (initialAut.getInitialStates().contains(transition.getStartState())) {
+                addHead(transition.getStartState(), transition.getLabel(), heads, worklist);
+            }
+        }
+        while (!worklist.isEmpty()) {
+            Map.Entry<ControlLocation<L>, StackSymbol<S>> head = worklist.remove();
+            for (Rule<L,S> rule : rulesByStart.get(head.getKey())) {
+                if (!Wildcard.matches(rule.getStartConfiguration().getStackSymbol(), head.getValue())) {
+                    continue;
+                }
+                slice.add(rule);
+                ControlLocation<L> end = rule.getEndConfiguration().getControlLocation();
+                List<StackSymbol<S>> word = rule.getEndConfiguration().getWord();
+                if (word.isEmpty()) {
+                    if (popTargets.add(end)) {
+                        for (StackSymbol<S> below : belowSymbols) {
+                            addHead(end, below, heads, worklist);
+                        }
+                    }
+                    continue;
+                }
+                if (word.size() == 2) {
+                    StackSymbol<S> below = written(word.get(0), head.getValue());
+                    if (belowSymbols.add(below)) {
+                        for (ControlLocation<L> popTarget : popTargets) {
+                            addHead(popTarget, below, heads, worklist);
+                        }
+                    }
+                }
+                addHead(end, written(word.get(word.size() - 1), head.getValue()), heads, worklist);
+            }
+        }
+        Set<Rule<L,S>> rules = Collections.unmodifiableSet(slice);
+        return () -> rules;
+    }
+
+    /**
+     * Keeps the rules that may fire in a configuration from which a configuration accepted by the given automaton is
+     * reachable (as in pre*). A pop is kept if any head at its end location can reach the target, and any state of
+     * the automaton is assumed to be a possible start of an accepted configuration.
+     */
+    public static <L,S> PushdownSystem<L,S> backward(PushdownSystem<L,S> pushdownSystem, PAutomaton<L,S> targetAut) {
+        Multimap<ControlLocation<L>, Rule<L,S>> rulesByEnd = HashMultimap.create();
+        for (Rule<L,S> rule : pushdownSystem.getRules()) {
+            rulesByEnd.put(rule.getEndConfiguration().getControlLocation(), rule);
+        }
+        SetMultimap<ControlLocation<L>, StackSymbol<S>> heads = HashMultimap.create();
+        // Locations at which any top of stack, or the empty stack, can reach the target
+        Set<ControlLocation<L>> anyHead = new HashSet<>(targetAut.getFinalStates());
+        Deque<ControlLocation<L>> worklist = new ArrayDeque<>(anyHead);
+        Set<Rule<L,S>> slice = new LinkedHashSet<>();
+
+        for (PAutomaton.Transition<L,S> transition : targetAut.getTransitionRelation()) {
+            if (heads.put(transition.getStartState(), transition.getLabel())) {
+                worklist.add(transition.getStartState());
+            }
+        }
+        while (!worklist.isEmpty()) {
+            ControlLocation<L> end = worklist.remove();
+            for (Rule<L,S> rule : rulesByEnd.get(end)) {
+                StackSymbol<S> startSymbol = rule.getStartConfiguration().getStackSymbol();
+                boolean startIsWildcard = startSymbol instanceof Wildcard<S>;
+                List<StackSymbol<S>> word = rule.getEndConfiguration().getWord();
+                boolean keepsSymbol = startIsWildcard
+                        && !word.isEmpty()
+                        && word.get(word.size() - 1) instanceof Wildcard<S>;
+                // The heads a rule adds only depend on the heads at its end if it keeps the symbol it was applied to.
+                // Other rules add the same heads whenever they are kept, so they need not be looked at again
+                if (!keepsSymbol && slice.contains(rule)) {
+                    continue;
+                }
+                ControlLocation<L> start = rule.getStartConfiguration().getControlLocation();
+                List<StackSymbol<S>> newHeads = new ArrayList<>();
+                boolean newAnyHead = false;
+                if (word.isEmpty()) {
+                    newAnyHead = startIsWildcard;
+                    newHeads.add(startSymbol);
+                } else {
+                    StackSymbol<S> top = word.get(word.size() - 1);
+                    if (keepsSymbol) {
+                        // The rule keeps whatever symbol it was applied to
+                        newAnyHead = anyHead.contains(end);
+                        newHeads.addAll(heads.get(end));
+                    } else {
+                        StackSymbol<S> written = top instanceof Wildcard<S> ? startSymbol : top;
+                        if (canReachTarget(end, written, heads, anyHead)) {
+                            newAnyHead = startIsWildcard;
+                            newHeads.add(startSymbol);
+                        }
+                    }
+                }
+                if (newAnyHead || !newHeads.isEmpty()) {
+                    slice.add(rule);
+                }
+                boolean changed = newAnyHead && anyHead.add(start);
+                for (StackSymbol<S> head : newHeads) {
+                    changed |= heads.put(start, head);
+                }
+                if (changed) {
+                    worklist.add(start);
+                }
+            }
+        }
+        Set<Rule<L,S>> rules = Collections.unmodifiableSet(slice);
+        return () -> rules;
+    }
+
+    private static <L,S> boolean canReachTarget(
+            ControlLocation<L> location,
+            StackSymbol<S> symbol,
+            SetMultimap<ControlLocation<L>, StackSymbol<S>> heads,
+            Set<ControlLocation<L>> anyHead
+    ) {
+        if (anyHead.contains(location)) {
+            return true;
+        }
+        for (StackSymbol<S> head : heads.get(location)) {
+            if (Wildcard.matches(head, symbol)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <L,S> void addHead(
+            ControlLocation<L> location,
+            StackSymbol<S> symbol,
+            SetMultimap<ControlLocation<L>, StackSymbol<S>> heads,
+            Deque<Map.Entry<ControlLocation<L>, StackSymbol<S>>> worklist
+    ) {
+        if (heads.put(location, symbol)) {
+            worklist.add(Maps.immutableEntry(location, symbol));
+        }
+    }
+
+    // A wildcard written by a rule stands for the symbol the rule was applied to
+    private static <S> StackSymbol<S> written(StackSymbol<S> symbol, StackSymbol<S> matched) {
+        return symbol instanceof Wildcard<S> ? matched : symbol;
+    }
+}
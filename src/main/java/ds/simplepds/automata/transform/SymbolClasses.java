@@ -0,0 +1,233 @@
+package ds.simplepds.automata.transform;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.SetMultimap;
+import ds.simplepds.automata.PAutomaton;
+import ds.simplepds.automata.demand.Wildcard;
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.PushdownSystem;
+import ds.simplepds.interfaces.Rule;
+import ds.simplepds.interfaces.StackSymbol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Partitions the stack symbols of a pushdown system and a query automaton into classes of interchangeable symbols.
+ * Two symbols are interchangeable if no rule or transition mentions both and replacing one by the other maps the rules
+ * and transitions that mention it onto the rules and transitions that mention the other. Swapping the symbols of a
+ * class then leaves the pushdown system, the query automaton and thus the saturated automaton unchanged.
+ *
+ * Saturating the quotient, in which each symbol is replaced by the representative of its class, gives the saturated
+ * automaton with one transition per class instead of one per symbol. The transitions for the other symbols of a class
+ * are expanded on demand.
+ * @param <L>
+ * @param <S>
+ */
+public class SymbolClasses<L,S> {
+
+    private final Map<StackSymbol<S>, StackSymbol<S>> representatives;
+    private final SetMultimap<StackSymbol<S>, StackSymbol<S>> classes;
+    private final PushdownSystem<L,S> quotient;
+
+    private SymbolClasses(
+            Map<StackSymbol<S>, StackSymbol<S>> representatives,
+            SetMultimap<StackSymbol<S>, StackSymbol<S>> classes,
+            Set<Rule<L,S>> quotientRules
+    ) {
+        this.representatives = representatives;
+        this.classes = classes;
+        Set<Rule<L,S>> rules = Collections.unmodifiableSet(quotientRules);
+        this.quotient = () -> rules;
+    }
+
+    /**
+     * Computes the classes of interchangeable symbols
+     * @param queryAutomaton the initial automaton of the query (for post-*) or its target (for pre*)
+     */
+    public static <L,S> SymbolClasses<L,S> compute(PushdownSystem<L,S> pushdownSystem, PAutomaton<L,S> queryAutomaton) {
+        // The signature of a symbol is the set of rules and transitions that mention it, with the symbol replaced by a
+        // placeholder. Symbols with the same signature are interchangeable
+        StackSymbol<S> placeholder = new Placeholder<>();
+        SetMultimap<StackSymbol<S>, Object> signatures = HashMultimap.create();
+        Set<StackSymbol<S>> symbols = new LinkedHashSet<>();
+        for (Rule<L,S> rule : pushdownSystem.getRules()) {
+            for (StackSymbol<S> symbol : symbolsOf(rule)) {
+                symbols.add(symbol);
+                signatures.put(symbol, map(rule, s -> s == symbol || isSymbol(s) && s.equals(symbol) ? placeholder : s));
+            }
+        }
+        for (PAutomaton.Transition<L,S> transition : queryAutomaton.getTransitionRelation()) {
+            StackSymbol<S> symbol = transition.getLabel();
+            if (!isSymbol(symbol)) {
+                continue;
+            }
+            symbols.add(symbol);
+            signatures.put(symbol, new PAutomaton.Transition<>(
+                    transition.getStartState(),
+                    transition.getEndState(),
+                    placeholder
+            ));
+        }
+
+        Map<Set<Object>, StackSymbol<S>> representativeBySignature = new HashMap<>();
+        Map<StackSymbol<S>, StackSymbol<S>> representatives = new HashMap<>();
+        SetMultimap<StackSymbol<S>, StackSymbol<S>> classes = HashMultimap.create();
+        for (StackSymbol<S> symbol : symbols) {
+            StackSymbol<S> representative =
+                    representativeBySignature.computeIfAbsent(signatures.get(symbol), signature -> symbol);
+            representatives.put(symbol, representative);
+            classes.put(representative, symbol);
+        }
+
+        Set<Rule<L,S>> quotientRules = new LinkedHashSet<>();
+        for (Rule<L,S> rule : pushdownSystem.getRules()) {
+            quotientRules.add(map(rule, s -> isSymbol(s) ? representatives.getOrDefault(s, s) : s));
+        }
+        return new SymbolClasses<>(representatives, classes, quotientRules);
+    }
+
+    /**
+     * @return the pushdown system in which each symbol is replaced by the representative of its class
+     */
+    public PushdownSystem<L,S> getQuotient() {
+        return quotient;
+    }
+
+    /**
+     * @return a copy of the given automaton in which each label is replaced by the representative of its class
+     */
+    public PAutomaton<L,S> quotient(PAutomaton<L,S> automaton) {
+        PAutomaton<L,S> quotient = copyStates(automaton);
+        for (PAutomaton.Transition<L,S> transition : automaton.getTransitionRelation()) {
+            quotient.addTransition(
+                    transition.getStartState(),
+                    transition.getEndState(),
+                    getRepresentative(transition.getLabel())
+            );
+        }
+        return quotient;
+    }
+
+    public StackSymbol<S> getRepresentative(StackSymbol<S> symbol) {
+        return isSymbol(symbol) ? representatives.getOrDefault(symbol, symbol) : symbol;
+    }
+
+    /**
+     * @return the symbols that are interchangeable with the given one, including itself
+     */
+    public Set<StackSymbol<S>> getSymbolClass(StackSymbol<S> symbol) {
+        if (!isSymbol(symbol)) {
+            return ImmutableSet.of(symbol);
+        }
+        Set<StackSymbol<S>> members = classes.get(getRepresentative(symbol));
+        return members.isEmpty() ? ImmutableSet.of(symbol) : Collections.unmodifiableSet(members);
+    }
+
+    /**
+     * @return the number of classes
+     */
+    public int size() {
+        return classes.keySet().size();
+    }
+
+    /**
+     * @param saturated an automaton saturated over the quotient
+     * @return true if the automaton for the original pushdown system contains the given transition
+     */
+    public boolean containsTransition(PAutomaton<L,S> saturated, PAutomaton.Transition<L,S> transition) {
+        return saturated.getTransitionRelation().contains(new PAutomaton.Transition<>(
+                transition.getStartState(),
+                transition.getEndState(),
+                getRepresentative(transition.getLabel())
+        ));
+    }
+
+    /**
+     * Lazily expands the transitions of an automaton saturated over the quotient to the symbols of each class
+     */
+    public Stream<PAutomaton.Transition<L,S>> expandedTransitions(PAutomaton<L,S> saturated) {
+        return saturated.getTransitionRelation().stream()
+                .flatMap(transition -> getSymbolClass(transition.getLabel()).stream()
+                        .map(symbol -> new PAutomaton.Transition<>(
+                                transition.getStartState(),
+                                transition.getEndState(),
+                                symbol
+                        )));
+    }
+
+    /**
+     * @param saturated an automaton saturated over the quotient
+     * @return the automaton for the original pushdown system. States generated for push rules are those of the
+     * quotient, so they stand for the push rules of all symbols of a class
+     */
+    public PAutomaton<L,S> expand(PAutomaton<L,S> saturated) {
+        PAutomaton<L,S> expanded = copyStates(saturated);
+        expandedTransitions(saturated).forEach(expanded::addTransition);
+        return expanded;
+    }
+
+    private static <L,S> PAutomaton<L,S> copyStates(PAutomaton<L,S> automaton) {
+        PAutomaton<L,S> copy = new PAutomaton<>();
+        automaton.getAllStates().forEach(copy::addState);
+        automaton.getInitialStates().forEach(copy::addInitialState);
+        automaton.getFinalStates().forEach(copy::addFinalState);
+        return copy;
+    }
+
+    private static <L,S> List<StackSymbol<S>> symbolsOf(Rule<L,S> rule) {
+        List<StackSymbol<S>> symbols = new ArrayList<>();
+        for (StackSymbol<S> symbol : rule.getEndConfiguration().getWord()) {
+            if (isSymbol(symbol)) {
+                symbols.add(symbol);
+            }
+        }
+        if (isSymbol(rule.getStartConfiguration().getStackSymbol())) {
+            symbols.add(rule.getStartConfiguration().getStackSymbol());
+        }
+        return symbols;
+    }
+
+    // Wildcards stand for every symbol, so they are never part of a class. Their equals is not symmetric, so they
+    // must not be looked up in hash-based collections either
+    private static <S> boolean isSymbol(StackSymbol<S> symbol) {
+        return !(symbol instanceof Wildcard<S>);
+    }
+
+    private static <L,S> Rule<L,S> map(Rule<L,S> rule, UnaryOperator<StackSymbol<S>> mapping) {
+        List<StackSymbol<S>> word = new ArrayList<>();
+        for (StackSymbol<S> symbol : rule.getEndConfiguration().getWord()) {
+            word.add(mapping.apply(symbol));
+        }
+        return new DerivedRule<>(
+                rule.getStartConfiguration().getControlLocation(),
+                mapping.apply(rule.getStartConfiguration().getStackSymbol()),
+                rule.getEndConfiguration().getControlLocation(),
+                word
+        );
+    }
+
+    /**
+     * Stands for the symbol whose signature is computed
+     */
+    private static class Placeholder<S> implements StackSymbol<S> {
+
+        @Override
+        public S unwrap() {
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return "_";
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ds.simplepds.interfaces;
+
+/**
+ * A bounded idempotent semiring of weights. Combine must be idempotent, commutative and associative, extend must be
+ * associative, and there must be no infinite descending chains w1 &gt; w2 &gt; ... with respect to the order
+ * a &lt;= b iff combine(a, b) = a. Weights are compared with equals.
+ * @param <W>
+ */
+public interface Semiring<W> {
+
+    /**
+     * @return the neutral element of combine, which annihilates extend (the weight of no path)
+     */
+    W zero();
+
+    /**
+     * @return the neutral element of extend (the weight of the empty path)
+     */
+    W one();
+
+    /**
+     * Joins the weights of alternative paths
+     */
+    W combine(W a, W b);
+
+    /**
+     * Appends the weight of a step to the weight of the path before it
+     */
+    W extend(W a, W b);
+}
@@ -0,0 +1,12 @@
+package ds.simplepds.interfaces;
+
+/**
+ * A pushdown system whose rules carry weights from a semiring
+ * @param <L>
+ * @param <S>
+ * @param <W>
+ */
+public interface WeightedPushdownSystem<L,S,W> extends PushdownSystem<L,S> {
+
+    W getWeight(Rule<L,S> rule);
+}
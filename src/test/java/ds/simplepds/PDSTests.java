@@ -1,31 +1,85 @@
 package ds.simplepds;
 
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import ds.simplepds.automata.AcceptedConfiguration;
+import ds.simplepds.automata.AsyncSaturationListener;
+import ds.simplepds.automata.CancellationToken;
 import ds.simplepds.automata.FastLookupRuleMap;
+import ds.simplepds.automata.FrozenPAutomaton;
 import ds.simplepds.automata.HashBasedPostStar;
 import ds.simplepds.automata.HashBasedPreStar;
+import ds.simplepds.automata.MultiQueryPoststar;
+import ds.simplepds.automata.MultiQueryPrestar;
 import ds.simplepds.automata.PAutomaton;
 import ds.simplepds.automata.Poststar;
 import ds.simplepds.automata.Prestar;
+import ds.simplepds.automata.ProcedureSummaries;
+import ds.simplepds.automata.PropertyCheckingPostStar;
+import ds.simplepds.automata.Saturation;
+import ds.simplepds.automata.SaturationEngine;
+import ds.simplepds.automata.SaturationListener;
+import ds.simplepds.automata.SaturationOptions;
+import ds.simplepds.automata.WeightedPAutomaton;
+import ds.simplepds.automata.WeightedPoststar;
+import ds.simplepds.automata.WeightedPrestar;
+import ds.simplepds.automata.demand.AsyncBackwardFlowFunctions;
+import ds.simplepds.automata.demand.AsyncForwardFlowFunctions;
 import ds.simplepds.automata.demand.BackwardFlowFunctions;
 import ds.simplepds.automata.demand.DemandPostStar;
 import ds.simplepds.automata.demand.DemandPreStar;
 import ds.simplepds.automata.demand.ForwardFlowFunctions;
+import ds.simplepds.automata.demand.QueryExecutor;
 import ds.simplepds.automata.demand.WildcardPostStar;
 import ds.simplepds.automata.demand.WildcardPreStar;
+import ds.simplepds.automata.symbolic.StackAlphabet;
+import ds.simplepds.automata.symbolic.SymbolSet;
+import ds.simplepds.automata.symbolic.SymbolicPAutomaton;
+import ds.simplepds.automata.symbolic.SymbolicPoststar;
+import ds.simplepds.automata.symbolic.SymbolicPushdownSystem;
+import ds.simplepds.automata.symbolic.SymbolicRule;
+import ds.simplepds.automata.transform.CompressedPushdownSystem;
+import ds.simplepds.automata.transform.PushdownSystemSlicer;
+import ds.simplepds.automata.transform.SymbolClasses;
 import ds.simplepds.interfaces.ControlLocation;
 import ds.simplepds.interfaces.EndConfiguration;
 import ds.simplepds.interfaces.PushdownSystem;
 import ds.simplepds.interfaces.Rule;
+import ds.simplepds.interfaces.Semiring;
 import ds.simplepds.interfaces.StackSymbol;
 import ds.simplepds.interfaces.StartConfiguration;
+import ds.simplepds.interfaces.WeightedPushdownSystem;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class PDSTests {
 
@@ -33,6 +87,9 @@ public class PDSTests {
     private static PAutomaton<String, String> initialAut;
     private static Rule<String, String> stateGeneratingRuleM1;
     private static Rule<String, String> stateGeneratingRuleM2;
+    private static Function<Rule<String, String>, String> generatedStateNames;
+    private static ForwardFlowFunctions<String, String> forwardFlowFunctions;
+    private static BackwardFlowFunctions<String, String> backwardFlowFunctions;
 
     @BeforeEach
     public void build() {
@@ -73,6 +130,9 @@ public class PDSTests {
 
         stateGeneratingRuleM1 = r1;
         stateGeneratingRuleM2 = r2;
+        generatedStateNames = TestUtils.createGeneratedStateNames(pushAndPopPDS);
+        forwardFlowFunctions = TestUtils.createForwardFlowFunctions(pushAndPopPDS);
+        backwardFlowFunctions = TestUtils.createBackwardFlowFunctions(pushAndPopPDS);
     }
 
     @Test
@@ -145,8 +205,8 @@ public class PDSTests {
         poststar.apply();
         //System.out.println(poststar.getSaturatedAut().toDotString());
         Set<PAutomaton.Transition<String, String>> relation = poststar.getSaturatedAut().getTransitionRelation();
-        Poststar<String, String>.GeneratedState m1 = poststar.createGeneratedStateFromRule(stateGeneratingRuleM1);
-        Poststar<String, String>.GeneratedState m2 = poststar.createGeneratedStateFromRule(stateGeneratingRuleM2);
+        Poststar.GeneratedState<String, String> m1 = poststar.createGeneratedStateFromRule(stateGeneratingRuleM1);
+        Poststar.GeneratedState<String, String> m2 = poststar.createGeneratedStateFromRule(stateGeneratingRuleM2);
         assert relation.size() == 9;
         assert relation.contains(TestUtils.createTransition("s1", "s2", "g0"));
         assert relation.contains(TestUtils.createTransition("p0", "s1", "g0"));
@@ -174,8 +234,8 @@ public class PDSTests {
         poststar.apply();
         //System.out.println(poststar.getSaturatedAut().toDotString());
         Set<PAutomaton.Transition<String, String>> relation = poststar.getSaturatedAut().getTransitionRelation();
-        Poststar<String, String>.GeneratedState m1 = poststar.createGeneratedStateFromRule(stateGeneratingRuleM1);
-        Poststar<String, String>.GeneratedState m2 = poststar.createGeneratedStateFromRule(stateGeneratingRuleM2);
+        Poststar.GeneratedState<String, String> m1 = poststar.createGeneratedStateFromRule(stateGeneratingRuleM1);
+        Poststar.GeneratedState<String, String> m2 = poststar.createGeneratedStateFromRule(stateGeneratingRuleM2);
         assert relation.size() == 9;
         assert relation.contains(TestUtils.createTransition("s1", "s2", "g0"));
         assert relation.contains(TestUtils.createTransition("p0", "s1", "g0"));
@@ -396,4 +456,1324 @@ public class PDSTests {
                 TestUtils.createTransition(f, s, w)
         );
     }
+
+    @Test
+    public void testQueryExecutor() {
+
+        DemandPostStar<String, String> sequential =
+                new DemandPostStar<>(forwardFlowFunctions, initialAut, generatedStateNames);
+        sequential.apply();
+
+        try (QueryExecutor<String, String> executor =
+                     QueryExecutor.forPoststar(forwardFlowFunctions, generatedStateNames)) {
+            List<CompletableFuture<PAutomaton<String, String>>> results =
+                    executor.submitAll(List.of(initialAut, initialAut, initialAut, initialAut));
+            for (CompletableFuture<PAutomaton<String, String>> result : results) {
+                assert result.join().getTransitionRelation().equals(
+                        sequential.getSaturatedAut().getTransitionRelation()
+                );
+            }
+        }
+    }
+
+    @Test
+    public void testAsyncFlowFunctions() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            DemandPostStar<String, String> poststar =
+                    new DemandPostStar<>(forwardFlowFunctions, initialAut, generatedStateNames);
+            poststar.apply();
+            DemandPostStar<String, String> asyncPoststar = new DemandPostStar<>(
+                    AsyncForwardFlowFunctions.onExecutor(forwardFlowFunctions, executor),
+                    initialAut,
+                    generatedStateNames
+            );
+            asyncPoststar.apply();
+            assert asyncPoststar.getSaturatedAut().getTransitionRelation().equals(
+                    poststar.getSaturatedAut().getTransitionRelation()
+            );
+
+            DemandPreStar<String, String> prestar = new DemandPreStar<>(backwardFlowFunctions, initialAut);
+            prestar.apply();
+            DemandPreStar<String, String> asyncPrestar = new DemandPreStar<>(
+                    AsyncBackwardFlowFunctions.onExecutor(backwardFlowFunctions, executor),
+                    initialAut
+            );
+            asyncPrestar.apply();
+            assert asyncPrestar.getSaturatedAut().getTransitionRelation().equals(
+                    prestar.getSaturatedAut().getTransitionRelation()
+            );
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testAsyncFlowFunctionsOverlap() {
+        // Rules are only delivered once released, so a request can only have been issued eagerly
+        CountDownLatch release = new CountDownLatch(1);
+        List<Set<String>> requests = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            AsyncForwardFlowFunctions<String, String> gated = new AsyncForwardFlowFunctions<>() {
+                @Override
+                public CompletableFuture<Set<Rule<String, String>>> applyAsync(String currentLocation) {
+                    return applyAllAsync(Set.of(currentLocation)).thenApply(rules ->
+                            rules.getOrDefault(currentLocation, Collections.emptySet()));
+                }
+
+                @Override
+                public CompletableFuture<Map<String, Set<Rule<String, String>>>> applyAllAsync(
+                        Set<String> currentLocations
+                ) {
+                    requests.add(currentLocations);
+                    return CompletableFuture.supplyAsync(() -> {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return forwardFlowFunctions.applyAll(currentLocations);
+                    }, executor);
+                }
+            };
+            PAutomaton<String, String> twoTransitions = new PAutomaton<>();
+            twoTransitions.addInitialState(TestUtils.createControlLocation("p0"));
+            twoTransitions.addInitialState(TestUtils.createControlLocation("p1"));
+            twoTransitions.addTransition(TestUtils.createTransition("p0", "s1", "g0"));
+            twoTransitions.addTransition(TestUtils.createTransition("p1", "s1", "g1"));
+            twoTransitions.addFinalState(TestUtils.createControlLocation("s1"));
+            DemandPostStar<String, String> poststar =
+                    new DemandPostStar<>(gated, twoTransitions, generatedStateNames);
+            // The other initial transition is still in the worklist after this step
+            assert !poststar.step(1);
+            assert requests.size() == 1;
+            release.countDown();
+            poststar.apply();
+
+            DemandPostStar<String, String> reference =
+                    new DemandPostStar<>(forwardFlowFunctions, twoTransitions, generatedStateNames);
+            reference.apply();
+            assert poststar.getSaturatedAut().getTransitionRelation()
+                    .equals(reference.getSaturatedAut().getTransitionRelation());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testBatchedFlowFunctions() {
+        AtomicInteger batchCalls = new AtomicInteger();
+        ForwardFlowFunctions<String, String> batchedFlowFunctions = new ForwardFlowFunctions<>() {
+            @Override
+            public Set<Rule<String, String>> apply(String currentLocation) {
+                throw new AssertionError("Locations should be resolved in batches");
+            }
+
+            @Override
+            public Map<String, Set<Rule<String, String>>> applyAll(Set<String> currentLocations) {
+                batchCalls.incrementAndGet();
+                return pushAndPopPDS.getRules().stream()
+                        .filter(rule -> currentLocations.contains(
+                                rule.getStartConfiguration().getControlLocation().unwrap()))
+                        .collect(Collectors.groupingBy(
+                                rule -> rule.getStartConfiguration().getControlLocation().unwrap(),
+                                Collectors.toSet()
+                        ));
+            }
+        };
+
+        DemandPostStar<String, String> batched =
+                new DemandPostStar<>(batchedFlowFunctions, initialAut, generatedStateNames);
+        batched.apply();
+        DemandPostStar<String, String> single =
+                new DemandPostStar<>(forwardFlowFunctions, initialAut, generatedStateNames);
+        single.apply();
+        Set<String> startLocations = batched.getSaturatedAut().getTransitionRelation().stream()
+                .map(transition -> transition.getStartState().unwrap())
+                .collect(Collectors.toSet());
+        assert batchCalls.get() < startLocations.size();
+        assert batched.getSaturatedAut().getTransitionRelation().equals(
+                single.getSaturatedAut().getTransitionRelation()
+        );
+    }
+
+    @Test
+    public void testGeneratedRuleIndex() {
+        ControlLocation<String> p = TestUtils.createControlLocation("p");
+        ControlLocation<String> q = TestUtils.createControlLocation("q");
+        ControlLocation<String> r = TestUtils.createControlLocation("r");
+        ControlLocation<String> u = TestUtils.createControlLocation("u");
+        StackSymbol<String> a = TestUtils.createStackSymbol("a");
+        StackSymbol<String> b = TestUtils.createStackSymbol("b");
+        StackSymbol<String> c = TestUtils.createStackSymbol("c");
+        StackSymbol<String> d = TestUtils.createStackSymbol("d");
+        StackSymbol<String> e = TestUtils.createStackSymbol("e");
+        StackSymbol<String> x = TestUtils.createStackSymbol("x");
+        StackSymbol<String> y = TestUtils.createStackSymbol("y");
+        StackSymbol<String> w = TestUtils.getWildcardStackSymbol();
+        Set<Rule<String, String>> rules = new HashSet<>();
+        // Keeps whatever is below the new top, so the generated rule <p, a> -> <r, w> is in the wildcard bucket
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(p, a), TestUtils.createPushEndConfiguration(q, w, c)));
+        // Fires on both (q, c, r) and (q, d, r), which generate the same rule <p, e> -> <r, b>
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(p, e), TestUtils.createPushEndConfiguration(q, b, w)));
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(q, c), TestUtils.createPopEndConfiguration(r)));
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(q, d), TestUtils.createPopEndConfiguration(r)));
+        // The transitions leaving r are only added after the rules ending at r were generated
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(r, x), TestUtils.createNormalEndConfiguration(u, y)));
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(r, b), TestUtils.createNormalEndConfiguration(u, y)));
+        PushdownSystem<String, String> pds = TestUtils.createPDS(rules);
+        PAutomaton<String, String> aut = new PAutomaton<>();
+        aut.addTransition(TestUtils.createTransition("u", "s", "y"));
+        aut.addFinalState(TestUtils.createControlLocation("s"));
+        aut.addInitialState(u);
+
+        Function<Rule<String, String>, String> describe = rule -> String.join(" ",
+                rule.getStartConfiguration().getControlLocation().unwrap(),
+                rule.getStartConfiguration().getStackSymbol().unwrap(),
+                rule.getEndConfiguration().getControlLocation().unwrap(),
+                rule.getEndConfiguration().getWord().get(0).unwrap()
+        );
+        Set<PAutomaton.Transition<String, String>> expected = Set.of(
+                TestUtils.createTransition("u", "s", "y"),
+                TestUtils.createTransition("r", "s", "x"),
+                TestUtils.createTransition("r", "s", "b"),
+                TestUtils.createTransition("q", "r", "c"),
+                TestUtils.createTransition("q", "r", "d"),
+                TestUtils.createTransition("p", "s", "a"),
+                TestUtils.createTransition("p", "s", "e")
+        );
+        List<Prestar<String, String>> engines = List.of(
+                new Prestar<>(pds, aut),
+                new HashBasedPreStar<>(pds, aut, new FastLookupRuleMap<>(pds))
+        );
+        for (Prestar<String, String> prestar : engines) {
+            List<String> generated = new ArrayList<>();
+            prestar.addListener(new SaturationListener<>() {
+                @Override
+                public void ruleGenerated(Rule<String, String> rule) {
+                    generated.add(describe.apply(rule));
+                }
+            });
+            prestar.apply();
+            assert generated.size() == 2;
+            assert new HashSet<>(generated).equals(Set.of("p a r *", "p e r b"));
+            assert prestar.getSaturatedAut().getTransitionRelation().equals(expected);
+        }
+
+        // The demand engine reads the top of a push word first, so the wildcard rule fires on both pops instead
+        List<String> generated = new ArrayList<>();
+        DemandPreStar<String, String> demandPrestar =
+                new DemandPreStar<>(TestUtils.createBackwardFlowFunctions(pds), aut);
+        demandPrestar.addListener(new SaturationListener<>() {
+            @Override
+            public void ruleGenerated(Rule<String, String> rule) {
+                generated.add(describe.apply(rule));
+            }
+        });
+        demandPrestar.apply();
+        assert generated.size() == new HashSet<>(generated).size();
+        assert generated.contains("p a r c");
+    }
+
+    @Test
+    public void testCheckpointResume() throws IOException {
+        Path checkpoint = Files.createTempFile("poststar", ".checkpoint");
+        try {
+            Poststar<String, String> full = new Poststar<>(pushAndPopPDS, initialAut, generatedStateNames);
+            full.enableCheckpointing(checkpoint, TestUtils.createCheckpointCodec(), Duration.ZERO);
+            full.apply();
+
+            // Simulate a crash half way through by cutting off the end of the log
+            try (FileChannel channel = FileChannel.open(checkpoint, StandardOpenOption.WRITE)) {
+                channel.truncate(channel.size() / 2);
+            }
+            Poststar<String, String> resumed = new Poststar<>(pushAndPopPDS, initialAut, generatedStateNames);
+            resumed.enableCheckpointing(checkpoint, TestUtils.createCheckpointCodec(), Duration.ZERO);
+            resumed.apply();
+            assert resumed.getSaturatedAut().getTransitionRelation().size() == 9;
+            assert resumed.getSaturatedAut().getTransitionRelation()
+                    .equals(full.getSaturatedAut().getTransitionRelation());
+            assert resumed.getSaturatedAut().getFinalStates().equals(full.getSaturatedAut().getFinalStates());
+        } finally {
+            Files.deleteIfExists(checkpoint);
+        }
+
+        checkpoint = Files.createTempFile("prestar", ".checkpoint");
+        try {
+            Prestar<String, String> full = new Prestar<>(pushAndPopPDS, initialAut);
+            full.enableCheckpointing(checkpoint, TestUtils.createCheckpointCodec(), Duration.ZERO);
+            full.apply();
+
+            try (FileChannel channel = FileChannel.open(checkpoint, StandardOpenOption.WRITE)) {
+                channel.truncate(channel.size() * 2 / 3);
+            }
+            Prestar<String, String> resumed = new Prestar<>(pushAndPopPDS, initialAut);
+            resumed.enableCheckpointing(checkpoint, TestUtils.createCheckpointCodec(), Duration.ZERO);
+            resumed.apply();
+            assert resumed.getSaturatedAut().getTransitionRelation().size() == 7;
+            assert resumed.getSaturatedAut().getTransitionRelation()
+                    .equals(full.getSaturatedAut().getTransitionRelation());
+        } finally {
+            Files.deleteIfExists(checkpoint);
+        }
+    }
+
+    @Test
+    public void testSpillingWorklist() throws IOException {
+        Path spillDirectory = Files.createTempDirectory("worklist");
+        try {
+            Poststar<String, String> poststar = new Poststar<>(pushAndPopPDS, initialAut, generatedStateNames);
+            poststar.enableSpilling(spillDirectory, TestUtils.createCheckpointCodec(), 2);
+            poststar.apply();
+            Poststar<String, String> reference = new Poststar<>(pushAndPopPDS, initialAut, generatedStateNames);
+            reference.apply();
+            assert poststar.getSaturatedAut().getTransitionRelation()
+                    .equals(reference.getSaturatedAut().getTransitionRelation());
+
+            Prestar<String, String> prestar = new Prestar<>(pushAndPopPDS, initialAut);
+            prestar.enableSpilling(spillDirectory, TestUtils.createCheckpointCodec(), 2);
+            prestar.apply();
+            assert prestar.getSaturatedAut().getTransitionRelation().size() == 7;
+            try (Stream<Path> files = Files.list(spillDirectory)) {
+                assert files.findAny().isEmpty();
+            }
+
+            // Runs spilled by a saturation that is abandoned or stops at its goal are deleted as well
+            try (Poststar<String, String> abandoned = new Poststar<>(pushAndPopPDS, initialAut, generatedStateNames)) {
+                abandoned.enableSpilling(spillDirectory, TestUtils.createCheckpointCodec(), 2);
+                assert !abandoned.step(1);
+                try (Stream<Path> files = Files.list(spillDirectory)) {
+                    assert files.findAny().isPresent();
+                }
+            }
+            try (Stream<Path> files = Files.list(spillDirectory)) {
+                assert files.findAny().isEmpty();
+            }
+            PAutomaton<String, String> property = new PAutomaton<>();
+            property.addInitialState(TestUtils.createControlLocation("p0"));
+            property.addTransition(TestUtils.createTransition("p0", "b1", "g0"));
+            property.addTransition(TestUtils.createTransition("b1", "b2", "g0"));
+            property.addFinalState(TestUtils.createControlLocation("b2"));
+            PropertyCheckingPostStar<String, String> propertyChecking =
+                    new PropertyCheckingPostStar<>(pushAndPopPDS, initialAut, property, generatedStateNames);
+            propertyChecking.enableSpilling(spillDirectory, TestUtils.createCheckpointCodec(), 2);
+            assert propertyChecking.findViolation() != null;
+            assert !propertyChecking.isFixpointReached();
+            try (Stream<Path> files = Files.list(spillDirectory)) {
+                assert files.findAny().isEmpty();
+            }
+        } finally {
+            Files.deleteIfExists(spillDirectory);
+        }
+    }
+
+    @Test
+    public void testComponentOrderedSaturation() {
+        Poststar<String, String> poststar = new Poststar<>(pushAndPopPDS, initialAut, generatedStateNames);
+        poststar.enableComponentOrdering();
+        poststar.apply();
+        Poststar<String, String> reference = new Poststar<>(pushAndPopPDS, initialAut, generatedStateNames);
+        reference.apply();
+        assert poststar.getSaturatedAut().getTransitionRelation()
+                .equals(reference.getSaturatedAut().getTransitionRelation());
+
+        FastLookupRuleMap<String, String> fastLookupRuleMap = new FastLookupRuleMap<>(pushAndPopPDS);
+        Prestar<String, String> prestar = new HashBasedPreStar<>(pushAndPopPDS, initialAut, fastLookupRuleMap);
+        prestar.enableComponentOrdering();
+        prestar.apply();
+        Set<PAutomaton.Transition<String, String>> relation = prestar.getSaturatedAut().getTransitionRelation();
+        assert relation.size() == 7;
+        assert relation.contains(TestUtils.createTransition("p2", "p0", "g2"));
+        assert relation.contains(TestUtils.createTransition("s1", "s2", "g0"));
+    }
+
+    @Test
+    public void testPropertyCheckingPoststar() {
+        // <p2, g2 g0 g0 g0> is reachable through both push rules
+        PAutomaton<String, String> violated = new PAutomaton<>();
+        violated.addInitialState(TestUtils.createControlLocation("p2"));
+        violated.addTransition(TestUtils.createTransition("p2", "b1", "g2"));
+        violated.addTransition(TestUtils.createTransition("b1", "b2", "g0"));
+        violated.addTransition(TestUtils.createTransition("b2", "b3", "g0"));
+        violated.addTransition(TestUtils.createTransition("b3", "b4", "g0"));
+        violated.addFinalState(TestUtils.createControlLocation("b4"));
+        PropertyCheckingPostStar<String, String> poststar =
+                new PropertyCheckingPostStar<>(pushAndPopPDS, initialAut, violated, generatedStateNames);
+        AcceptedConfiguration<String, String> witness = poststar.findViolation();
+        assert witness != null;
+        assert witness.getControlLocation().equals(TestUtils.createControlLocation("p2"));
+        assert witness.getWord().equals(List.of(
+                TestUtils.createStackSymbol("g2"),
+                TestUtils.createStackSymbol("g0"),
+                TestUtils.createStackSymbol("g0"),
+                TestUtils.createStackSymbol("g0")
+        ));
+        assert !poststar.isFixpointReached();
+
+        // p1 is only ever reached with g1 on top
+        PAutomaton<String, String> satisfied = new PAutomaton<>();
+        satisfied.addInitialState(TestUtils.createControlLocation("p1"));
+        satisfied.addTransition(TestUtils.createTransition("p1", "b1", "g0"));
+        satisfied.addFinalState(TestUtils.createControlLocation("b1"));
+        poststar = new PropertyCheckingPostStar<>(pushAndPopPDS, initialAut, satisfied, generatedStateNames);
+        assert poststar.findViolation() == null;
+        assert poststar.isFixpointReached();
+        assert poststar.getSaturatedAut().getTransitionRelation().size() == 9;
+    }
+
+    @Test
+    public void testAcceptedConfigurations() {
+        Poststar<String, String> poststar = new Poststar<>(pushAndPopPDS, initialAut, generatedStateNames);
+        poststar.apply();
+        StackSymbol<String> g0 = TestUtils.createStackSymbol("g0");
+        StackSymbol<String> g1 = TestUtils.createStackSymbol("g1");
+        StackSymbol<String> g2 = TestUtils.createStackSymbol("g2");
+        List<AcceptedConfiguration<String, String>> configurations =
+                poststar.getSaturatedAut().acceptedConfigurations(3).collect(Collectors.toList());
+        assert configurations.size() == 3;
+        assert configurations.get(0).equals(
+                new AcceptedConfiguration<>(TestUtils.createControlLocation("p0"), List.of(g0, g0)));
+        assert configurations.contains(
+                new AcceptedConfiguration<>(TestUtils.createControlLocation("p1"), List.of(g1, g0, g0)));
+        assert configurations.contains(
+                new AcceptedConfiguration<>(TestUtils.createControlLocation("p0"), List.of(g0, g0, g0)));
+
+        // The language is infinite, so only the count bounds the enumeration
+        List<AcceptedConfiguration<String, String>> first = poststar.getSaturatedAut()
+                .acceptedConfigurations(Integer.MAX_VALUE)
+                .limit(10)
+                .collect(Collectors.toList());
+        assert first.size() == 10;
+        assert first.get(9).getWord().size() >= 4;
+        assert first.stream().noneMatch(configuration ->
+                configuration.getControlLocation().equals(TestUtils.createControlLocation("p2"))
+                        && configuration.getWord().get(0).equals(g0));
+        assert new HashSet<>(first).size() == 10;
+        assert first.stream().anyMatch(configuration -> configuration.getWord().get(0).equals(g2));
+    }
+
+    @Test
+    public void testFrozenPAutomaton() {
+        Poststar<String, String> poststar = new Poststar<>(pushAndPopPDS, initialAut, generatedStateNames);
+        poststar.apply();
+        PAutomaton<String, String> saturated = poststar.getSaturatedAut();
+        FrozenPAutomaton<String, String> frozen = saturated.freeze();
+        assert frozen.getTransitionCount() == 9;
+        assert frozen.getAllStates().equals(saturated.getAllStates());
+        assert frozen.getInitialStates().equals(saturated.getInitialStates());
+        assert frozen.getFinalStates().equals(saturated.getFinalStates());
+        for (ControlLocation<String> state : saturated.getAllStates()) {
+            Set<PAutomaton.Transition<String, String>> expected = saturated.getTransitionRelation().stream()
+                    .filter(transition -> transition.getStartState().equals(state))
+                    .collect(Collectors.toSet());
+            assert new HashSet<>(frozen.getTransitionsFrom(state)).equals(expected);
+        }
+        Poststar.GeneratedState<String, String> m1 = poststar.createGeneratedStateFromRule(stateGeneratingRuleM1);
+        Poststar.GeneratedState<String, String> m2 = poststar.createGeneratedStateFromRule(stateGeneratingRuleM2);
+        ControlLocation<String> p0 = TestUtils.createControlLocation("p0");
+        assert new HashSet<>(frozen.getTargets(p0, TestUtils.createStackSymbol("g0")))
+                .equals(Set.of(m1, TestUtils.createControlLocation("s1")));
+        assert frozen.getTargets(p0, TestUtils.createStackSymbol("g1")).equals(List.of(m2));
+        assert frozen.getTargets(p0, TestUtils.createStackSymbol("g2")).isEmpty();
+        assert frozen.containsTransition(TestUtils.createTransition(m2, m1, "g0"));
+        assert !frozen.containsTransition(TestUtils.createTransition(m1, m2, "g0"));
+        assert frozen.thaw().getTransitionRelation().equals(saturated.getTransitionRelation());
+    }
+
+    @Test
+    public void testStreamingExport() throws IOException {
+        ByteArrayOutputStream dot = new ByteArrayOutputStream();
+        initialAut.writeDot(Channels.newChannel(dot));
+        assert dot.toString(StandardCharsets.UTF_8).equals(initialAut.toDotString());
+
+        initialAut.addTransition(TestUtils.createTransition("s2", "s\t3", "g0"));
+        StringWriter edgeList = new StringWriter();
+        initialAut.writeEdgeList(edgeList);
+        List<String> lines = List.of(edgeList.toString().split("\n"));
+        assert lines.size() == 7;
+        assert lines.contains("I\tp0");
+        assert lines.contains("F\ts2");
+        assert lines.contains("T\tp0\tg0\ts1");
+        assert lines.contains("T\ts2\tg0\ts\\t3");
+    }
+
+    @Test
+    public void testPushdownSystemSlicer() {
+        ControlLocation<String> p0 = TestUtils.createControlLocation("p0");
+        ControlLocation<String> p1 = TestUtils.createControlLocation("p1");
+        ControlLocation<String> p3 = TestUtils.createControlLocation("p3");
+        StackSymbol<String> g0 = TestUtils.createStackSymbol("g0");
+        StackSymbol<String> g2 = TestUtils.createStackSymbol("g2");
+        // Unreachable from the initial automaton
+        Rule<String, String> fromP3 = TestUtils.createRule(
+                TestUtils.createStartConfiguration(p3, g0),
+                TestUtils.createNormalEndConfiguration(p0, g0)
+        );
+        // p1 is only ever reached with g1 on top
+        Rule<String, String> fromP1 = TestUtils.createRule(
+                TestUtils.createStartConfiguration(p1, g2),
+                TestUtils.createPopEndConfiguration(p3)
+        );
+        // Cannot reach the configurations of the initial automaton
+        Rule<String, String> toP4 = TestUtils.createRule(
+                TestUtils.createStartConfiguration(p0, g0),
+                TestUtils.createNormalEndConfiguration(TestUtils.createControlLocation("p4"), g0)
+        );
+        Set<Rule<String, String>> rules = new HashSet<>(pushAndPopPDS.getRules());
+        rules.addAll(List.of(fromP3, fromP1, toP4));
+        PushdownSystem<String, String> pds = TestUtils.createPDS(rules);
+        Function<Rule<String, String>, String> stateNames = TestUtils.createGeneratedStateNames(pds);
+
+        PushdownSystem<String, String> forward = PushdownSystemSlicer.forward(pds, initialAut);
+        Set<Rule<String, String>> expectedForward = new HashSet<>(pushAndPopPDS.getRules());
+        expectedForward.add(toP4);
+        assert forward.getRules().equals(expectedForward);
+        Poststar<String, String> sliced = new Poststar<>(forward, initialAut, stateNames);
+        sliced.apply();
+        Poststar<String, String> poststar = new Poststar<>(pds, initialAut, stateNames);
+        poststar.apply();
+        assert sliced.getSaturatedAut().getTransitionRelation()
+                .equals(poststar.getSaturatedAut().getTransitionRelation());
+
+        PushdownSystem<String, String> backward = PushdownSystemSlicer.backward(pds, initialAut);
+        assert !backward.getRules().contains(toP4);
+        assert backward.getRules().contains(fromP3);
+        Prestar<String, String> slicedPrestar = new Prestar<>(backward, initialAut);
+        slicedPrestar.apply();
+        Prestar<String, String> prestar = new Prestar<>(pds, initialAut);
+        prestar.apply();
+        assert slicedPrestar.getSaturatedAut().getTransitionRelation()
+                .equals(prestar.getSaturatedAut().getTransitionRelation());
+
+        // The wildcard rule at p keeps the symbol, so <p, b> reaches the target once <q, b> does, which is only found
+        // after the rule was first kept for <q, a>
+        ControlLocation<String> p = TestUtils.createControlLocation("p");
+        ControlLocation<String> q = TestUtils.createControlLocation("q");
+        ControlLocation<String> s = TestUtils.createControlLocation("s");
+        ControlLocation<String> t = TestUtils.createControlLocation("t");
+        ControlLocation<String> u = TestUtils.createControlLocation("u");
+        StackSymbol<String> b = TestUtils.createStackSymbol("b");
+        StackSymbol<String> c = TestUtils.createStackSymbol("c");
+        StackSymbol<String> d = TestUtils.createStackSymbol("d");
+        StackSymbol<String> e = TestUtils.createStackSymbol("e");
+        StackSymbol<String> w = TestUtils.getWildcardStackSymbol();
+        Rule<String, String> fromT = TestUtils.createRule(
+                TestUtils.createStartConfiguration(t, d), TestUtils.createNormalEndConfiguration(p, b));
+        pds = TestUtils.createPDS(Set.of(
+                TestUtils.createRule(
+                        TestUtils.createStartConfiguration(p, w), TestUtils.createNormalEndConfiguration(q, w)),
+                TestUtils.createRule(
+                        TestUtils.createStartConfiguration(q, b), TestUtils.createNormalEndConfiguration(u, e)),
+                TestUtils.createRule(
+                        TestUtils.createStartConfiguration(u, e), TestUtils.createNormalEndConfiguration(s, c)),
+                fromT
+        ));
+        PAutomaton<String, String> target = new PAutomaton<>();
+        List.of(p, q, s, t, u).forEach(target::addInitialState);
+        target.addTransition(TestUtils.createTransition("q", "f", "a"));
+        target.addTransition(TestUtils.createTransition("s", "f", "c"));
+        target.addFinalState(TestUtils.createControlLocation("f"));
+        backward = PushdownSystemSlicer.backward(pds, target);
+        assert backward.getRules().equals(pds.getRules());
+        slicedPrestar = new Prestar<>(backward, target);
+        slicedPrestar.apply();
+        prestar = new Prestar<>(pds, target);
+        prestar.apply();
+        assert slicedPrestar.getSaturatedAut().getTransitionRelation()
+                .contains(TestUtils.createTransition("t", "f", "d"));
+        assert slicedPrestar.getSaturatedAut().acceptedConfigurations(1).anyMatch(
+                configuration -> configuration.equals(new AcceptedConfiguration<>(t, List.of(d))));
+        assert slicedPrestar.getSaturatedAut().acceptedConfigurations(3).collect(Collectors.toSet())
+                .equals(prestar.getSaturatedAut().acceptedConfigurations(3).collect(Collectors.toSet()));
+    }
+
+    @Test
+    public void testNormalRuleChainCompression() {
+        ControlLocation<String> a = TestUtils.createControlLocation("a");
+        ControlLocation<String> b = TestUtils.createControlLocation("b");
+        ControlLocation<String> c = TestUtils.createControlLocation("c");
+        ControlLocation<String> d = TestUtils.createControlLocation("d");
+        ControlLocation<String> e = TestUtils.createControlLocation("e");
+        ControlLocation<String> f = TestUtils.createControlLocation("f");
+        StackSymbol<String> u = TestUtils.createStackSymbol("u");
+        StackSymbol<String> v = TestUtils.createStackSymbol("v");
+        StackSymbol<String> w = TestUtils.createStackSymbol("w");
+        StackSymbol<String> x = TestUtils.createStackSymbol("x");
+        StackSymbol<String> y = TestUtils.createStackSymbol("y");
+        StackSymbol<String> z = TestUtils.createStackSymbol("z");
+        Set<Rule<String, String>> rules = new HashSet<>();
+        // <b, y> and <c, z> are skipped
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(a, x), TestUtils.createNormalEndConfiguration(b, y)));
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(b, y), TestUtils.createNormalEndConfiguration(c, z)));
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(c, z), TestUtils.createNormalEndConfiguration(d, w)));
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(d, w), TestUtils.createPushEndConfiguration(e, w, v)));
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(e, v), TestUtils.createPopEndConfiguration(f)));
+        // <d, w> is also reached by this rule, so it is kept
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(f, w), TestUtils.createNormalEndConfiguration(d, w)));
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(f, u), TestUtils.createNormalEndConfiguration(a, x)));
+        PushdownSystem<String, String> pds = TestUtils.createPDS(rules);
+        Function<Rule<String, String>, String> stateNames = TestUtils.createGeneratedStateNames(pds);
+
+        PAutomaton<String, String> initial = new PAutomaton<>();
+        initial.addInitialState(a);
+        initial.addTransition(TestUtils.createTransition("a", "s", "x"));
+        initial.addFinalState(TestUtils.createControlLocation("s"));
+        CompressedPushdownSystem<String, String> compressed = CompressedPushdownSystem.compress(pds, initial);
+        assert compressed.getSkippedHeadCount() == 2;
+        assert compressed.getRules().size() == 5;
+        Poststar<String, String> poststar = new Poststar<>(compressed, initial, stateNames);
+        poststar.apply();
+        Poststar<String, String> reference = new Poststar<>(pds, initial, stateNames);
+        reference.apply();
+        assert poststar.getSaturatedAut().getTransitionRelation().size()
+                < reference.getSaturatedAut().getTransitionRelation().size();
+        assert compressed.expandPoststar(poststar.getSaturatedAut()).getTransitionRelation()
+                .equals(reference.getSaturatedAut().getTransitionRelation());
+
+        PAutomaton<String, String> target = new PAutomaton<>();
+        target.addTransition(TestUtils.createTransition("f", "t", "w"));
+        target.addFinalState(TestUtils.createControlLocation("t"));
+        compressed = CompressedPushdownSystem.compress(pds, target);
+        Prestar<String, String> prestar = new Prestar<>(compressed, target);
+        prestar.apply();
+        Prestar<String, String> referencePrestar = new Prestar<>(pds, target);
+        referencePrestar.apply();
+        assert compressed.expandPrestar(prestar.getSaturatedAut()).getTransitionRelation()
+                .equals(referencePrestar.getSaturatedAut().getTransitionRelation());
+        assert referencePrestar.getSaturatedAut().getTransitionRelation()
+                .contains(TestUtils.createTransition("b", "t", "y"));
+    }
+
+    @Test
+    public void testCompressionKeepsHeadsReachedThroughQuery() {
+        ControlLocation<String> p0 = TestUtils.createControlLocation("p0");
+        ControlLocation<String> p1 = TestUtils.createControlLocation("p1");
+        ControlLocation<String> q = TestUtils.createControlLocation("q");
+        ControlLocation<String> r1 = TestUtils.createControlLocation("r1");
+        ControlLocation<String> r2 = TestUtils.createControlLocation("r2");
+        ControlLocation<String> w = TestUtils.createControlLocation("w");
+        ControlLocation<String> x = TestUtils.createControlLocation("x");
+        ControlLocation<String> z = TestUtils.createControlLocation("z");
+        StackSymbol<String> a = TestUtils.createStackSymbol("a");
+        StackSymbol<String> b = TestUtils.createStackSymbol("b");
+        StackSymbol<String> c = TestUtils.createStackSymbol("c");
+        StackSymbol<String> d = TestUtils.createStackSymbol("d");
+        StackSymbol<String> v = TestUtils.createStackSymbol("v");
+        StackSymbol<String> y = TestUtils.createStackSymbol("y");
+        // <p1, b> has one normal rule in and one out, but the query leads to p1, so the epsilon transition of the pop
+        // copies its transitions to q. The pop is reached over two more heads so that <p1, b> is saturated first
+        Set<Rule<String, String>> rules = new HashSet<>();
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(x, y), TestUtils.createNormalEndConfiguration(p1, b)));
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(p1, b), TestUtils.createNormalEndConfiguration(z, c)));
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(p0, a), TestUtils.createNormalEndConfiguration(r1, a)));
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(w, a), TestUtils.createNormalEndConfiguration(r1, a)));
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(r1, a), TestUtils.createNormalEndConfiguration(r2, a)));
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(r2, a), TestUtils.createPopEndConfiguration(q)));
+        PushdownSystem<String, String> pds = TestUtils.createPDS(rules);
+        Function<Rule<String, String>, String> stateNames = TestUtils.createGeneratedStateNames(pds);
+        PAutomaton<String, String> initial = new PAutomaton<>();
+        initial.addInitialState(p0);
+        initial.addInitialState(x);
+        initial.addTransition(TestUtils.createTransition("p0", "p1", "a"));
+        initial.addTransition(TestUtils.createTransition("x", "s", "y"));
+        initial.addFinalState(TestUtils.createControlLocation("s"));
+        CompressedPushdownSystem<String, String> compressed = CompressedPushdownSystem.compress(pds, initial);
+        assert compressed.getSkippedHeadCount() == 0;
+        Poststar<String, String> poststar = new Poststar<>(compressed, initial, stateNames);
+        poststar.apply();
+        Poststar<String, String> reference = new Poststar<>(pds, initial, stateNames);
+        reference.apply();
+        assert reference.getSaturatedAut().getTransitionRelation()
+                .contains(TestUtils.createTransition("q", "s", "b"));
+        assert compressed.expandPoststar(poststar.getSaturatedAut()).getTransitionRelation()
+                .equals(reference.getSaturatedAut().getTransitionRelation());
+
+        // <p1, b> is read by the second step of the push in pre*
+        rules = new HashSet<>();
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(w, v), TestUtils.createNormalEndConfiguration(p1, b)));
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(p1, b), TestUtils.createNormalEndConfiguration(z, c)));
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(q, d), TestUtils.createPushEndConfiguration(p0, b, a)));
+        pds = TestUtils.createPDS(rules);
+        PAutomaton<String, String> target = new PAutomaton<>();
+        target.addTransition(TestUtils.createTransition("p0", "p1", "a"));
+        target.addTransition(TestUtils.createTransition("z", "t", "c"));
+        target.addFinalState(TestUtils.createControlLocation("t"));
+        compressed = CompressedPushdownSystem.compress(pds, target);
+        assert compressed.getSkippedHeadCount() == 0;
+        Prestar<String, String> prestar = new Prestar<>(compressed, target);
+        prestar.apply();
+        Prestar<String, String> referencePrestar = new Prestar<>(pds, target);
+        referencePrestar.apply();
+        assert referencePrestar.getSaturatedAut().getTransitionRelation()
+                .contains(TestUtils.createTransition("q", "t", "d"));
+        assert compressed.expandPrestar(prestar.getSaturatedAut()).getTransitionRelation()
+                .equals(referencePrestar.getSaturatedAut().getTransitionRelation());
+    }
+
+    @Test
+    public void testSymbolClasses() {
+        ControlLocation<String> p = TestUtils.createControlLocation("p");
+        ControlLocation<String> q = TestUtils.createControlLocation("q");
+        ControlLocation<String> r = TestUtils.createControlLocation("r");
+        StackSymbol<String> b = TestUtils.createStackSymbol("b");
+        Set<Rule<String, String>> rules = new HashSet<>();
+        PAutomaton<String, String> initial = new PAutomaton<>();
+        initial.addInitialState(p);
+        initial.addTransition(TestUtils.createTransition("s1", "s2", "z"));
+        initial.addFinalState(TestUtils.createControlLocation("s2"));
+        // a1, a2 and a3 are facts that the rules never distinguish
+        for (String name : List.of("a1", "a2", "a3")) {
+            StackSymbol<String> a = TestUtils.createStackSymbol(name);
+            rules.add(TestUtils.createRule(
+                    TestUtils.createStartConfiguration(p, a), TestUtils.createNormalEndConfiguration(q, a)));
+            rules.add(TestUtils.createRule(
+                    TestUtils.createStartConfiguration(q, a), TestUtils.createPopEndConfiguration(r)));
+            initial.addTransition(TestUtils.createTransition("p", "s1", name));
+        }
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(p, b), TestUtils.createNormalEndConfiguration(q, b)));
+        initial.addTransition(TestUtils.createTransition("p", "s1", "b"));
+        PushdownSystem<String, String> pds = TestUtils.createPDS(rules);
+
+        SymbolClasses<String, String> classes = SymbolClasses.compute(pds, initial);
+        assert classes.size() == 3;
+        assert classes.getSymbolClass(TestUtils.createStackSymbol("a2")).size() == 3;
+        assert classes.getSymbolClass(b).equals(Set.of(b));
+        assert classes.getQuotient().getRules().size() == 3;
+
+        Poststar<String, String> quotient =
+                new Poststar<>(classes.getQuotient(), classes.quotient(initial), Object::toString);
+        quotient.apply();
+        Poststar<String, String> reference = new Poststar<>(pds, initial, Object::toString);
+        reference.apply();
+        assert quotient.getSaturatedAut().getTransitionRelation().size() == 6;
+        assert classes.expand(quotient.getSaturatedAut()).getTransitionRelation()
+                .equals(reference.getSaturatedAut().getTransitionRelation());
+        assert classes.containsTransition(quotient.getSaturatedAut(), TestUtils.createTransition("q", "s1", "a3"));
+        assert !classes.containsTransition(quotient.getSaturatedAut(), TestUtils.createTransition("r", "s1", "b"));
+    }
+
+    @Test
+    public void testMinimize() {
+        // s1 and t1, as well as s2 and t2, accept the same words
+        PAutomaton<String, String> automaton = new PAutomaton<>();
+        automaton.addInitialState(TestUtils.createControlLocation("p"));
+        automaton.addInitialState(TestUtils.createControlLocation("q"));
+        automaton.addTransition(TestUtils.createTransition("p", "s1", "a"));
+        automaton.addTransition(TestUtils.createTransition("p", "t1", "a"));
+        automaton.addTransition(TestUtils.createTransition("q", "t1", "b"));
+        automaton.addTransition(TestUtils.createTransition("s1", "s2", "c"));
+        automaton.addTransition(TestUtils.createTransition("t1", "t2", "c"));
+        automaton.addTransition(TestUtils.createTransition("s2", "s2", "c"));
+        automaton.addTransition(TestUtils.createTransition("t2", "t2", "c"));
+        automaton.addFinalState(TestUtils.createControlLocation("s2"));
+        automaton.addFinalState(TestUtils.createControlLocation("t2"));
+        PAutomaton<String, String> minimized = automaton.minimize();
+        assert minimized.getAllStates().size() == 4;
+        assert minimized.getTransitionRelation().size() == 4;
+        assert minimized.getInitialStates().equals(automaton.getInitialStates());
+        assert minimized.acceptedConfigurations(6).collect(Collectors.toSet())
+                .equals(automaton.acceptedConfigurations(6).collect(Collectors.toSet()));
+
+        // The initial state r accepts the same words as s1, t1 and s3, but no transition may lead into r
+        automaton.addInitialState(TestUtils.createControlLocation("r"));
+        automaton.addTransition(TestUtils.createTransition("r", "s2", "c"));
+        automaton.addTransition(TestUtils.createTransition("s3", "s2", "c"));
+        automaton.addTransition(TestUtils.createTransition("q", "s3", "d"));
+        PAutomaton<String, String> merged = automaton.minimize();
+        assert merged.getTransitionRelation().stream()
+                .noneMatch(transition -> merged.getInitialStates().contains(transition.getEndState()));
+        assert merged.acceptedConfigurations(6).collect(Collectors.toSet())
+                .equals(automaton.acceptedConfigurations(6).collect(Collectors.toSet()));
+
+        Poststar<String, String> poststar = new Poststar<>(pushAndPopPDS, initialAut, generatedStateNames);
+        poststar.apply();
+        PAutomaton<String, String> saturated = poststar.getSaturatedAut();
+        minimized = saturated.minimize();
+        assert minimized.getTransitionRelation().size() <= saturated.getTransitionRelation().size();
+        assert minimized.acceptedConfigurations(6).collect(Collectors.toSet())
+                .equals(saturated.acceptedConfigurations(6).collect(Collectors.toSet()));
+    }
+
+    @Test
+    public void testTrimming() {
+        Poststar<String, String> reference = new Poststar<>(pushAndPopPDS, initialAut, generatedStateNames);
+        reference.apply();
+        Prestar<String, String> referencePrestar = new Prestar<>(pushAndPopPDS, initialAut);
+        referencePrestar.apply();
+
+        // "dead" cannot reach a final state and "u" cannot be reached from a control location
+        initialAut.addTransition(TestUtils.createTransition("s1", "dead", "g0"));
+        initialAut.addTransition(TestUtils.createTransition("p0", "dead", "g2"));
+        initialAut.addTransition(TestUtils.createTransition("u", "s2", "g1"));
+        Poststar<String, String> poststar = new Poststar<>(pushAndPopPDS, initialAut, generatedStateNames);
+        poststar.enableTrimming();
+        poststar.apply();
+        assert poststar.getSaturatedAut().getTransitionRelation()
+                .equals(reference.getSaturatedAut().getTransitionRelation());
+        assert !poststar.getSaturatedAut().getAllStates().contains(TestUtils.createControlLocation("dead"));
+        assert !poststar.getSaturatedAut().getAllStates().contains(TestUtils.createControlLocation("u"));
+
+        Prestar<String, String> prestar = new Prestar<>(pushAndPopPDS, initialAut);
+        prestar.enableTrimming();
+        prestar.apply();
+        assert prestar.getSaturatedAut().getTransitionRelation()
+                .equals(referencePrestar.getSaturatedAut().getTransitionRelation());
+
+        // Only configurations at p2 are of interest. Listeners see the removals
+        Set<PAutomaton.Transition<String, String>> transitions = new HashSet<>();
+        Set<ControlLocation<String>> finalStates = new HashSet<>();
+        prestar = new Prestar<>(pushAndPopPDS, initialAut);
+        prestar.enableTrimming(Set.of(TestUtils.createControlLocation("p2")));
+        prestar.addListener(new SaturationListener<>() {
+            @Override
+            public void transitionAdded(PAutomaton.Transition<String, String> transition) {
+                assert transitions.add(transition);
+            }
+
+            @Override
+            public void transitionRemoved(PAutomaton.Transition<String, String> transition) {
+                assert transitions.remove(transition);
+            }
+
+            @Override
+            public void finalStateAdded(ControlLocation<String> state) {
+                assert finalStates.add(state);
+            }
+
+            @Override
+            public void finalStateRemoved(ControlLocation<String> state) {
+                assert finalStates.remove(state);
+            }
+        });
+        prestar.apply();
+        assert prestar.getSaturatedAut().getTransitionRelation().size() == 5;
+        assert prestar.getSaturatedAut().getTransitionRelation()
+                .contains(TestUtils.createTransition("p2", "p0", "g2"));
+        assert transitions.equals(prestar.getSaturatedAut().getTransitionRelation());
+        assert finalStates.equals(prestar.getSaturatedAut().getFinalStates());
+    }
+
+    @Test
+    public void testStepwiseSaturation() {
+        Poststar<String, String> poststar = new Poststar<>(pushAndPopPDS, initialAut, generatedStateNames);
+        int slices = 1;
+        while (!poststar.step(1)) {
+            assert !poststar.isFixpointReached();
+            slices++;
+        }
+        assert slices > 1;
+        assert poststar.isFixpointReached();
+        assert poststar.getSaturatedAut().getTransitionRelation().size() == 9;
+
+        Prestar<String, String> prestar = new Prestar<>(pushAndPopPDS, initialAut);
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        assert !prestar.apply(token);
+        assert !prestar.apply(Duration.ZERO);
+        assert prestar.apply(Duration.ofMinutes(1), new CancellationToken());
+        assert prestar.getSaturatedAut().getTransitionRelation().size() == 7;
+
+        // Rules that never arrive must not keep a demand-driven query past its deadline
+        AsyncBackwardFlowFunctions<String, String> unresponsive = currentLocation -> new CompletableFuture<>();
+        DemandPreStar<String, String> demandPrestar = new DemandPreStar<>(unresponsive, initialAut);
+        assert !demandPrestar.apply(Duration.ofMillis(50));
+        assert !demandPrestar.isFixpointReached();
+    }
+
+    @Test
+    public void testSymbolicPoststar() {
+        ControlLocation<String> p0 = TestUtils.createControlLocation("p0");
+        ControlLocation<String> p1 = TestUtils.createControlLocation("p1");
+        ControlLocation<String> p2 = TestUtils.createControlLocation("p2");
+        StackAlphabet<String> alphabet = new StackAlphabet<>();
+        SymbolSet g0 = alphabet.setOf(TestUtils.createStackSymbol("g0"));
+        SymbolSet g1 = alphabet.setOf(TestUtils.createStackSymbol("g1"));
+        SymbolSet g2 = alphabet.setOf(TestUtils.createStackSymbol("g2"));
+
+        // The CAV00 example from build(), with one symbol per rule
+        Set<SymbolicRule<String>> rules = new HashSet<>();
+        rules.add(SymbolicRule.push(p0, g0, p1, g1, g0));
+        rules.add(SymbolicRule.push(p1, g1, p2, g2, g0));
+        rules.add(SymbolicRule.normal(p2, g2, p0, g1));
+        rules.add(SymbolicRule.pop(p0, g1, p0));
+        SymbolicPoststar<String, String> poststar = new SymbolicPoststar<>(
+                createSymbolicPDS(rules, alphabet),
+                initialAut,
+                rule -> "m" + rule.getStartLocation()
+        );
+        poststar.apply();
+        PAutomaton<String, String> expanded = poststar.getSaturatedAut().expand();
+        assert expanded.getTransitionRelation().size() == 9;
+        assert expanded.getTransitionRelation().contains(TestUtils.createTransition("s1", "s2", "g0"));
+        assert expanded.getTransitionRelation().contains(TestUtils.createTransition("p0", "s1", "g0"));
+
+        // An identity rule over a large alphabet stays a single rule and a single pair of states
+        StackAlphabet<String> facts = new StackAlphabet<>();
+        for (int i = 0; i < 100000; i++) {
+            facts.add(TestUtils.createStackSymbol("d" + i));
+        }
+        ControlLocation<String> p3 = TestUtils.createControlLocation("p3");
+        ControlLocation<String> s = TestUtils.createControlLocation("s");
+        Set<SymbolicRule<String>> identityRules = new HashSet<>();
+        identityRules.add(SymbolicRule.identity(p0, facts.all(), p1));
+        identityRules.add(SymbolicRule.identity(p1, SymbolSet.range(0, 50000), p2));
+        identityRules.add(SymbolicRule.pushKeepingSymbol(p2, facts.all(), p3, facts.setOf(
+                TestUtils.createStackSymbol("d0")
+        )));
+        PAutomaton<String, String> aut = new PAutomaton<>();
+        for (int i = 0; i < 100000; i++) {
+            aut.addTransition(p0, s, facts.symbolAt(i));
+        }
+        aut.addInitialState(p0);
+        aut.addFinalState(s);
+        SymbolicPoststar<String, String> identityPoststar = new SymbolicPoststar<>(
+                createSymbolicPDS(identityRules, facts),
+                aut,
+                rule -> "m" + rule.getStartLocation()
+        );
+        identityPoststar.apply();
+        SymbolicPAutomaton<String, String> saturated = identityPoststar.getSaturatedAut();
+        assert saturated.getLabels(p1, s).size() == 100000;
+        assert saturated.getLabels(p2, s).equals(SymbolSet.range(0, 50000));
+        assert saturated.getLabels(identityPoststar.createGeneratedStateFromRule(
+                SymbolicRule.pushKeepingSymbol(p2, facts.all(), p3, SymbolSet.of(0))
+        ), s).intervalCount() == 1;
+        assert saturated.containsTransition(p3, identityPoststar.createGeneratedStateFromRule(
+                SymbolicRule.pushKeepingSymbol(p2, facts.all(), p3, SymbolSet.of(0))
+        ), facts.symbolAt(0));
+        assert saturated.getStatePairCount() == 5;
+    }
+
+    private static SymbolicPushdownSystem<String, String> createSymbolicPDS(
+            Set<SymbolicRule<String>> rules,
+            StackAlphabet<String> alphabet
+    ) {
+        return new SymbolicPushdownSystem<>() {
+            @Override
+            public Set<SymbolicRule<String>> getRules() {
+                return rules;
+            }
+
+            @Override
+            public StackAlphabet<String> getAlphabet() {
+                return alphabet;
+            }
+        };
+    }
+
+    @Test
+    public void testWildcardRulesInHashBasedEngines() {
+        ControlLocation<String> a = TestUtils.createControlLocation("a");
+        ControlLocation<String> b = TestUtils.createControlLocation("b");
+        ControlLocation<String> c = TestUtils.createControlLocation("c");
+        ControlLocation<String> d = TestUtils.createControlLocation("d");
+        StackSymbol<String> f = TestUtils.createStackSymbol("f");
+        StackSymbol<String> w = TestUtils.getWildcardStackSymbol();
+
+        // An identity transfer, a push of f that keeps the current symbol below it, and a pop of f
+        Set<Rule<String, String>> rules = new HashSet<>();
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(a, w),
+                TestUtils.createNormalEndConfiguration(b, w)
+        ));
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(b, w),
+                TestUtils.createPushEndConfiguration(c, w, f)
+        ));
+        rules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(c, f),
+                TestUtils.createPopEndConfiguration(d)
+        ));
+        PushdownSystem<String, String> pds = TestUtils.createPDS(rules);
+        FastLookupRuleMap<String, String> fastLookupRuleMap = new FastLookupRuleMap<>(pds);
+
+        PAutomaton<String, String> forwardAut = new PAutomaton<>();
+        forwardAut.addTransition(TestUtils.createTransition("a", "s", "x"));
+        forwardAut.addTransition(TestUtils.createTransition("a", "s", "y"));
+        forwardAut.addInitialState(a);
+        forwardAut.addFinalState(TestUtils.createControlLocation("s"));
+        Function<Rule<String, String>, String> stateNames = TestUtils.createGeneratedStateNames(pds);
+        Poststar<String, String> poststar = new Poststar<>(pds, forwardAut, stateNames);
+        poststar.apply();
+        Poststar<String, String> hashBasedPoststar =
+                new HashBasedPostStar<>(pds, forwardAut, stateNames, fastLookupRuleMap);
+        hashBasedPoststar.apply();
+        Set<PAutomaton.Transition<String, String>> forward = hashBasedPoststar.getSaturatedAut().getTransitionRelation();
+        assert forward.equals(poststar.getSaturatedAut().getTransitionRelation());
+        assert forward.contains(TestUtils.createTransition("b", "s", "x"));
+        assert forward.contains(TestUtils.createTransition("d", "s", "x"));
+        assert forward.contains(TestUtils.createTransition("d", "s", "y"));
+
+        PAutomaton<String, String> backwardAut = new PAutomaton<>();
+        backwardAut.addTransition(TestUtils.createTransition("d", "s", "x"));
+        backwardAut.addInitialState(d);
+        backwardAut.addFinalState(TestUtils.createControlLocation("s"));
+        Prestar<String, String> prestar = new Prestar<>(pds, backwardAut);
+        prestar.apply();
+        Prestar<String, String> hashBasedPrestar = new HashBasedPreStar<>(pds, backwardAut, fastLookupRuleMap);
+        hashBasedPrestar.apply();
+        Set<PAutomaton.Transition<String, String>> backward = hashBasedPrestar.getSaturatedAut().getTransitionRelation();
+        assert backward.equals(prestar.getSaturatedAut().getTransitionRelation());
+        assert backward.contains(TestUtils.createTransition("b", "s", "x"));
+        assert backward.contains(TestUtils.createTransition("a", "s", "x"));
+        assert !backward.contains(TestUtils.createTransition("a", "s", "y"));
+    }
+
+    @Test
+    public void testProcedureSummaries() throws IOException {
+        ControlLocation<String> a = TestUtils.createControlLocation("a");
+        ControlLocation<String> b = TestUtils.createControlLocation("b");
+        ControlLocation<String> l0 = TestUtils.createControlLocation("l0");
+        ControlLocation<String> l1 = TestUtils.createControlLocation("l1");
+        ControlLocation<String> l2 = TestUtils.createControlLocation("l2");
+        ControlLocation<String> ret = TestUtils.createControlLocation("ret");
+        StackSymbol<String> x = TestUtils.createStackSymbol("x");
+        StackSymbol<String> y = TestUtils.createStackSymbol("y");
+        StackSymbol<String> r = TestUtils.createStackSymbol("r");
+        StackSymbol<String> e = TestUtils.createStackSymbol("e");
+        StackSymbol<String> e2 = TestUtils.createStackSymbol("e2");
+        StackSymbol<String> g = TestUtils.createStackSymbol("g");
+
+        // A library procedure entered at <l0, e> that calls an internal helper before returning to ret
+        Set<Rule<String, String>> libraryRules = new HashSet<>();
+        libraryRules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(l0, e),
+                TestUtils.createPushEndConfiguration(l1, e2, g)
+        ));
+        libraryRules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(l1, g),
+                TestUtils.createPopEndConfiguration(l2)
+        ));
+        libraryRules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(l2, e2),
+                TestUtils.createPopEndConfiguration(ret)
+        ));
+        Set<Rule<String, String>> applicationRules = new HashSet<>();
+        applicationRules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(a, x),
+                TestUtils.createPushEndConfiguration(l0, r, e)
+        ));
+        applicationRules.add(TestUtils.createRule(
+                TestUtils.createStartConfiguration(ret, r),
+                TestUtils.createNormalEndConfiguration(b, y)
+        ));
+        Set<Rule<String, String>> rules = new HashSet<>(libraryRules);
+        rules.addAll(applicationRules);
+        PushdownSystem<String, String> pds = TestUtils.createPDS(rules);
+        Function<Rule<String, String>, String> stateNames = rule ->
+                "m" + rule.getStartConfiguration().getControlLocation().unwrap();
+
+        PAutomaton<String, String> aut = new PAutomaton<>();
+        aut.addTransition(TestUtils.createTransition("a", "s", "x"));
+        aut.addInitialState(a);
+        aut.addFinalState(TestUtils.createControlLocation("s"));
+
+        Poststar<String, String> poststar = new Poststar<>(pds, aut, stateNames);
+        poststar.apply();
+
+        Multimap<ControlLocation<String>, StackSymbol<String>> entries = HashMultimap.create();
+        entries.put(l0, e);
+        ProcedureSummaries<String, String> summaries =
+                ProcedureSummaries.compute(TestUtils.createPDS(libraryRules), entries, stateNames);
+        assert summaries.size() == 1;
+        assert summaries.isSummarized(l1);
+        assert !summaries.isSummarized(ret);
+        Poststar<String, String> summarized = new Poststar<>(pds, aut, stateNames);
+        summarized.setProcedureSummaries(summaries);
+        summarized.apply();
+        assert summarized.getSaturatedAut().getTransitionRelation()
+                .equals(poststar.getSaturatedAut().getTransitionRelation());
+
+        Path file = Files.createTempFile("library", ".summaries");
+        try {
+            summaries.write(file, TestUtils.createCheckpointCodec());
+            // The library rules are no longer needed once their summaries are loaded
+            Poststar<String, String> loaded =
+                    new Poststar<>(TestUtils.createPDS(applicationRules), aut, stateNames);
+            loaded.setProcedureSummaries(ProcedureSummaries.read(file, TestUtils.createCheckpointCodec()));
+            loaded.apply();
+            Set<PAutomaton.Transition<String, String>> relation = loaded.getSaturatedAut().getTransitionRelation();
+            assert relation.size() == poststar.getSaturatedAut().getTransitionRelation().size();
+            assert relation.contains(TestUtils.createTransition(ret, TestUtils.createControlLocation("s"), r));
+            assert relation.contains(TestUtils.createTransition(b, TestUtils.createControlLocation("s"), y));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testWeightedSaturation() {
+        // Shortest number of rule applications
+        Semiring<Integer> minPlus = new Semiring<>() {
+            @Override
+            public Integer zero() {
+                return Integer.MAX_VALUE;
+            }
+
+            @Override
+            public Integer one() {
+                return 0;
+            }
+
+            @Override
+            public Integer combine(Integer a, Integer b) {
+                return Math.min(a, b);
+            }
+
+            @Override
+            public Integer extend(Integer a, Integer b) {
+                return a == Integer.MAX_VALUE || b == Integer.MAX_VALUE ? Integer.MAX_VALUE : a + b;
+            }
+        };
+        WeightedPushdownSystem<String, String, Integer> wpds = new WeightedPushdownSystem<>() {
+            @Override
+            public Set<Rule<String, String>> getRules() {
+                return pushAndPopPDS.getRules();
+            }
+
+            @Override
+            public Integer getWeight(Rule<String, String> rule) {
+                return 1;
+            }
+        };
+        ControlLocation<String> p0 = TestUtils.createControlLocation("p0");
+        ControlLocation<String> p1 = TestUtils.createControlLocation("p1");
+        ControlLocation<String> p2 = TestUtils.createControlLocation("p2");
+        StackSymbol<String> g0 = TestUtils.createStackSymbol("g0");
+        StackSymbol<String> g1 = TestUtils.createStackSymbol("g1");
+        StackSymbol<String> g2 = TestUtils.createStackSymbol("g2");
+
+        WeightedPoststar<String, String, Integer> poststar =
+                new WeightedPoststar<>(wpds, initialAut, minPlus, generatedStateNames);
+        poststar.apply();
+        WeightedPAutomaton<String, String, Integer> post = poststar.getSaturatedAut();
+        assert post.getTransitionRelation().size() == 9;
+        assert post.getWeight(p0, List.of(g0, g0)) == 0;
+        assert post.getWeight(p1, List.of(g1, g0, g0)) == 1;
+        assert post.getWeight(p2, List.of(g2, g0, g0, g0)) == 2;
+        assert post.getWeight(p0, List.of(g1, g0, g0, g0)) == 3;
+        assert post.getWeight(p0, List.of(g0, g0, g0)) == 4;
+        assert post.getWeight(p1, List.of(g0, g0)) == Integer.MAX_VALUE;
+
+        WeightedPrestar<String, String, Integer> prestar = new WeightedPrestar<>(wpds, initialAut, minPlus);
+        prestar.apply();
+        WeightedPAutomaton<String, String, Integer> pre = prestar.getSaturatedAut();
+        Prestar<String, String> referencePrestar = new Prestar<>(pushAndPopPDS, initialAut);
+        referencePrestar.apply();
+        assert pre.getTransitionRelation().equals(referencePrestar.getSaturatedAut().getTransitionRelation());
+        assert pre.getWeight(p0, List.of(g0, g0)) == 0;
+        assert pre.getWeight(p0, List.of(g1, g0, g0)) == 1;
+        assert pre.getWeight(p2, List.of(g2, g0, g0)) == 2;
+        assert pre.getWeight(p1, List.of(g1, g0)) == 3;
+        assert pre.getWeight(p0, List.of(g0)) == 4;
+
+        // Weighted saturation can run in slices as well, and ends with the same weights
+        WeightedPoststar<String, String, Integer> stepwise =
+                new WeightedPoststar<>(wpds, initialAut, minPlus, generatedStateNames);
+        int slices = 1;
+        while (!stepwise.step(1)) {
+            assert !stepwise.isFixpointReached();
+            slices++;
+        }
+        assert slices > 1;
+        assert stepwise.isFixpointReached();
+        assert stepwise.getSaturatedAut().getTransitionRelation().equals(post.getTransitionRelation());
+        for (PAutomaton.Transition<String, String> transition : post.getTransitionRelation()) {
+            assert stepwise.getSaturatedAut().getWeight(transition).equals(post.getWeight(transition));
+        }
+        WeightedPrestar<String, String, Integer> cancelled = new WeightedPrestar<>(wpds, initialAut, minPlus);
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        assert !cancelled.apply(token);
+        assert !cancelled.apply(Duration.ZERO);
+        assert !cancelled.isFixpointReached();
+        assert cancelled.apply(Duration.ofMinutes(1), new CancellationToken());
+        assert cancelled.getSaturatedAut().getWeight(p0, List.of(g0)) == 4;
+    }
+
+    @Test
+    public void testMultiQuerySaturation() {
+        PAutomaton<String, String> otherAut = new PAutomaton<>();
+        otherAut.addInitialState(TestUtils.createControlLocation("p1"));
+        otherAut.addFinalState(TestUtils.createControlLocation("s"));
+        otherAut.addTransition(TestUtils.createTransition("p1", "s", "g1"));
+        // p0 is initial in the other queries, but not here, so no rule applies to the transition leaving it
+        PAutomaton<String, String> innerAut = new PAutomaton<>();
+        innerAut.addInitialState(TestUtils.createControlLocation("p1"));
+        innerAut.addFinalState(TestUtils.createControlLocation("s"));
+        innerAut.addTransition(TestUtils.createTransition("p1", "p0", "g1"));
+        innerAut.addTransition(TestUtils.createTransition("p0", "s", "g0"));
+        List<PAutomaton<String, String>> queries = List.of(initialAut, otherAut, new PAutomaton<>(), innerAut);
+
+        MultiQueryPoststar<String, String> poststar =
+                new MultiQueryPoststar<>(pushAndPopPDS, queries, generatedStateNames);
+        poststar.apply();
+        assert poststar.getQueryCount() == 4;
+        for (int query = 0; query < queries.size(); query++) {
+            Poststar<String, String> single =
+                    new Poststar<>(pushAndPopPDS, queries.get(query), generatedStateNames);
+            single.apply();
+            // Generated states of different engines are not equal unless they are renamed
+            PAutomaton<String, String> demultiplexed =
+                    poststar.getSaturatedAut(query, single::createGeneratedStateFromRule);
+            assert demultiplexed.getTransitionRelation().equals(single.getSaturatedAut().getTransitionRelation());
+            assert demultiplexed.getFinalStates().equals(single.getSaturatedAut().getFinalStates());
+            assert poststar.getSaturatedAut(query).getTransitionRelation().size()
+                    == single.getSaturatedAut().getTransitionRelation().size();
+        }
+        // Transitions to generated states are added up front and belong to all queries
+        assert poststar.getQueries(TestUtils.createTransition(
+                TestUtils.createControlLocation("p1"),
+                poststar.createGeneratedStateFromRule(stateGeneratingRuleM1),
+                "g1"
+        )).cardinality() == 4;
+
+        MultiQueryPrestar<String, String> prestar = new MultiQueryPrestar<>(pushAndPopPDS, queries);
+        prestar.apply();
+        for (int query = 0; query < queries.size(); query++) {
+            Prestar<String, String> single = new Prestar<>(pushAndPopPDS, queries.get(query));
+            single.apply();
+            assert prestar.getSaturatedAut(query).getTransitionRelation()
+                    .equals(single.getSaturatedAut().getTransitionRelation());
+        }
+        // Pop rules apply in every query
+        assert prestar.getQueries(TestUtils.createTransition("p0", "p0", "g1")).cardinality() == 4;
+        assert prestar.getQueries(TestUtils.createTransition("p0", "s1", "g0")).equals(BitSet.valueOf(new long[]{1}));
+    }
+
+    @Test
+    public void testSaturationListener() throws Exception {
+        Set<PAutomaton.Transition<String, String>> transitions = new HashSet<>();
+        Set<ControlLocation<String>> finalStates = new HashSet<>();
+        AtomicInteger fixpoints = new AtomicInteger();
+        Poststar<String, String> poststar = new Poststar<>(pushAndPopPDS, initialAut, generatedStateNames);
+        poststar.addListener(new SaturationListener<>() {
+            @Override
+            public void transitionAdded(PAutomaton.Transition<String, String> transition) {
+                assert transitions.add(transition);
+            }
+
+            @Override
+            public void finalStateAdded(ControlLocation<String> state) {
+                assert finalStates.add(state);
+            }
+
+            @Override
+            public void fixpointReached() {
+                fixpoints.incrementAndGet();
+            }
+        });
+        poststar.apply();
+        assert transitions.equals(poststar.getSaturatedAut().getTransitionRelation());
+        assert finalStates.equals(poststar.getSaturatedAut().getFinalStates());
+        assert fixpoints.get() == 1;
+
+        // A slow consumer behind a queue of a single change
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Set<PAutomaton.Transition<String, String>> streamed = ConcurrentHashMap.newKeySet();
+            Set<Rule<String, String>> generatedRules = ConcurrentHashMap.newKeySet();
+            AsyncSaturationListener<String, String> async = new AsyncSaturationListener<>(new SaturationListener<>() {
+                @Override
+                public void transitionAdded(PAutomaton.Transition<String, String> transition) {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    streamed.add(transition);
+                }
+
+                @Override
+                public void ruleGenerated(Rule<String, String> rule) {
+                    generatedRules.add(rule);
+                }
+            }, 1, executor);
+            Prestar<String, String> prestar = new Prestar<>(pushAndPopPDS, initialAut);
+            prestar.addListener(async);
+            prestar.apply();
+            async.getCompletion().get(1, TimeUnit.MINUTES);
+            assert streamed.equals(prestar.getSaturatedAut().getTransitionRelation());
+            assert !generatedRules.isEmpty();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSaturationFacade() {
+        SaturationOptions<String, String> options = new SaturationOptions<String, String>()
+                .setGeneratedStateIdentifierFunction(generatedStateNames);
+
+        // A system this small is not worth indexing
+        SaturationEngine<String, String> engine = Saturation.poststarEngine(pushAndPopPDS, initialAut, options);
+        assert engine instanceof Poststar && !(engine instanceof HashBasedPostStar);
+        Poststar<String, String> poststar = new Poststar<>(pushAndPopPDS, initialAut, generatedStateNames);
+        poststar.apply();
+        assert Saturation.poststar(pushAndPopPDS, initialAut, options).getTransitionRelation()
+                .equals(poststar.getSaturatedAut().getTransitionRelation());
+        Prestar<String, String> prestar = new Prestar<>(pushAndPopPDS, initialAut);
+        prestar.apply();
+        assert Saturation.prestar(pushAndPopPDS, initialAut, options).getTransitionRelation()
+                .equals(prestar.getSaturatedAut().getTransitionRelation());
+
+        // Batches larger than the number of cores are saturated together, smaller ones in parallel. The results are the
+        // same either way, generated states included
+        PAutomaton<String, String> otherAut = new PAutomaton<>();
+        otherAut.addInitialState(TestUtils.createControlLocation("p1"));
+        otherAut.addFinalState(TestUtils.createControlLocation("s"));
+        otherAut.addTransition(TestUtils.createTransition("p1", "s", "g1"));
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int size : new int[]{2, cores + 1}) {
+            List<PAutomaton<String, String>> queries = Stream.iterate(0, i -> i + 1).limit(size)
+                    .map(i -> i % 2 == 0 ? initialAut : otherAut)
+                    .collect(Collectors.toList());
+            List<PAutomaton<String, String>> poststars = Saturation.poststar(pushAndPopPDS, queries, options);
+            List<PAutomaton<String, String>> prestars = Saturation.prestar(pushAndPopPDS, queries, options);
+            assert poststars.size() == size && prestars.size() == size;
+            for (int query = 0; query < size; query++) {
+                Poststar<String, String> single =
+                        new Poststar<>(pushAndPopPDS, queries.get(query), generatedStateNames);
+                single.apply();
+                assert poststars.get(query).getTransitionRelation()
+                        .equals(single.getSaturatedAut().getTransitionRelation());
+                Prestar<String, String> singlePrestar = new Prestar<>(pushAndPopPDS, queries.get(query));
+                singlePrestar.apply();
+                assert prestars.get(query).getTransitionRelation()
+                        .equals(singlePrestar.getSaturatedAut().getTransitionRelation());
+            }
+        }
+
+        // Post-* cannot name its generated states without the function
+        try {
+            Saturation.poststar(pushAndPopPDS, initialAut, new SaturationOptions<>());
+            assert false;
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
 }
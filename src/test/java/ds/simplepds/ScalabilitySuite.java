@@ -0,0 +1,371 @@
+package ds.simplepds;
+
+import ds.simplepds.automata.FastLookupRuleMap;
+import ds.simplepds.automata.HashBasedPostStar;
+import ds.simplepds.automata.HashBasedPreStar;
+import ds.simplepds.automata.PAutomaton;
+import ds.simplepds.automata.Poststar;
+import ds.simplepds.automata.Prestar;
+import ds.simplepds.automata.demand.BackwardFlowFunctions;
+import ds.simplepds.automata.demand.DemandPostStar;
+import ds.simplepds.automata.demand.DemandPreStar;
+import ds.simplepds.automata.demand.ForwardFlowFunctions;
+import ds.simplepds.interfaces.ControlLocation;
+import ds.simplepds.interfaces.PushdownSystem;
+import ds.simplepds.interfaces.Rule;
+import ds.simplepds.interfaces.StackSymbol;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Sweeps generated pushdown systems of growing size across all engines and records wall time, allocation and retained
+ * size of each saturation. The growth of each metric is summarized by its scaling exponent, the slope of the metric
+ * over the number of rules on a log-log scale, and compared against scalability-baseline.properties. The suite fails
+ * when an exponent exceeds its baseline by more than the threshold of its metric.
+ *
+ * Run with ./gradlew scalabilityTest. The sizes, threshold and heap can be set with -Pscalability.sizes=1000,10000,
+ * -Pscalability.threshold=0.25 (for all metrics) and -Pscalability.heap=16g. With -Pscalability.updateBaseline=true the measured
+ * exponents are written to the report directory, to be copied over the baseline.
+ */
+@Tag("scalability")
+public class ScalabilitySuite {
+
+    private static final String BASELINE = "scalability-baseline.properties";
+    // Statements per generated procedure, each of which has two calls
+    private static final int PROCEDURE_LENGTH = 8;
+    private static final List<String> FACTS = List.of("p0", "p1");
+
+    @Test
+    public void sweep() throws IOException {
+        int[] sizes = Arrays.stream(System.getProperty("scalability.sizes", "1000,2000,4000").split(","))
+                .mapToInt(size -> Integer.parseInt(size.trim()))
+                .sorted()
+                .toArray();
+        int repetitions = Integer.getInteger("scalability.repetitions", 3);
+        String threshold = System.getProperty("scalability.threshold");
+        Path reportDir = Path.of(System.getProperty("scalability.reportDir", "build/reports/scalability"));
+        Files.createDirectories(reportDir);
+
+        Map<String, Function<Scenario, PAutomaton<String, String>>> engines = engines();
+        // Let the JIT compile the engines before anything is measured
+        Scenario warmup = new Scenario(sizes[0]);
+        engines.values().forEach(engine -> engine.apply(warmup));
+
+        Map<String, List<Measurement>> measurements = new LinkedHashMap<>();
+        for (int size : sizes) {
+            Scenario scenario = new Scenario(size);
+            for (Map.Entry<String, Function<Scenario, PAutomaton<String, String>>> engine : engines.entrySet()) {
+                measurements.computeIfAbsent(engine.getKey(), name -> new ArrayList<>())
+                        .add(measure(engine.getValue(), scenario, repetitions));
+            }
+        }
+
+        Properties baseline = new Properties();
+        try (InputStream in = ScalabilitySuite.class.getResourceAsStream(BASELINE)) {
+            if (in != null) {
+                baseline.load(in);
+            }
+        }
+        Properties measured = new Properties();
+        List<String> regressions = new ArrayList<>();
+        try (Writer csv = Files.newBufferedWriter(reportDir.resolve("sweep.csv"));
+             PrintWriter summary = new PrintWriter(Files.newBufferedWriter(reportDir.resolve("summary.txt")))) {
+            csv.write("engine,rules,transitions,timeMillis,allocatedBytes,retainedBytes,localTimeExponent\n");
+            for (Map.Entry<String, List<Measurement>> entry : measurements.entrySet()) {
+                List<Measurement> points = entry.getValue();
+                for (int i = 0; i < points.size(); i++) {
+                    Measurement point = points.get(i);
+                    // A local exponent well above the overall one shows where a superlinear term starts to dominate
+                    String local = i == 0 ? "" : String.format("%.2f",
+                            exponent(points.subList(i - 1, i + 1), Metric.TIME));
+                    csv.write(String.format("%s,%d,%d,%.3f,%d,%d,%s%n", entry.getKey(), point.rules,
+                            point.transitions, point.nanos / 1e6, point.allocatedBytes, point.retainedBytes, local));
+                }
+                for (Metric metric : Metric.values()) {
+                    String key = entry.getKey() + "." + metric.key;
+                    double exponent = exponent(points, metric);
+                    if (Double.isNaN(exponent)) {
+                        continue;
+                    }
+                    measured.setProperty(key, String.format("%.2f", exponent));
+                    String expected = baseline.getProperty(key);
+                    String verdict = "no baseline";
+                    if (expected != null) {
+                        double allowed = threshold != null ? Double.parseDouble(threshold) : metric.threshold;
+                        boolean regressed = exponent > Double.parseDouble(expected) + allowed;
+                        verdict = (regressed ? "REGRESSED" : "ok") + ", baseline " + expected;
+                        if (regressed) {
+                            regressions.add(String.format("%s: %.2f (baseline %s, threshold %.2f)", key, exponent,
+                                    expected, allowed));
+                        }
+                    }
+                    summary.printf("%-32s %.2f  %s%n", key, exponent, verdict);
+                }
+            }
+        }
+        if (Boolean.getBoolean("scalability.updateBaseline")) {
+            try (Writer out = Files.newBufferedWriter(reportDir.resolve(BASELINE))) {
+                measured.store(out, "Scaling exponents for sizes " + Arrays.toString(sizes));
+            }
+        }
+        assert regressions.isEmpty() : "Scaling regressed: " + regressions;
+    }
+
+    private static Map<String, Function<Scenario, PAutomaton<String, String>>> engines() {
+        Map<String, Function<Scenario, PAutomaton<String, String>>> engines = new LinkedHashMap<>();
+        engines.put("Poststar", scenario -> {
+            Poststar<String, String> poststar =
+                    new Poststar<>(scenario.pds, scenario.initialAut, ScalabilitySuite::generatedStateName);
+            poststar.apply();
+            return poststar.getSaturatedAut();
+        });
+        engines.put("HashBasedPostStar", scenario -> {
+            Poststar<String, String> poststar = new HashBasedPostStar<>(scenario.pds, scenario.initialAut,
+                    ScalabilitySuite::generatedStateName, new FastLookupRuleMap<>(scenario.pds));
+            poststar.apply();
+            return poststar.getSaturatedAut();
+        });
+        engines.put("DemandPostStar", scenario -> {
+            ForwardFlowFunctions<String, String> flowFunctions = scenario.rulesByStart::get;
+            DemandPostStar<String, String> poststar =
+                    new DemandPostStar<>(flowFunctions, scenario.initialAut, ScalabilitySuite::generatedStateName);
+            poststar.apply();
+            return poststar.getSaturatedAut();
+        });
+        engines.put("Prestar", scenario -> {
+            Prestar<String, String> prestar = new Prestar<>(scenario.pds, scenario.targetAut);
+            prestar.apply();
+            return prestar.getSaturatedAut();
+        });
+        engines.put("HashBasedPreStar", scenario -> {
+            Prestar<String, String> prestar = new HashBasedPreStar<>(scenario.pds, scenario.targetAut,
+                    new FastLookupRuleMap<>(scenario.pds));
+            prestar.apply();
+            return prestar.getSaturatedAut();
+        });
+        engines.put("DemandPreStar", scenario -> {
+            BackwardFlowFunctions<String, String> flowFunctions = scenario.rulesByEnd::get;
+            DemandPreStar<String, String> prestar = new DemandPreStar<>(flowFunctions, scenario.targetAut);
+            prestar.apply();
+            return prestar.getSaturatedAut();
+        });
+        return engines;
+    }
+
+    private static Measurement measure(
+            Function<Scenario, PAutomaton<String, String>> engine,
+            Scenario scenario,
+            int repetitions
+    ) {
+        // The fastest of several runs is the one least disturbed by the JIT and the collector
+        long nanos = Long.MAX_VALUE;
+        long allocated = Long.MAX_VALUE;
+        for (int i = 0; i < repetitions; i++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            engine.apply(scenario);
+            nanos = Math.min(nanos, System.nanoTime() - start);
+            allocated = Math.min(allocated, allocatedBytes() - allocatedBefore);
+        }
+
+        PAutomaton<String, String> saturated = engine.apply(scenario);
+        int transitions = saturated.getTransitionRelation().size();
+        long usedWithResult = usedHeapAfterGc();
+        saturated = null;
+        long retained = Math.max(0, usedWithResult - usedHeapAfterGc());
+        return new Measurement(scenario.rules, transitions, nanos, Math.max(0, allocated), retained);
+    }
+
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads) {
+            return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @return the least-squares slope of the metric over the number of rules on a log-log scale, or NaN if the metric
+     * was not measured at two sizes
+     */
+    private static double exponent(List<Measurement> points, Metric metric) {
+        List<double[]> logs = points.stream()
+                .filter(point -> metric.of(point) > 0)
+                .map(point -> new double[]{Math.log(point.rules), Math.log(metric.of(point))})
+                .collect(Collectors.toList());
+        if (logs.size() < 2) {
+            return Double.NaN;
+        }
+        double meanX = logs.stream().mapToDouble(log -> log[0]).average().orElseThrow();
+        double meanY = logs.stream().mapToDouble(log -> log[1]).average().orElseThrow();
+        double covariance = 0;
+        double variance = 0;
+        for (double[] log : logs) {
+            covariance += (log[0] - meanX) * (log[1] - meanY);
+            variance += (log[0] - meanX) * (log[0] - meanX);
+        }
+        return variance == 0 ? Double.NaN : covariance / variance;
+    }
+
+    private static String generatedStateName(Rule<String, String> rule) {
+        return rule.getEndConfiguration().getControlLocation().unwrap() + "."
+                + rule.getEndConfiguration().getWord().get(1).unwrap();
+    }
+
+    private enum Metric {
+        // Wall time is the noisiest metric, so it gets the widest margin
+        TIME("time", 0.5), ALLOCATION("allocation", 0.25), RETAINED("retained", 0.25);
+
+        private final String key;
+        private final double threshold;
+
+        Metric(String key, double threshold) {
+            this.key = key;
+            this.threshold = threshold;
+        }
+
+        double of(Measurement measurement) {
+            switch (this) {
+                case TIME:
+                    return measurement.nanos;
+                case ALLOCATION:
+                    return measurement.allocatedBytes;
+                default:
+                    return measurement.retainedBytes;
+            }
+        }
+    }
+
+    private static class Measurement {
+
+        private final int rules;
+        private final int transitions;
+        private final long nanos;
+        private final long allocatedBytes;
+        private final long retainedBytes;
+
+        private Measurement(int rules, int transitions, long nanos, long allocatedBytes, long retainedBytes) {
+            this.rules = rules;
+            this.transitions = transitions;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+            this.retainedBytes = retainedBytes;
+        }
+    }
+
+    /**
+     * A pushdown system shaped like an interprocedural data-flow problem: procedures are chains of statements with a
+     * branch and two calls to procedures picked at random, and each fact is a control location. The initial automaton
+     * starts at the entry of the first procedure, the target automaton at its exit.
+     */
+    private static class Scenario {
+
+        private final PushdownSystem<String, String> pds;
+        private final PAutomaton<String, String> initialAut = new PAutomaton<>();
+        private final PAutomaton<String, String> targetAut = new PAutomaton<>();
+        private final Map<String, Set<Rule<String, String>>> rulesByStart = new HashMap<>();
+        private final Map<String, Set<Rule<String, String>>> rulesByEnd = new HashMap<>();
+        private final int rules;
+
+        private Scenario(int size) {
+            // Each procedure has 9 rules per fact
+            int procedures = Math.max(1, size / (9 * FACTS.size()));
+            Random random = new Random(procedures);
+            Set<Rule<String, String>> rules = new HashSet<>();
+            for (int procedure = 0; procedure < procedures; procedure++) {
+                int firstCallee = random.nextInt(procedures);
+                int secondCallee = random.nextInt(procedures);
+                for (int fact = 0; fact < FACTS.size(); fact++) {
+                    ControlLocation<String> location = TestUtils.createControlLocation(FACTS.get(fact));
+                    ControlLocation<String> other =
+                            TestUtils.createControlLocation(FACTS.get((fact + 1) % FACTS.size()));
+                    for (int statement : new int[]{0, 1, 2, 4, 6}) {
+                        rules.add(normal(location, symbol(procedure, statement), location,
+                                symbol(procedure, statement + 1)));
+                    }
+                    // The branch generates the other fact
+                    rules.add(normal(location, symbol(procedure, 1), other, symbol(procedure, 5)));
+                    rules.add(push(location, symbol(procedure, 3), symbol(firstCallee, 0), symbol(procedure, 4)));
+                    rules.add(push(location, symbol(procedure, 5), symbol(secondCallee, 0), symbol(procedure, 6)));
+                    rules.add(TestUtils.createRule(
+                            TestUtils.createStartConfiguration(location, symbol(procedure, PROCEDURE_LENGTH - 1)),
+                            TestUtils.createPopEndConfiguration(location)
+                    ));
+                }
+            }
+            for (Rule<String, String> rule : rules) {
+                rulesByStart.computeIfAbsent(rule.getStartConfiguration().getControlLocation().unwrap(),
+                        location -> new HashSet<>()).add(rule);
+                rulesByEnd.computeIfAbsent(rule.getEndConfiguration().getControlLocation().unwrap(),
+                        location -> new HashSet<>()).add(rule);
+            }
+            Set<Rule<String, String>> allRules = Collections.unmodifiableSet(rules);
+            this.pds = () -> allRules;
+            this.rules = rules.size();
+
+            ControlLocation<String> start = TestUtils.createControlLocation(FACTS.get(0));
+            ControlLocation<String> accept = TestUtils.createControlLocation("accept");
+            initialAut.addInitialState(start);
+            initialAut.addFinalState(accept);
+            initialAut.addTransition(new PAutomaton.Transition<>(start, accept, symbol(0, 0)));
+            FACTS.forEach(fact -> targetAut.addInitialState(TestUtils.createControlLocation(fact)));
+            targetAut.addFinalState(accept);
+            targetAut.addTransition(new PAutomaton.Transition<>(start, accept, symbol(0, PROCEDURE_LENGTH - 1)));
+        }
+
+        private static StackSymbol<String> symbol(int procedure, int statement) {
+            return TestUtils.createStackSymbol("s" + procedure + "_" + statement);
+        }
+
+        private static Rule<String, String> normal(
+                ControlLocation<String> start,
+                StackSymbol<String> symbol,
+                ControlLocation<String> end,
+                StackSymbol<String> next
+        ) {
+            return TestUtils.createRule(
+                    TestUtils.createStartConfiguration(start, symbol),
+                    TestUtils.createNormalEndConfiguration(end, next)
+            );
+        }
+
+        private static Rule<String, String> push(
+                ControlLocation<String> location,
+                StackSymbol<String> symbol,
+                StackSymbol<String> callee,
+                StackSymbol<String> returnSite
+        ) {
+            return TestUtils.createRule(
+                    TestUtils.createStartConfiguration(location, symbol),
+                    TestUtils.createPushEndConfiguration(location, returnSite, callee)
+            );
+        }
+    }
+}
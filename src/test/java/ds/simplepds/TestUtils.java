@@ -1,7 +1,10 @@
 package ds.simplepds;
 
+import ds.simplepds.automata.CheckpointCodec;
 import ds.simplepds.automata.PAutomaton;
 import ds.simplepds.automata.Poststar;
+import ds.simplepds.automata.demand.BackwardFlowFunctions;
+import ds.simplepds.automata.demand.ForwardFlowFunctions;
 import ds.simplepds.automata.demand.Wildcard;
 import ds.simplepds.interfaces.ControlLocation;
 import ds.simplepds.interfaces.EndConfiguration;
@@ -10,11 +13,18 @@ import ds.simplepds.interfaces.Rule;
 import ds.simplepds.interfaces.StackSymbol;
 import ds.simplepds.interfaces.StartConfiguration;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class TestUtils {
 
@@ -146,6 +156,29 @@ public class TestUtils {
         return () -> rules;
     }
 
+    /**
+     * Names the states generated for the rules of the given pushdown system m1, m2, ...
+     */
+    public static Function<Rule<String, String>, String> createGeneratedStateNames(PushdownSystem<String, String> pds) {
+        Map<Rule<String, String>, String> names = new HashMap<>();
+        for (Rule<String, String> rule : pds.getRules()) {
+            names.put(rule, "m" + (names.size() + 1));
+        }
+        return names::get;
+    }
+
+    public static ForwardFlowFunctions<String, String> createForwardFlowFunctions(PushdownSystem<String, String> pds) {
+        return currentLocation -> pds.getRules().stream()
+                .filter(rule -> rule.getStartConfiguration().getControlLocation().unwrap().equals(currentLocation))
+                .collect(Collectors.toSet());
+    }
+
+    public static BackwardFlowFunctions<String, String> createBackwardFlowFunctions(PushdownSystem<String, String> pds) {
+        return currentLocation -> pds.getRules().stream()
+                .filter(rule -> rule.getEndConfiguration().getControlLocation().unwrap().equals(currentLocation))
+                .collect(Collectors.toSet());
+    }
+
     public static PAutomaton.Transition<String, String> createTransition(String start, String end, String label) {
         return new PAutomaton.Transition<>(
                 createControlLocation(start),
@@ -178,7 +211,31 @@ public class TestUtils {
         );
     }
 
-    public static Poststar<String, String>.GeneratedState createGeneratedState(
+    public static CheckpointCodec<String, String> createCheckpointCodec() {
+        return new CheckpointCodec<>() {
+            @Override
+            public void writeLocation(ControlLocation<String> location, DataOutput out) throws IOException {
+                out.writeUTF(location.unwrap());
+            }
+
+            @Override
+            public ControlLocation<String> readLocation(DataInput in) throws IOException {
+                return createControlLocation(in.readUTF());
+            }
+
+            @Override
+            public void writeSymbol(StackSymbol<String> symbol, DataOutput out) throws IOException {
+                out.writeUTF(symbol.unwrap());
+            }
+
+            @Override
+            public StackSymbol<String> readSymbol(DataInput in) throws IOException {
+                return createStackSymbol(in.readUTF());
+            }
+        };
+    }
+
+    public static Poststar.GeneratedState<String, String> createGeneratedState(
             Rule<String, String> rule,
             Poststar<String, String> instance
     ) {